@@ -0,0 +1,74 @@
+package eu.kapalka.http.benchmarks;
+
+import eu.kapalka.http.repository.BlobRepository;
+import eu.kapalka.http.repository.Durability;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Concurrent writes of small blobs by {@link BlobRepository#put(String, java.io.InputStream)}, with each
+ * {@link Durability}. The number of writer threads can be changed with the <code>-t</code> option of JMH to see how
+ * the throughput of durable writes scales with concurrency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(16)
+@Fork(1)
+public class BlobRepositoryBenchmark {
+
+    private static final int NUM_KEYS = 1000;
+    private static final byte[] CONTENTS = new byte[4096];
+
+    @Param({"NONE", "PER_WRITE", "GROUP_COMMIT"})
+    public Durability durability;
+
+    private Path baseDirectory;
+    private BlobRepository repository;
+    private final AtomicInteger nextKey = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException {
+        baseDirectory = Files.createTempDirectory("benchmark");
+        repository = new BlobRepository(baseDirectory, CONTENTS.length, durability);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        repository.close();
+        try (Stream<Path> paths = Files.walk(baseDirectory)) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public Optional<BlobRepository.StoredBlob> put() throws IOException {
+        var key = "/blob/" + (nextKey.getAndIncrement() % NUM_KEYS);
+        return repository.put(key, new ByteArrayInputStream(CONTENTS));
+    }
+}
@@ -0,0 +1,89 @@
+package eu.kapalka.http.benchmarks;
+
+import eu.kapalka.http.HttpServer;
+import eu.kapalka.http.ServerConfig;
+import eu.kapalka.http.response.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection storm: each operation opens a new connection to an embedded {@link HttpServer}, sends a single
+ * HTTP/1.0 request (so that the server closes the connection after the response) and reads the small response.
+ * The throughput is the number of connections accepted and served per second, for a given number of acceptors
+ * (see {@link ServerConfig#acceptors()}). Accepts scale with the acceptors only if there are enough cores for
+ * the acceptors, the serving threads and the clients, which all run in the same JVM.
+ * <p>
+ * Clients close their connections with a reset (<code>SO_LINGER</code> of 0), which keeps the connections out of
+ * the <code>TIME_WAIT</code> state: otherwise, the ephemeral ports of the loopback interface would be exhausted
+ * within seconds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(16)
+@Fork(1)
+public class ConnectionRateBenchmark {
+
+    private static final byte[] REQUEST = "GET /hello HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Param({"1", "2", "4"})
+    public int acceptors;
+
+    private HttpServer server;
+    private InetSocketAddress serverAddress;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        var response = Response.builder()
+                .body("Hello world!".getBytes(StandardCharsets.US_ASCII))
+                .contentType("text/plain")
+                .build();
+        var config = ServerConfig.builder()
+                .acceptors(acceptors)
+                .threadPoolSize(16)
+                .backlogSize(1024)
+                .build();
+        server = new HttpServer("localhost", 0, config);
+        server.registerRequestHandler("/", (request, relativePath) -> response);
+        new Thread(server::start, "benchmark-server").start();
+        if (!server.awaitStarted(Duration.ofSeconds(10))) {
+            throw new IllegalStateException("HTTP server did not start");
+        }
+        serverAddress = new InetSocketAddress("localhost", server.getPort());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.stop();
+    }
+
+    @Benchmark
+    public int connect() throws IOException {
+        try (var socket = new Socket()) {
+            socket.setSoLinger(true, 0);
+            socket.connect(serverAddress);
+            socket.getOutputStream().write(REQUEST);
+            return socket.getInputStream().readAllBytes().length;
+        }
+    }
+}
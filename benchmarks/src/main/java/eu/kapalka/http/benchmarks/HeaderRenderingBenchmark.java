@@ -0,0 +1,68 @@
+package eu.kapalka.http.benchmarks;
+
+import eu.kapalka.http.response.HttpStatus;
+import eu.kapalka.http.response.Response;
+import eu.kapalka.http.response.ResponseWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of response headers by {@link ResponseWriter} compared with the original implementation
+ * (see {@link LegacyHeaderWriter}). Both write to an output stream that discards the data, and the current writer
+ * is flushed after every response, so that both variants do the same work per response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderRenderingBenchmark {
+
+    @Param({"OK", "NOT_FOUND"})
+    public HttpStatus status;
+
+    private Response response;
+    private ResponseWriter responseWriter;
+    private LegacyHeaderWriter legacyHeaderWriter;
+
+    @Setup
+    public void setUp() {
+        response = Response.builder()
+                .status(status)
+                .body(new byte[12_345])
+                .contentType("text/html")
+                // Validator headers of a static file
+                .header("ETag", "\"3039-5f3a1c2b4d6e8\"")
+                .header("Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT")
+                .header("Accept-Ranges", "bytes")
+                .header("Vary", "Accept-Encoding")
+                .build();
+        responseWriter = new ResponseWriter(OutputStream.nullOutputStream());
+        legacyHeaderWriter = new LegacyHeaderWriter(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void current() throws IOException {
+        responseWriter.writeHeaders(response, true);
+        responseWriter.flush();
+    }
+
+    @Benchmark
+    public void legacy() throws IOException {
+        legacyHeaderWriter.writeHeaders(response, true);
+    }
+}
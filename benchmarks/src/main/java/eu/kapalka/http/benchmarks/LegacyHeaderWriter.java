@@ -0,0 +1,56 @@
+package eu.kapalka.http.benchmarks;
+
+import eu.kapalka.http.response.Response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Copy of the original header rendering of <code>ResponseWriter</code> (one formatted string per header line,
+ * formatting of the date for every response, three writes per line), kept as the reference point of
+ * {@link HeaderRenderingBenchmark}. Logging was removed, as it is disabled in the benchmarks anyway.
+ */
+class LegacyHeaderWriter {
+
+    private final Clock clock = Clock.systemUTC();
+    private final OutputStream output;
+
+    LegacyHeaderWriter(OutputStream output) {
+        this.output = output;
+    }
+
+    void writeHeaders(Response response, boolean keepAlive) throws IOException {
+        var status = response.getStatus();
+        writeLine("HTTP/1.1 %d %s".formatted(status.getCode(), status.getMessage()));
+        writeHeaderLine("Server", "KapalkaHTTPServer/1.0");
+        writeHeaderLine("Date", ZonedDateTime.now(clock).format(DateTimeFormatter.RFC_1123_DATE_TIME));
+
+        var connectionHeaderValue = (keepAlive) ? "keep-alive" : "close";
+        writeHeaderLine("Connection", connectionHeaderValue);
+
+        if (response.getContentType() != null) {
+            writeHeaderLine("Content-Type", response.getContentType());
+        }
+        // Not in the original implementation, which had no custom headers: rendered like the other lines
+        for (var header : response.getHeaders().entrySet()) {
+            writeHeaderLine(header.getKey(), header.getValue());
+        }
+
+        writeHeaderLine("Content-Length", Long.toString(response.getBodyLength()));
+        writeLine("");
+    }
+
+    private void writeHeaderLine(String headerName, String headerValue) throws IOException {
+        writeLine("%s: %s".formatted(headerName, headerValue));
+    }
+
+    private void writeLine(String line) throws IOException {
+        output.write(line.getBytes(StandardCharsets.US_ASCII));
+        output.write('\r');
+        output.write('\n');
+    }
+}
@@ -0,0 +1,63 @@
+package eu.kapalka.http.benchmarks;
+
+import eu.kapalka.http.request.LineReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and tokenizing of a request line by {@link LineReader}: with tokens converted to strings
+ * ({@link LineReader#readToken()}) and with tokens only delimited in the internal buffer
+ * ({@link LineReader#nextToken()}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineReaderBenchmark {
+
+    private static final String LINE = "GET /some/path/to/a/resource.html?query=value HTTP/1.1\r\n";
+
+    private LineReader lineReader;
+
+    @Setup
+    public void setUp() {
+        lineReader = new LineReader(new LoopingInputStream(LINE.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Benchmark
+    public boolean nextLine() throws IOException {
+        return lineReader.nextLine();
+    }
+
+    @Benchmark
+    public void nextLineAndReadTokens(Blackhole blackhole) throws IOException {
+        lineReader.nextLine();
+        String token;
+        while ((token = lineReader.readToken()) != null) {
+            blackhole.consume(token);
+        }
+    }
+
+    @Benchmark
+    public void nextLineAndNextTokens(Blackhole blackhole) throws IOException {
+        lineReader.nextLine();
+        while (lineReader.nextToken()) {
+            blackhole.consume(lineReader.tokenLength());
+        }
+    }
+}
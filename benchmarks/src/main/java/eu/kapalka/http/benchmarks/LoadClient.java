@@ -0,0 +1,291 @@
+package eu.kapalka.http.benchmarks;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Client of a {@link LoadGenerator} run: sends GET requests over a single connection at a time (reconnecting
+ * whenever the server or the client closes the connection) and records the latency of each response.
+ * <p>
+ * In open-loop mode, requests are scheduled at a fixed rate and the latency is measured from the time at which
+ * a request was supposed to be sent, not from the time at which it was actually sent. Otherwise, a server that
+ * stalls would also stall the client and the stall would be hidden from the results (coordinated omission).
+ */
+class LoadClient implements Runnable {
+
+    // Latencies above this value are recorded as this value
+    static final long MAX_RECORDED_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final LoadTestConfig config;
+    private final InetSocketAddress serverAddress;
+    private final byte[][] keepAliveRequests;
+    private final byte[][] closeRequests;
+    private final long measurementStartNanos;
+    private final long endNanos;
+    private final long batchIntervalNanos;
+    private final SplittableRandom random;
+
+    private final Histogram latencies = new Histogram(MAX_RECORDED_LATENCY_NANOS, 3);
+    private long responseCount;
+    private long bodyBytes;
+    private long errorCount;
+    private long unexpectedStatusCount;
+    private long connectionCount;
+
+    private Socket socket;
+    private InputStream input;
+    private OutputStream output;
+    private long connectionResponseCount;
+    private final byte[][] batch;
+    private final byte[] skipBuffer = new byte[8192];
+
+    /**
+     * @param requestPaths paths of the resources to request (chosen randomly)
+     * @param seed seed of the random generator (which selects resources and keep-alive settings)
+     */
+    LoadClient(LoadTestConfig config, InetSocketAddress serverAddress, String[] requestPaths,
+               long measurementStartNanos, long endNanos, long seed) {
+        this.config = config;
+        this.serverAddress = serverAddress;
+        this.keepAliveRequests = new byte[requestPaths.length][];
+        this.closeRequests = new byte[requestPaths.length][];
+        for (int i = 0; i < requestPaths.length; i++) {
+            keepAliveRequests[i] = request(requestPaths[i], "keep-alive");
+            closeRequests[i] = request(requestPaths[i], "close");
+        }
+        this.measurementStartNanos = measurementStartNanos;
+        this.endNanos = endNanos;
+        // Each client sends its share of the total rate, one batch of pipelined requests at a time
+        this.batchIntervalNanos = (config.requestRate() == 0) ? 0
+                : TimeUnit.SECONDS.toNanos(1) * config.connections() * config.pipelineDepth() / config.requestRate();
+        this.random = new SplittableRandom(seed);
+        this.batch = new byte[config.pipelineDepth()][];
+    }
+
+    @Override
+    public void run() {
+        var nextBatchNanos = System.nanoTime();
+        while (nextBatchNanos < endNanos) {
+            if (batchIntervalNanos > 0) {
+                waitUntil(nextBatchNanos);
+            } else {
+                nextBatchNanos = System.nanoTime();
+            }
+            if (System.nanoTime() >= endNanos) {
+                break;
+            }
+
+            try {
+                sendBatch(nextBatchNanos);
+            } catch (IOException ex) {
+                errorCount++;
+                closeConnection();
+            }
+            nextBatchNanos += batchIntervalNanos;
+        }
+        closeConnection();
+    }
+
+    Histogram getLatencies() {
+        return latencies;
+    }
+
+    long getResponseCount() {
+        return responseCount;
+    }
+
+    long getBodyBytes() {
+        return bodyBytes;
+    }
+
+    long getErrorCount() {
+        return errorCount;
+    }
+
+    long getUnexpectedStatusCount() {
+        return unexpectedStatusCount;
+    }
+
+    long getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Sends a batch of (pipelined) requests and reads the responses. A request sent with
+     * <code>Connection: close</code> always ends the batch, as no response can follow it.
+     */
+    private void sendBatch(long intendedStartNanos) throws IOException {
+        if (socket == null) {
+            openConnection();
+        }
+
+        var batchSize = 0;
+        var keepAlive = true;
+        while (batchSize < config.pipelineDepth() && keepAlive) {
+            var resource = random.nextInt(keepAliveRequests.length);
+            keepAlive = random.nextDouble() < config.keepAliveRatio();
+            batch[batchSize++] = keepAlive ? keepAliveRequests[resource] : closeRequests[resource];
+        }
+
+        try {
+            writeBatch(batchSize);
+            readResponses(batchSize, intendedStartNanos);
+        } catch (StaleConnectionException ex) {
+            // The server closed the idle keep-alive connection (e.g., because it reached the max number of
+            // requests per connection) before receiving the batch: like web browsers, retry on a new connection
+            closeConnection();
+            openConnection();
+            writeBatch(batchSize);
+            readResponses(batchSize, intendedStartNanos);
+        }
+    }
+
+    private void writeBatch(int batchSize) throws IOException {
+        for (int i = 0; i < batchSize; i++) {
+            output.write(batch[i]);
+        }
+        output.flush();
+    }
+
+    private void readResponses(int batchSize, long intendedStartNanos) throws IOException {
+        for (int i = 0; i < batchSize; i++) {
+            // Only the first response on a reused connection can be missing because the connection is stale
+            var mayBeStale = (i == 0 && connectionResponseCount > 0);
+            var connectionClosed = !readResponse(mayBeStale);
+            connectionResponseCount++;
+            if (intendedStartNanos >= measurementStartNanos) {
+                var latency = System.nanoTime() - intendedStartNanos;
+                latencies.recordValue(Math.min(latency, MAX_RECORDED_LATENCY_NANOS));
+                responseCount++;
+            }
+            if (connectionClosed) {
+                // Remaining requests of the batch (if any) were dropped by the server: they are simply not counted
+                closeConnection();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads a response and skips its body. Returns <code>false</code> if the server closes the connection after
+     * the response.
+     *
+     * @param mayBeStale whether to throw {@link StaleConnectionException} if the connection is closed before
+     *                   the response starts
+     */
+    private boolean readResponse(boolean mayBeStale) throws IOException {
+        if (mayBeStale) {
+            input.mark(1);
+            if (input.read() == -1) {
+                throw new StaleConnectionException();
+            }
+            input.reset();
+        }
+
+        var statusLine = readLine();
+        if (!statusLine.startsWith("HTTP/1.1 2")) {
+            unexpectedStatusCount++;
+        }
+
+        long contentLength = 0;
+        var keepAlive = true;
+        String header;
+        while (!(header = readLine()).isEmpty()) {
+            var separator = header.indexOf(':');
+            var name = header.substring(0, Math.max(separator, 0));
+            var value = header.substring(separator + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length")) {
+                contentLength = Long.parseLong(value);
+            } else if (name.equalsIgnoreCase("Connection")) {
+                keepAlive = !value.equalsIgnoreCase("close");
+            }
+        }
+
+        var remaining = contentLength;
+        while (remaining > 0) {
+            var size = input.read(skipBuffer, 0, (int) Math.min(remaining, skipBuffer.length));
+            if (size == -1) {
+                throw new EOFException("Connection closed while reading response body");
+            }
+            remaining -= size;
+        }
+        if (measurementStartNanos <= System.nanoTime()) {
+            bodyBytes += contentLength;
+        }
+        return keepAlive;
+    }
+
+    private String readLine() throws IOException {
+        var line = new StringBuilder();
+        while (true) {
+            var b = input.read();
+            if (b == -1) {
+                throw new EOFException("Connection closed while reading response headers");
+            }
+            if (b == '\n') {
+                var length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+    }
+
+    private void openConnection() throws IOException {
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(serverAddress);
+        input = new BufferedInputStream(socket.getInputStream());
+        output = socket.getOutputStream();
+        connectionResponseCount = 0;
+        connectionCount++;
+    }
+
+    private void closeConnection() {
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // Nothing to do: we don't reuse the connection anyway
+        }
+        socket = null;
+    }
+
+    private static void waitUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static byte[] request(String path, String connection) {
+        return """
+                GET %s HTTP/1.1\r
+                Host: localhost\r
+                Connection: %s\r
+                \r
+                """.formatted(path, connection).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static class StaleConnectionException extends EOFException {
+
+        private StaleConnectionException() {
+            super("Connection closed by the server before sending a response");
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package eu.kapalka.http.benchmarks;
+
+import eu.kapalka.http.HttpServer;
+import eu.kapalka.http.handler.StaticContentRequestHandler;
+import eu.kapalka.http.repository.FileCache;
+import eu.kapalka.http.repository.StaticFileRepository;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test: starts an embedded {@link HttpServer} on the loopback interface, serving generated files
+ * through a {@link StaticFileRepository} (the same setup as in <code>Main</code>), and sends GET requests from
+ * a number of concurrent client connections (see {@link LoadClient}). At the end of the run, it reports
+ * the throughput and the latency distribution.
+ * <p>
+ * The clients run in the same JVM as the server, which keeps the results comparable between execution modes
+ * and configurations on the same machine, but not between machines.
+ */
+public class LoadGenerator {
+
+    // Same settings as in Main
+    private static final long FILE_CACHE_MAX_ENTRY_SIZE = 64 * 1024;
+    private static final long FILE_CACHE_MAX_TOTAL_SIZE = 64 * 1024 * 1024;
+    private static final long FILE_CACHE_REVALIDATION_INTERVAL_MS = 1_000;
+    private static final Duration SERVER_STARTUP_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final LoadTestConfig config;
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config;
+        try {
+            config = LoadTestConfig.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: LoadGenerator [OPTION]...\n\n" + LoadTestConfig.USAGE);
+            System.exit(1);
+            return;
+        }
+        new LoadGenerator(config).run();
+    }
+
+    LoadGenerator(LoadTestConfig config) {
+        this.config = config;
+    }
+
+    void run() throws IOException, InterruptedException {
+        System.out.println("Configuration: " + config);
+        var baseDir = Files.createTempDirectory("load-test");
+        HttpServer server = null;
+        try {
+            var requestPaths = createFiles(baseDir);
+            server = startServer(baseDir);
+            var clients = runClients(new InetSocketAddress("localhost", server.getPort()), requestPaths);
+            report(clients);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+            deleteRecursively(baseDir);
+        }
+    }
+
+    private String[] createFiles(Path baseDir) throws IOException {
+        var random = new Random(42);
+        var requestPaths = new ArrayList<String>();
+        for (var size : config.fileSizes()) {
+            for (int i = 0; i < config.filesPerSize(); i++) {
+                var content = new byte[(int) size];
+                random.nextBytes(content);
+                var fileName = "file-%d-%d.bin".formatted(size, i);
+                Files.write(baseDir.resolve(fileName), content);
+                requestPaths.add("/" + fileName);
+            }
+        }
+        return requestPaths.toArray(String[]::new);
+    }
+
+    private HttpServer startServer(Path baseDir) throws InterruptedException {
+        var fileCache = config.fileCache() ? new FileCache(FILE_CACHE_MAX_ENTRY_SIZE, FILE_CACHE_MAX_TOTAL_SIZE,
+                FILE_CACHE_REVALIDATION_INTERVAL_MS) : null;
+        var fileRepository = new StaticFileRepository(baseDir, fileCache);
+        var server = new HttpServer("localhost", 0, config.executionMode(), config.maxConcurrentConnections());
+        server.registerRequestHandler("/", new StaticContentRequestHandler(fileRepository));
+        new Thread(server::start, "load-test-server").start();
+        if (!server.awaitStarted(SERVER_STARTUP_TIMEOUT)) {
+            throw new IllegalStateException("HTTP server did not start");
+        }
+        return server;
+    }
+
+    private List<LoadClient> runClients(InetSocketAddress serverAddress, String[] requestPaths)
+            throws InterruptedException {
+        var startNanos = System.nanoTime();
+        var measurementStartNanos = startNanos + TimeUnit.SECONDS.toNanos(config.warmupSeconds());
+        var endNanos = measurementStartNanos + TimeUnit.SECONDS.toNanos(config.durationSeconds());
+
+        var clients = new ArrayList<LoadClient>();
+        var threads = new ArrayList<Thread>();
+        for (int i = 0; i < config.connections(); i++) {
+            var client = new LoadClient(config, serverAddress, requestPaths, measurementStartNanos, endNanos, i);
+            clients.add(client);
+            threads.add(Thread.ofPlatform().name("load-client-" + i).start(client));
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+        return clients;
+    }
+
+    private void report(List<LoadClient> clients) {
+        var latencies = new Histogram(LoadClient.MAX_RECORDED_LATENCY_NANOS, 3);
+        long responses = 0;
+        long bodyBytes = 0;
+        long errors = 0;
+        long unexpectedStatuses = 0;
+        long connections = 0;
+        for (var client : clients) {
+            latencies.add(client.getLatencies());
+            responses += client.getResponseCount();
+            bodyBytes += client.getBodyBytes();
+            errors += client.getErrorCount();
+            unexpectedStatuses += client.getUnexpectedStatusCount();
+            connections += client.getConnectionCount();
+        }
+
+        var seconds = (double) config.durationSeconds();
+        System.out.printf("Responses:         %d (%.1f/s)%n", responses, responses / seconds);
+        System.out.printf("Body throughput:   %.1f MiB/s%n", bodyBytes / seconds / (1024 * 1024));
+        System.out.printf("Connections:       %d%n", connections);
+        System.out.printf("I/O errors:        %d%n", errors);
+        System.out.printf("Non-2xx responses: %d%n", unexpectedStatuses);
+        System.out.println("Latency (us):");
+        System.out.printf("  mean      %10.1f%n", latencies.getMean() / 1000);
+        for (var percentile : REPORTED_PERCENTILES) {
+            System.out.printf("  p%-8s %10.1f%n", percentile, latencies.getValueAtPercentile(percentile) / 1000.0);
+        }
+        System.out.printf("  max       %10.1f%n", latencies.getMaxValue() / 1000.0);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package eu.kapalka.http.benchmarks;
+
+import eu.kapalka.http.ExecutionMode;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Configuration of a {@link LoadGenerator} run, parsed from command-line options of the form
+ * <code>--name=value</code>.
+ *
+ * @param executionMode execution mode of the server
+ * @param maxConcurrentConnections max number of connections accepted concurrently by the server
+ * @param fileCache whether the server uses a file cache
+ * @param connections number of client connections (each served by a dedicated client thread)
+ * @param requestRate total number of requests per second sent by all clients (open loop), or 0 to send
+ *                    a new request as soon as the previous response is received (closed loop)
+ * @param keepAliveRatio fraction of requests sent with keep-alive (the others are sent with
+ *                       <code>Connection: close</code>, so that the client reconnects)
+ * @param pipelineDepth number of requests sent at once on a connection before reading the responses
+ * @param fileSizes sizes (in bytes) of the served files, requested with a uniform distribution
+ * @param filesPerSize number of distinct files of each size
+ * @param warmupSeconds duration of the warm-up phase, whose results are discarded
+ * @param durationSeconds duration of the measurement phase
+ */
+record LoadTestConfig(ExecutionMode executionMode, int maxConcurrentConnections, boolean fileCache,
+                      int connections, int requestRate, double keepAliveRatio, int pipelineDepth,
+                      long[] fileSizes, int filesPerSize, int warmupSeconds, int durationSeconds) {
+
+    static final String USAGE = """
+            Options (all optional):
+              --mode=THREAD_POOL|VIRTUAL_THREADS|SELECTOR  server execution mode (default: THREAD_POOL)
+              --max-connections=N    max concurrent connections accepted by the server (default: unlimited)
+              --file-cache=true|false  use a file cache in the server (default: true)
+              --connections=N        number of client connections (default: 8)
+              --rate=N               total requests per second, 0 for a closed loop (default: 0)
+              --keep-alive=RATIO     fraction of requests sent with keep-alive (default: 1.0)
+              --pipeline=N           requests sent at once on a connection (default: 1)
+              --file-sizes=N,...     sizes of the served files in bytes (default: 1024)
+              --files-per-size=N     number of distinct files of each size (default: 100)
+              --warmup=SECONDS       warm-up duration (default: 5)
+              --duration=SECONDS     measurement duration (default: 20)
+            """;
+
+    LoadTestConfig {
+        if (maxConcurrentConnections <= 0 || connections <= 0 || requestRate < 0 || pipelineDepth <= 0
+                || filesPerSize <= 0 || warmupSeconds < 0 || durationSeconds <= 0) {
+            throw new IllegalArgumentException("Invalid numeric option value");
+        }
+        if (keepAliveRatio < 0 || keepAliveRatio > 1) {
+            throw new IllegalArgumentException("Keep-alive ratio must be between 0 and 1");
+        }
+        if (fileSizes.length == 0 || Arrays.stream(fileSizes).anyMatch(size -> size < 0)) {
+            throw new IllegalArgumentException("Invalid file sizes");
+        }
+    }
+
+    static LoadTestConfig parse(String[] args) {
+        var executionMode = ExecutionMode.THREAD_POOL;
+        var maxConcurrentConnections = Integer.MAX_VALUE;
+        var fileCache = true;
+        var connections = 8;
+        var requestRate = 0;
+        var keepAliveRatio = 1.0;
+        var pipelineDepth = 1;
+        long[] fileSizes = {1024};
+        var filesPerSize = 100;
+        var warmupSeconds = 5;
+        var durationSeconds = 20;
+
+        for (var arg : args) {
+            var separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator == -1) {
+                throw new IllegalArgumentException("Invalid option: " + arg);
+            }
+            var value = arg.substring(separator + 1);
+            switch (arg.substring(2, separator)) {
+                case "mode" -> executionMode = ExecutionMode.valueOf(value.toUpperCase(Locale.ROOT));
+                case "max-connections" -> maxConcurrentConnections = Integer.parseInt(value);
+                case "file-cache" -> fileCache = Boolean.parseBoolean(value);
+                case "connections" -> connections = Integer.parseInt(value);
+                case "rate" -> requestRate = Integer.parseInt(value);
+                case "keep-alive" -> keepAliveRatio = Double.parseDouble(value);
+                case "pipeline" -> pipelineDepth = Integer.parseInt(value);
+                case "file-sizes" -> fileSizes = Arrays.stream(value.split(",")).mapToLong(Long::parseLong).toArray();
+                case "files-per-size" -> filesPerSize = Integer.parseInt(value);
+                case "warmup" -> warmupSeconds = Integer.parseInt(value);
+                case "duration" -> durationSeconds = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        return new LoadTestConfig(executionMode, maxConcurrentConnections, fileCache, connections, requestRate,
+                keepAliveRatio, pipelineDepth, fileSizes, filesPerSize, warmupSeconds, durationSeconds);
+    }
+
+    @Override
+    public String toString() {
+        return ("mode=%s, max-connections=%d, file-cache=%b, connections=%d, rate=%s, keep-alive=%.2f, "
+                + "pipeline=%d, file-sizes=%s, files-per-size=%d, warmup=%ds, duration=%ds").formatted(
+                executionMode, maxConcurrentConnections, fileCache, connections,
+                requestRate == 0 ? "closed-loop" : requestRate + "/s", keepAliveRatio, pipelineDepth,
+                Arrays.toString(fileSizes), filesPerSize, warmupSeconds, durationSeconds);
+    }
+}
@@ -0,0 +1,42 @@
+package eu.kapalka.http.benchmarks;
+
+import java.io.InputStream;
+
+/**
+ * Input stream that returns the given data over and over again, like a client that keeps sending the same
+ * request on a keep-alive connection. This allows benchmarking a parser that is reused across requests, as it is
+ * in the server, without the benchmark itself allocating a new stream for every operation.
+ */
+class LoopingInputStream extends InputStream {
+
+    private final byte[] data;
+    private int position;
+
+    LoopingInputStream(byte[] data) {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Data cannot be empty");
+        }
+        this.data = data;
+    }
+
+    @Override
+    public int read() {
+        var b = data[position];
+        position = (position + 1) % data.length;
+        return b & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        // Never return data past the end of the current copy, so that reads behave like separate packets
+        var size = Math.min(length, data.length - position);
+        System.arraycopy(data, position, buffer, offset, size);
+        position = (position + size) % data.length;
+        return size;
+    }
+
+    @Override
+    public int available() {
+        return data.length - position;
+    }
+}
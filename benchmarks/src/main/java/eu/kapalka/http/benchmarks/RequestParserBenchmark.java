@@ -0,0 +1,93 @@
+package eu.kapalka.http.benchmarks;
+
+import eu.kapalka.http.request.Request;
+import eu.kapalka.http.request.RequestParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of a single request by {@link RequestParser}. Benchmark {@link #parse()} reuses the parser for all
+ * requests, like the server does on a keep-alive connection, while {@link #parseNewConnection()} includes
+ * the cost of creating a parser for a new connection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestParserBenchmark {
+
+    private static final String MINIMAL_REQUEST = """
+            GET /index.html HTTP/1.1\r
+            Host: localhost\r
+            \r
+            """;
+
+    // Typical request sent by a web browser
+    private static final String BROWSER_REQUEST = """
+            GET /images/logo.png?version=42 HTTP/1.1\r
+            Host: www.example.com\r
+            User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:125.0) Gecko/20100101 Firefox/125.0\r
+            Accept: image/avif,image/webp,*/*\r
+            Accept-Language: en-US,en;q=0.5\r
+            Accept-Encoding: gzip, deflate, br\r
+            Referer: https://www.example.com/\r
+            Connection: keep-alive\r
+            Cookie: session=8f14e45fceea167a5a36dedd4bea2543; theme=dark\r
+            Sec-Fetch-Dest: image\r
+            Sec-Fetch-Mode: no-cors\r
+            Sec-Fetch-Site: same-origin\r
+            \r
+            """;
+
+    private static final String POST_REQUEST = """
+            POST /form HTTP/1.1\r
+            Host: localhost\r
+            Content-Type: application/x-www-form-urlencoded\r
+            Content-Length: 27\r
+            \r
+            name=benchmark&value=123456""";
+
+    @Param({"minimal", "browser", "post"})
+    public String request;
+
+    private byte[] requestBytes;
+    private RequestParser parser;
+
+    @Setup
+    public void setUp() {
+        var requestText = switch (request) {
+            case "minimal" -> MINIMAL_REQUEST;
+            case "browser" -> BROWSER_REQUEST;
+            case "post" -> POST_REQUEST;
+            default -> throw new IllegalArgumentException("Unknown request: " + request);
+        };
+        requestBytes = requestText.getBytes(StandardCharsets.US_ASCII);
+        parser = new RequestParser(new LoopingInputStream(requestBytes));
+    }
+
+    @Benchmark
+    public Request parse() throws IOException {
+        return parser.parse();
+    }
+
+    @Benchmark
+    public Request parseNewConnection() throws IOException {
+        return new RequestParser(new ByteArrayInputStream(requestBytes)).parse();
+    }
+}
@@ -0,0 +1,96 @@
+package eu.kapalka.http.benchmarks;
+
+import eu.kapalka.http.response.Response;
+import eu.kapalka.http.response.ResponseWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting of response headers and writing of response bodies by {@link ResponseWriter}. Output is discarded,
+ * so that the results reflect the cost of the writer itself rather than of the network stack.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseWriterBenchmark {
+
+    @Param({"128", "65536"})
+    public int bodySize;
+
+    /**
+     * Kind of response body: "bytes" (in-memory array, e.g., a cached file), "buffer" (written directly
+     * to a channel, e.g., a memory-mapped file) or "stream" (file read through an input stream).
+     */
+    @Param({"bytes", "buffer", "stream"})
+    public String bodyKind;
+
+    private ResponseWriter responseWriter;
+    private Response response;
+    private Path bodyFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var output = OutputStream.nullOutputStream();
+        responseWriter = new ResponseWriter(output, Channels.newChannel(output));
+
+        var body = new byte[bodySize];
+        new Random(42).nextBytes(body);
+        var builder = Response.builder().contentType("application/octet-stream");
+        switch (bodyKind) {
+            case "bytes" -> builder.body(body);
+            case "buffer" -> builder.body(ByteBuffer.wrap(body));
+            case "stream" -> {
+                bodyFile = Files.createTempFile("benchmark", ".bin");
+                Files.write(bodyFile, body);
+                // Do not use the file body variant: transferring to a channel that is not a socket or
+                // a file is just a copy loop, which is what we measure here with a stream anyway
+                var file = bodyFile;
+                builder.body(() -> Files.newInputStream(file), bodySize);
+            }
+            default -> throw new IllegalArgumentException("Unknown body kind: " + bodyKind);
+        }
+        response = builder.build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (bodyFile != null) {
+            Files.deleteIfExists(bodyFile);
+        }
+    }
+
+    @Benchmark
+    public void writeHeaders() throws IOException {
+        responseWriter.writeHeaders(response, true);
+        responseWriter.flush();
+    }
+
+    @Benchmark
+    public void writeBody() throws IOException {
+        responseWriter.writeBody(response);
+        responseWriter.flush();
+    }
+}
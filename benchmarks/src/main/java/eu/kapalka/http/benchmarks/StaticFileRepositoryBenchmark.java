@@ -0,0 +1,76 @@
+package eu.kapalka.http.benchmarks;
+
+import eu.kapalka.http.repository.FileCache;
+import eu.kapalka.http.repository.FileInfo;
+import eu.kapalka.http.repository.StaticFileRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Lookup of a file by {@link StaticFileRepository#findFile(String)}, with and without a {@link FileCache}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StaticFileRepositoryBenchmark {
+
+    private static final int NUM_FILES = 100;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private Path baseDirectory;
+    private StaticFileRepository repository;
+    // Request paths are created upfront so that their allocation is not included in the results
+    private final String[] requestPaths = new String[NUM_FILES];
+    private int nextFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        baseDirectory = Files.createTempDirectory("benchmark");
+        var directory = Files.createDirectories(baseDirectory.resolve("some/directory"));
+        for (int i = 0; i < NUM_FILES; i++) {
+            Files.writeString(directory.resolve("file%d.html".formatted(i)), "<p>File %d</p>".formatted(i));
+            requestPaths[i] = "/some/directory/file%d.html".formatted(i);
+        }
+
+        var fileCache = cached ? new FileCache(64 * 1024, 64 * 1024 * 1024, 1000) : null;
+        repository = new StaticFileRepository(baseDirectory, fileCache);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(baseDirectory)) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public Optional<FileInfo> findFile() {
+        nextFile = (nextFile + 1) % NUM_FILES;
+        return repository.findFile(requestPaths[nextFile]);
+    }
+}
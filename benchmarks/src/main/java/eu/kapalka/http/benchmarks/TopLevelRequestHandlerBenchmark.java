@@ -0,0 +1,73 @@
+package eu.kapalka.http.benchmarks;
+
+import eu.kapalka.http.handler.TopLevelRequestHandler;
+import eu.kapalka.http.request.HttpMethod;
+import eu.kapalka.http.request.ValidRequest;
+import eu.kapalka.http.response.Response;
+import eu.kapalka.http.response.ResponseWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatching of a request by {@link TopLevelRequestHandler} to the matching handler among a given number
+ * of registered handlers, including writing of the (small, precomputed) response. The request is always routed
+ * to the handler registered last (the worst case for a linear search over the handlers), and a catch-all
+ * <code>/</code> handler is registered first, as a static content handler typically is. Routing cost is expected
+ * to be independent of the number of handlers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopLevelRequestHandlerBenchmark {
+
+    @Param({"1", "16", "64"})
+    public int numHandlers;
+
+    private TopLevelRequestHandler topLevelRequestHandler;
+    private ResponseWriter responseWriter;
+    private ValidRequest request;
+
+    @Setup
+    public void setUp() {
+        var response = Response.builder()
+                .body("Hello world!".getBytes(StandardCharsets.US_ASCII))
+                .contentType("text/plain")
+                .build();
+
+        topLevelRequestHandler = new TopLevelRequestHandler();
+        topLevelRequestHandler.registerRequestHandler("/", (request, relativePath) -> response);
+        for (int i = 0; i < numHandlers; i++) {
+            topLevelRequestHandler.registerRequestHandler("/handler%d/".formatted(i),
+                    (request, relativePath) -> response);
+        }
+        responseWriter = new ResponseWriter(OutputStream.nullOutputStream());
+        request = ValidRequest.builder()
+                .method(HttpMethod.GET)
+                .uri(URI.create("/handler%d/some/resource".formatted(numHandlers - 1)))
+                .httpMinorVersion((byte) 1)
+                .build();
+    }
+
+    @Benchmark
+    public boolean handleRequest() throws IOException {
+        return topLevelRequestHandler.handleRequest(request, responseWriter);
+    }
+}
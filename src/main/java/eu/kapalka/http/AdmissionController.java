@@ -0,0 +1,55 @@
+package eu.kapalka.http;
+
+/**
+ * Decides whether connections that waited in the queue of the thread pool are still served, following the CoDel
+ * ("controlled delay") approach applied to request queues: a standing queue is detected by the minimum queueing delay
+ * over an interval. A queue that empties regularly only absorbs bursts, so connections are admitted unless they
+ * waited longer than a whole interval. If no connection of an interval waited less than the target delay, the server
+ * is overloaded: until the queue drains, connections that waited longer than the target delay are rejected, so that
+ * the others are served with a bounded latency rather than all of them timing out.
+ */
+class AdmissionController {
+
+    private final long targetDelayNanos;
+    private final long intervalNanos;
+
+    private long intervalStart;
+    private long minDelayInInterval = Long.MAX_VALUE;
+    private boolean overloaded;
+
+    /**
+     * @param targetDelayNanos acceptable queueing delay of a connection under a sustained load
+     * @param intervalNanos period over which the minimum queueing delay is measured, which is also the max queueing
+     *                      delay of a connection in a burst
+     */
+    AdmissionController(long targetDelayNanos, long intervalNanos) {
+        if (targetDelayNanos <= 0 || intervalNanos < targetDelayNanos) {
+            throw new IllegalArgumentException("Target delay must be positive and not longer than the interval");
+        }
+        this.targetDelayNanos = targetDelayNanos;
+        this.intervalNanos = intervalNanos;
+        this.intervalStart = System.nanoTime();
+    }
+
+    /**
+     * Records the queueing delay of a connection that is about to be served, and returns whether it should be
+     * served (or rejected).
+     *
+     * @param queueDelayNanos time the connection waited for a thread
+     * @param nowNanos current value of {@link System#nanoTime()}
+     */
+    synchronized boolean admit(long queueDelayNanos, long nowNanos) {
+        if (nowNanos - intervalStart >= intervalNanos) {
+            // An interval without any connection leaves the queue empty
+            overloaded = minDelayInInterval != Long.MAX_VALUE && minDelayInInterval > targetDelayNanos;
+            minDelayInInterval = Long.MAX_VALUE;
+            intervalStart = nowNanos;
+        }
+        minDelayInInterval = Math.min(minDelayInInterval, queueDelayNanos);
+        return queueDelayNanos <= (overloaded ? targetDelayNanos : intervalNanos);
+    }
+
+    synchronized boolean isOverloaded() {
+        return overloaded;
+    }
+}
@@ -0,0 +1,120 @@
+package eu.kapalka.http;
+
+import eu.kapalka.http.metrics.ServerMetrics;
+import eu.kapalka.http.request.RequestParser;
+import eu.kapalka.http.response.ResponseWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * State of a connection with an HTTP client that is preserved across the (keep-alive) requests sent over
+ * the connection. The connection may be served by different threads over its lifetime, but never by more than one
+ * thread at a time.
+ */
+class ClientConnection implements Closeable {
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final SocketChannel channel;
+    private final RequestParser requestParser;
+    private final ResponseWriter responseWriter;
+    private int numRequests;
+    private long idleSinceNanos;
+    // Time (as given by System#nanoTime) by which the current request must be served, or NO_DEADLINE; read by
+    // the ConnectionReaper
+    private volatile long deadlineNanos = NO_DEADLINE;
+    // Traffic already added to the server metrics
+    private long recordedBytesReceived;
+    private long recordedBytesSent;
+    // Limits of the client shared by all its connections, or null if clients are not limited
+    private ClientLimiter.Client client;
+
+    ClientConnection(SocketChannel channel, ServerConfig config) throws IOException {
+        this.channel = channel;
+        this.requestParser = new RequestParser(channel.socket().getInputStream(), config.maxLineLength());
+        // Responses are buffered by the writer, so that pipelined responses can be sent together
+        // (see HttpServer#serveRequests)
+        this.responseWriter = new ResponseWriter(channel.socket().getOutputStream(), channel,
+                config.responseBufferSize(), config.chunkSize());
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    RequestParser getRequestParser() {
+        return requestParser;
+    }
+
+    ResponseWriter getResponseWriter() {
+        return responseWriter;
+    }
+
+    ClientLimiter.Client getClient() {
+        return client;
+    }
+
+    void setClient(ClientLimiter.Client client) {
+        this.client = client;
+    }
+
+    int getNumRequests() {
+        return numRequests;
+    }
+
+    void incrementNumRequests() {
+        numRequests++;
+    }
+
+    /**
+     * Returns the time (as given by {@link System#nanoTime()}) when the connection started waiting for the next
+     * request.
+     */
+    long getIdleSinceNanos() {
+        return idleSinceNanos;
+    }
+
+    void markIdle() {
+        idleSinceNanos = System.nanoTime();
+    }
+
+    /**
+     * Adds the bytes received and sent since the previous call to the server metrics.
+     */
+    void recordTraffic(ServerMetrics metrics) {
+        var bytesReceived = requestParser.getBytesRead();
+        var bytesSent = responseWriter.getBytesWritten();
+        metrics.addBytesReceived(bytesReceived - recordedBytesReceived);
+        metrics.addBytesSent(bytesSent - recordedBytesSent);
+        recordedBytesReceived = bytesReceived;
+        recordedBytesSent = bytesSent;
+    }
+
+    /**
+     * Sets the time (as given by {@link System#nanoTime()}) after which the connection is closed by
+     * the {@link ConnectionReaper}, unless the deadline is cleared or set again before.
+     */
+    void setDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    void clearDeadline() {
+        deadlineNanos = NO_DEADLINE;
+    }
+
+    boolean isPastDeadline(long nowNanos) {
+        var deadline = deadlineNanos;
+        return deadline != NO_DEADLINE && nowNanos - deadline > 0;
+    }
+
+    boolean isClosed() {
+        return !channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,143 @@
+package eu.kapalka.http;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits of the resources used by each client, identified by its IP address: the number of concurrent connections,
+ * and the rate of requests (a token bucket with the given rate and burst size). The state of each client is updated
+ * lock-free, so that clients do not contend with each other, and only clients with open connections or a partially
+ * empty bucket need to be tracked: the state of other clients is equal to the initial state, so it is evicted when
+ * the max number of tracked clients is reached. If all tracked clients are active, new clients are rejected.
+ * <p>
+ * The token bucket is implemented with the equivalent GCRA ("generic cell rate algorithm"), whose state is a single
+ * timestamp: the time at which the bucket will be full again.
+ */
+class ClientLimiter {
+
+    // Full sweeps of the tracked clients are expensive, so they are not repeated for each new client
+    private static final long MIN_EVICTION_INTERVAL_NANOS = 1_000_000_000;
+
+    private final int maxConnections;
+    private final long requestIntervalNanos;
+    private final long burstToleranceNanos;
+    private final int maxClients;
+    private final ConcurrentHashMap<InetAddress, Client> clients = new ConcurrentHashMap<>();
+    private final AtomicLong nextEvictionNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param maxConnections max number of concurrent connections per client, or 0 for no limit
+     * @param requestRate max sustained number of requests per second per client, or 0 for no limit
+     * @param requestBurst max number of requests per client in a burst
+     * @param maxClients max number of clients whose state is tracked
+     */
+    ClientLimiter(int maxConnections, int requestRate, int requestBurst, int maxClients) {
+        if (maxConnections < 0 || requestRate < 0 || requestBurst <= 0 || maxClients <= 0) {
+            throw new IllegalArgumentException("Invalid client limits");
+        }
+        this.maxConnections = (maxConnections == 0) ? Integer.MAX_VALUE : maxConnections;
+        this.requestIntervalNanos = (requestRate == 0) ? 0 : 1_000_000_000L / requestRate;
+        this.burstToleranceNanos = (requestBurst - 1) * requestIntervalNanos;
+        this.maxClients = maxClients;
+    }
+
+    /**
+     * Registers a new connection of the client with the given address.
+     *
+     * @return the state of the client, which must be passed back to {@link #releaseConnection(Client)} when the
+     *         connection is closed, or <code>null</code> if the client has too many connections (or if too many
+     *         clients are active)
+     */
+    Client tryAcquireConnection(InetAddress address) {
+        while (true) {
+            var client = clients.get(address);
+            if (client == null) {
+                if (clients.size() >= maxClients && !evictIdleClients()) {
+                    return null;
+                }
+                client = clients.computeIfAbsent(address, a -> new Client());
+            }
+            var connections = client.connections.get();
+            if (connections == Client.EVICTED) {
+                continue; // Replaced by a new state
+            }
+            if (connections >= maxConnections) {
+                return null;
+            }
+            if (client.connections.compareAndSet(connections, connections + 1)) {
+                return client;
+            }
+        }
+    }
+
+    void releaseConnection(Client client) {
+        client.connections.decrementAndGet();
+    }
+
+    /**
+     * Takes a token from the bucket of the client for a new request, if available.
+     *
+     * @return whether the request can be served
+     */
+    boolean tryAcquireRequest(Client client, long nowNanos) {
+        if (requestIntervalNanos == 0) {
+            return true;
+        }
+        while (true) {
+            var fullTime = client.bucketFullNanos.get();
+            var start = (fullTime - nowNanos > 0) ? fullTime : nowNanos;
+            if (start - nowNanos > burstToleranceNanos) {
+                return false; // Bucket empty
+            }
+            if (client.bucketFullNanos.compareAndSet(fullTime, start + requestIntervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the time until a token is available in the bucket of the client.
+     */
+    long getRetryDelayNanos(Client client, long nowNanos) {
+        return Math.max(0, client.bucketFullNanos.get() - burstToleranceNanos - nowNanos);
+    }
+
+    int getTrackedClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Removes the clients without connections and with a full bucket, at most once per
+     * {@link #MIN_EVICTION_INTERVAL_NANOS}.
+     *
+     * @return whether the number of tracked clients is below the limit
+     */
+    private boolean evictIdleClients() {
+        var now = System.nanoTime();
+        var nextEviction = nextEvictionNanos.get();
+        if (now - nextEviction >= 0
+                && nextEvictionNanos.compareAndSet(nextEviction, now + MIN_EVICTION_INTERVAL_NANOS)) {
+            for (var entry : clients.entrySet()) {
+                var client = entry.getValue();
+                // Clients are marked as evicted first, so that no connection is registered in the removed state
+                if (client.bucketFullNanos.get() - now <= 0
+                        && client.connections.compareAndSet(0, Client.EVICTED)) {
+                    clients.remove(entry.getKey(), client);
+                }
+            }
+        }
+        return clients.size() < maxClients;
+    }
+
+    /**
+     * State of a client.
+     */
+    static final class Client {
+        static final int EVICTED = -1;
+
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicLong bucketFullNanos = new AtomicLong(System.nanoTime());
+    }
+}
@@ -0,0 +1,77 @@
+package eu.kapalka.http;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.FINE;
+
+/**
+ * Enforces the deadlines of the connections being served (see {@link ClientConnection#setDeadline(long)}): a single
+ * thread periodically scans the registered connections and hands over the ones whose deadline has passed to
+ * the expired connection handler, which typically closes them. Setting and clearing a deadline is a volatile write
+ * on the connection, so timeouts cost nothing per request besides reading the clock; the precision of the timeouts
+ * is the check interval.
+ */
+class ConnectionReaper implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(ConnectionReaper.class.getName());
+
+    private final Set<ClientConnection> connections = ConcurrentHashMap.newKeySet();
+    private final Consumer<ClientConnection> expiredConnectionHandler;
+    private final long checkIntervalNanos;
+    private volatile boolean running = true;
+
+    /**
+     * @param expiredConnectionHandler called (from the reaper thread) for connections whose deadline has passed
+     * @param checkIntervalMs delay between scans of the connections
+     */
+    ConnectionReaper(Consumer<ClientConnection> expiredConnectionHandler, long checkIntervalMs) {
+        this.expiredConnectionHandler = expiredConnectionHandler;
+        this.checkIntervalNanos = MILLISECONDS.toNanos(checkIntervalMs);
+    }
+
+    /**
+     * Starts watching the deadline of a connection, until {@link #unregister(ClientConnection)} is called.
+     */
+    void register(ClientConnection connection) {
+        connections.add(connection);
+    }
+
+    void unregister(ClientConnection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * Stops the reaper (within one check interval).
+     */
+    void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Thread.sleep(checkIntervalNanos / 1_000_000, (int) (checkIntervalNanos % 1_000_000));
+            } catch (InterruptedException ex) {
+                return;
+            }
+            closeExpiredConnections();
+        }
+    }
+
+    void closeExpiredConnections() {
+        var now = System.nanoTime();
+        for (var connection : connections) {
+            if (connection.isPastDeadline(now)) {
+                logger.log(FINE, "Connection deadline exceeded");
+                // Only expired once, even if closing the connection does not unregister it immediately
+                connection.clearDeadline();
+                expiredConnectionHandler.accept(connection);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package eu.kapalka.http;
+
+/**
+ * Policy used by {@link HttpServer} to run the code that serves client connections.
+ */
+public enum ExecutionMode {
+
+    /**
+     * Each connection is served by a thread from a fixed-size thread pool. Connections that cannot be served
+     * immediately wait in the queue of the thread pool.
+     */
+    THREAD_POOL,
+
+    /**
+     * Each connection is served by a new virtual thread. The number of connections served concurrently is only
+     * limited by the maximum number of concurrent connections configured in {@link HttpServer}.
+     */
+    VIRTUAL_THREADS,
+
+    /**
+     * Connections waiting for the next request are monitored by selector loops (one per CPU core) without
+     * occupying any thread. As soon as request data is available on a connection, the connection is served
+     * by a thread from a fixed-size thread pool until it becomes idle again. This allows keeping a large number
+     * of idle keep-alive connections open.
+     */
+    SELECTOR
+}
@@ -2,21 +2,31 @@ package eu.kapalka.http;
 
 import eu.kapalka.http.handler.ResourceRequestHandler;
 import eu.kapalka.http.handler.TopLevelRequestHandler;
-import eu.kapalka.http.request.RequestParser;
+import eu.kapalka.http.metrics.ServerMetrics;
+import eu.kapalka.http.request.HttpMethod;
 import eu.kapalka.http.response.HttpStatus;
 import eu.kapalka.http.response.Response;
 import eu.kapalka.http.response.ResponseWriter;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.logging.Level.*;
 
 /**
@@ -27,127 +37,614 @@ public class HttpServer {
 
     private static final Logger logger = Logger.getLogger(HttpServer.class.getName());
 
-    // Max length of connection queue
-    private static final int BACKLOG_SIZE = 100;
+    // Max delay between checks for connections that exceeded the request timeout
+    private static final long DEADLINE_CHECK_INTERVAL_MS = 100;
 
-    // Size of the static thread pool
-    private static final int THREADPOOL_SIZE = 10;
-
-    // Timeout for each individual read operation on the data stream sent from the HTTP client.
-    // It also limits the idle time between subsequent requests sent over the same connection (using keep-alive).
-    private static final int SOCKET_READ_TIMEOUT_MS = 5_000;
-
-    // Max time for processing each HTTP request, including the idle time since the end of the latest request
-    // over the same connection.
-    private static final long REQUEST_TIMEOUT_MS = 10_000;
-
-    // Max number of HTTP requests that can be served over the same connection. Together with REQUEST_TIMEOUT_MS
-    // it limits the time an individual thread in the thread pool can be blocked by a single client connection.
-    private static final int MAX_NUM_REQUESTS_PER_CONNECTION = 10;
+    // Sent to the clients of connections rejected because of an overload, which should resolve within seconds
+    private static final Response OVERLOADED_RESPONSE = Response.builder()
+            .status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header("Retry-After", "1")
+            .body("Server is overloaded, please retry later")
+            .build();
+    private static final Response TOO_MANY_CONNECTIONS_RESPONSE = Response.builder()
+            .status(HttpStatus.TOO_MANY_REQUESTS)
+            .header("Retry-After", "1")
+            .body("Too many concurrent connections from the client")
+            .build();
 
     private final String bindAddress;
     private final int port;
+    private final ServerConfig config;
+    private final long requestTimeoutNanos;
+    private final ServerMetrics metrics;
+    private final AdmissionController admissionController;
+    private final ClientLimiter clientLimiter;
     private final TopLevelRequestHandler topLevelRequestHandler;
 
-    private ServerSocket socket;
+    // Written once the other fields are set up, so that threads that see the sockets also see the rest of the server
+    private volatile ServerSocketChannel[] sockets;
+    private final CountDownLatch startup = new CountDownLatch(1);
+    private Thread[] acceptorThreads;
+    private volatile boolean stopped;
+    private Semaphore connectionPermits;
     private ExecutorService threadPool;
-    private ScheduledExecutorService timerThreadPool;
+    private ConnectionReaper connectionReaper;
+    private SelectorLoop[] selectorLoops;
+    private final AtomicInteger nextSelectorLoop = new AtomicInteger();
 
+    /**
+     * Creates a server that serves connections using a fixed-size thread pool, without any limit on the number
+     * of connections waiting for a free thread.
+     */
     public HttpServer(String bindAddress, int port) {
+        this(bindAddress, port, ServerConfig.builder().build());
+    }
+
+    /**
+     * Creates a server that serves connections according to <code>executionMode</code>. At most
+     * <code>maxConcurrentConnections</code> connections are accepted at any time (in thread pool mode, this includes
+     * connections waiting for a free thread): when the limit is reached, the server stops accepting connections,
+     * which then wait in the backlog queue of the operating system.
+     */
+    public HttpServer(String bindAddress, int port, ExecutionMode executionMode, int maxConcurrentConnections) {
+        this(bindAddress, port, ServerConfig.builder()
+                .executionMode(executionMode)
+                .maxConcurrentConnections(maxConcurrentConnections)
+                .build());
+    }
+
+    /**
+     * Creates a server with the given tuning parameters (see {@link ServerConfig}).
+     */
+    public HttpServer(String bindAddress, int port, ServerConfig config) {
         this.bindAddress = bindAddress;
         this.port = port;
-        this.topLevelRequestHandler = new TopLevelRequestHandler();
+        this.config = config;
+        this.requestTimeoutNanos = MILLISECONDS.toNanos(config.requestTimeoutMs());
+        this.admissionController = (config.admissionTargetDelayMs() == 0) ? null
+                : new AdmissionController(MILLISECONDS.toNanos(config.admissionTargetDelayMs()),
+                        MILLISECONDS.toNanos(config.admissionIntervalMs()));
+        this.clientLimiter = (config.clientMaxConnections() == 0 && config.clientRequestRate() == 0) ? null
+                : new ClientLimiter(config.clientMaxConnections(), config.clientRequestRate(),
+                        config.clientRequestBurst(), config.maxTrackedClients());
+        this.metrics = new ServerMetrics();
+        this.topLevelRequestHandler = new TopLevelRequestHandler(metrics);
+    }
+
+    /**
+     * Returns the metrics of the server, e.g., to expose them with a
+     * {@link eu.kapalka.http.handler.MetricsRequestHandler}.
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
     }
 
     /**
      * Register <code>requestHandler</code> that will handle all requests with URI path starting with the given
-     * prefix <code>pathPrefix</code>.
+     * prefix <code>pathPrefix</code>, unless a longer registered prefix matches the path.
      */
     public void registerRequestHandler(String pathPrefix, ResourceRequestHandler requestHandler) {
         topLevelRequestHandler.registerRequestHandler(pathPrefix, requestHandler);
     }
 
+    /**
+     * Register <code>requestHandler</code> that will handle requests with the given method and URI path starting
+     * with the given prefix <code>pathPrefix</code> (see {@link TopLevelRequestHandler}).
+     */
+    public void registerRequestHandler(HttpMethod method, String pathPrefix, ResourceRequestHandler requestHandler) {
+        topLevelRequestHandler.registerRequestHandler(method, pathPrefix, requestHandler);
+    }
+
     /**
      * Start the HTTP server. This method blocks until the server is stopped with method {@link #stop()}
-     * or shut down because of an error.
+     * or shut down because of an error: when it runs in another thread, {@link #awaitStarted(Duration)} waits until
+     * the server accepts connections.
      */
     public void start() {
+        var executionMode = config.executionMode();
+        try {
+            acceptorThreads = new Thread[config.acceptors()];
+            acceptorThreads[0] = Thread.currentThread();
+            connectionPermits = new Semaphore(config.maxConcurrentConnections());
+            threadPool = switch (executionMode) {
+                case THREAD_POOL, SELECTOR -> Executors.newFixedThreadPool(config.threadPoolSize());
+                case VIRTUAL_THREADS -> Executors.newVirtualThreadPerTaskExecutor();
+            };
+            startConnectionReaper();
+            if (executionMode == ExecutionMode.SELECTOR) {
+                startSelectorLoops();
+            }
+            sockets = openServerSockets();
+            logger.log(INFO, "HTTP server started on {0} port {1} (execution mode: {2})",
+                    new Object[]{bindAddress, getPort(), executionMode});
+            logger.log(INFO, "Server configuration: {0}", config);
+        } catch (IOException ex) {
+            logger.log(SEVERE, "HTTP server shut down because of network error", ex);
+            return;
+        } finally {
+            startup.countDown();
+        }
+        synchronized (this) {
+            for (int i = 1; i < acceptorThreads.length; i++) {
+                // Without SO_REUSEPORT, all acceptors share the same server socket
+                var socket = sockets[i % sockets.length];
+                var acceptor = i;
+                var thread = new Thread(() -> acceptConnections(acceptor, socket), "http-acceptor-" + i);
+                thread.setDaemon(true);
+                acceptorThreads[i] = thread;
+                thread.start();
+            }
+        }
+        acceptConnections(0, sockets[0]);
+    }
+
+    /**
+     * Runs the accept loop of an acceptor thread. The thread is registered in {@link #acceptorThreads} (under
+     * the lock of the server) while it runs the loop, so that {@link #stop()} interrupts it only then: the first
+     * acceptor is the thread that called {@link #start()}, which does other things once the server is stopped.
+     */
+    private void acceptConnections(int acceptor, ServerSocketChannel socket) {
         try {
-            threadPool = Executors.newFixedThreadPool(THREADPOOL_SIZE);
-            timerThreadPool = Executors.newSingleThreadScheduledExecutor();
-            socket = new ServerSocket(port, BACKLOG_SIZE, InetAddress.getByName(bindAddress));
-            logger.log(INFO, "HTTP server started on {0} port {1}", new Object[]{bindAddress, socket.getLocalPort()});
             while (true) {
-                var connection = socket.accept();
-                logger.log(FINE, "New connection from {0}", connection.getRemoteSocketAddress());
+                connectionPermits.acquire();
+                var connection = acceptConnection(acceptor, socket);
+                if (connection == null) {
+                    continue;
+                }
+                if (!acquireClientConnection(connection)) {
+                    threadPool.execute(() -> rejectClientConnection(connection));
+                    continue;
+                }
 
-                threadPool.execute(() -> handleConnection(connection));
+                if (config.executionMode() == ExecutionMode.SELECTOR) {
+                    // Most clients send the request right after connecting, but we don't want to rely on it
+                    parkConnection(connection);
+                } else {
+                    var enqueuedNanos = System.nanoTime();
+                    threadPool.execute(() -> handleConnection(connection, enqueuedNanos));
+                }
             }
         } catch (IOException ex) {
-            logger.log(SEVERE, "HTTP server shut down because of network error", ex);
+            if (!stopped) {
+                logger.log(SEVERE, "HTTP server shut down because of network error", ex);
+                // All acceptors end together: a server socket left open without its acceptor would still receive
+                // its share of the new connections (with SO_REUSEPORT), which would never be accepted
+                stopAfterError();
+            }
+        } catch (InterruptedException ex) {
+            logger.log(INFO, "HTTP server acceptor thread interrupted");
+        } finally {
+            synchronized (this) {
+                acceptorThreads[acceptor] = null;
+                if (stopped) {
+                    // The interrupt of stop() may have arrived after the loop ended (e.g., on the closed socket)
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+    private void stopAfterError() {
+        try {
+            stop();
+        } catch (IOException ex) {
+            logger.log(WARNING, "Error when shutting down the HTTP server", ex);
         }
     }
 
     /**
      * Stop the running HTTP server.
      */
-    public void stop() throws IOException {
-        logger.log(INFO, "Shutting down the HTTP server");
-        if (socket != null) {
+    public synchronized void stop() throws IOException {
+        if (sockets != null && !stopped) {
+            logger.log(INFO, "Shutting down the HTTP server");
+            stopped = true;
             threadPool.shutdown();
-            timerThreadPool.shutdown();
-            socket.close();
+            connectionReaper.stop();
+            if (selectorLoops != null) {
+                for (var selectorLoop : selectorLoops) {
+                    selectorLoop.stop();
+                }
+            }
+            for (var socket : sockets) {
+                socket.close();
+            }
+            // Acceptor threads might be waiting for a connection permit rather than blocked on the socket
+            for (var acceptorThread : acceptorThreads) {
+                if (acceptorThread != null) {
+                    acceptorThread.interrupt();
+                }
+            }
         }
     }
 
+    /**
+     * Blocks until the server listens for connections, i.e., until its server sockets are bound (connections are
+     * queued by the operating system until they are accepted), or until it fails to start.
+     *
+     * @return <code>true</code> if the server started, <code>false</code> if it failed to start or if it did not start
+     *         within the given timeout
+     */
+    public boolean awaitStarted(Duration timeout) throws InterruptedException {
+        return startup.await(timeout.toNanos(), NANOSECONDS) && sockets != null;
+    }
+
     /**
      * Returns the port on which the server is listening.
+     *
+     * @throws IllegalStateException if the server has not started (see {@link #awaitStarted(Duration)})
      */
     public int getPort() {
-        return socket.getLocalPort();
+        var serverSockets = sockets;
+        if (serverSockets == null) {
+            throw new IllegalStateException("HTTP server not started");
+        }
+        return serverSockets[0].socket().getLocalPort();
     }
 
-    private void handleConnection(Socket connection) {
+    /**
+     * Opens a server socket per acceptor, all bound to the same address with SO_REUSEPORT, or a single server socket
+     * if there is a single acceptor or if SO_REUSEPORT is not supported.
+     */
+    private ServerSocketChannel[] openServerSockets() throws IOException {
+        var multipleSockets = config.acceptors() > 1 && isReusePortSupported();
+        if (config.acceptors() > 1 && !multipleSockets) {
+            logger.log(WARNING, "SO_REUSEPORT is not supported on this platform: acceptors share one server socket");
+        }
+        var serverSockets = new ServerSocketChannel[multipleSockets ? config.acceptors() : 1];
+        var address = new InetSocketAddress(InetAddress.getByName(bindAddress), port);
+        try {
+            for (int i = 0; i < serverSockets.length; i++) {
+                serverSockets[i] = openServerSocket(address, multipleSockets || config.reusePort());
+                // If the port is 0, the other sockets must be bound to the port chosen for the first one
+                address = (InetSocketAddress) serverSockets[0].getLocalAddress();
+            }
+            return serverSockets;
+        } catch (IOException ex) {
+            for (var serverSocket : serverSockets) {
+                if (serverSocket != null) {
+                    serverSocket.close();
+                }
+            }
+            throw ex;
+        }
+    }
+
+    private static boolean isReusePortSupported() throws IOException {
+        try (var serverChannel = ServerSocketChannel.open()) {
+            return serverChannel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        }
+    }
+
+    private ServerSocketChannel openServerSocket(InetSocketAddress address, boolean reusePort) throws IOException {
+        var serverChannel = ServerSocketChannel.open();
+        try {
+            // Accepted connections inherit the receive buffer size, which must be set before binding to take part
+            // in the TCP window scale negotiation
+            if (config.receiveBufferSize() > 0) {
+                serverChannel.setOption(StandardSocketOptions.SO_RCVBUF, config.receiveBufferSize());
+            }
+            if (reusePort) {
+                if (serverChannel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                    serverChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                } else {
+                    logger.log(WARNING, "SO_REUSEPORT is not supported on this platform");
+                }
+            }
+            serverChannel.bind(address, config.backlogSize());
+            return serverChannel;
+        } catch (IOException ex) {
+            serverChannel.close();
+            throw ex;
+        }
+    }
+
+    private void startConnectionReaper() {
+        connectionReaper = new ConnectionReaper(this::closeTimedOutConnection, DEADLINE_CHECK_INTERVAL_MS);
+        var thread = new Thread(connectionReaper, "http-connection-reaper");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void startSelectorLoops() throws IOException {
+        selectorLoops = new SelectorLoop[config.selectorLoops()];
+        for (int i = 0; i < selectorLoops.length; i++) {
+            selectorLoops[i] = new SelectorLoop(this::dispatchReadyConnection, this::releaseConnection,
+                    config.socketReadTimeoutMs(), metrics);
+            var thread = new Thread(selectorLoops[i], "http-selector-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Accepts a new connection and sets it up.
+     *
+     * @param acceptor index of the acceptor thread, for metrics
+     * @return the new connection, or <code>null</code> if it could not be set up (e.g., because the client reset it
+     *         right after connecting)
+     * @throws IOException if the server socket fails
+     */
+    private ClientConnection acceptConnection(int acceptor, ServerSocketChannel socket) throws IOException {
+        SocketChannel channel;
+        try {
+            channel = socket.accept();
+        } catch (IOException ex) {
+            connectionPermits.release();
+            throw ex;
+        }
+        try {
+            logger.log(FINE, "New connection from {0}", channel.getRemoteAddress());
+            channel.socket().setSoTimeout(config.socketReadTimeoutMs());
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, config.tcpNoDelay());
+            if (config.sendBufferSize() > 0) {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, config.sendBufferSize());
+            }
+            var connection = new ClientConnection(channel, config);
+            connectionReaper.register(connection);
+            metrics.connectionAccepted(acceptor);
+            return connection;
+        } catch (IOException ex) {
+            // Only this connection is affected
+            logger.log(FINE, "Cannot set up new connection", ex);
+            try {
+                channel.close();
+            } catch (IOException closeException) {
+                // Ignore
+            }
+            connectionPermits.release();
+            return null;
+        }
+    }
+
+    /**
+     * Registers the connection with the limits of its client (see {@link ClientLimiter}).
+     *
+     * @return <code>false</code> if the client has too many connections
+     */
+    private boolean acquireClientConnection(ClientConnection connection) {
+        if (clientLimiter == null) {
+            return true;
+        }
+        // The address is known since the connection was accepted, so this does not fail if the client has reset it
+        var remoteAddress = connection.getChannel().socket().getInetAddress();
+        if (remoteAddress == null) {
+            return true; // Already closed, the first read fails
+        }
+        var client = clientLimiter.tryAcquireConnection(remoteAddress);
+        connection.setClient(client);
+        return client != null;
+    }
+
+    /**
+     * Sends an HTTP 429 response to the first request of a connection of a client that has too many connections.
+     * Runs on a worker thread, as the request may not have been received yet.
+     */
+    private void rejectClientConnection(ClientConnection connection) {
+        logger.log(FINE, "Rejecting connection because of too many connections from the client");
         try (connection) {
-            connection.setSoTimeout(SOCKET_READ_TIMEOUT_MS);
-            handleRequestStream(connection);
+            rejectRequest(connection, TOO_MANY_CONNECTIONS_RESPONSE);
+        } catch (IOException ex) {
+            handleCommunicationError(ex);
+        } finally {
+            releaseConnection(connection);
+        }
+    }
+
+    private void releaseConnection(ClientConnection connection) {
+        if (connection.getClient() != null) {
+            clientLimiter.releaseConnection(connection.getClient());
+        }
+        connectionReaper.unregister(connection);
+        connection.recordTraffic(metrics);
+        metrics.connectionClosed();
+        connectionPermits.release();
+    }
+
+    private void handleConnection(ClientConnection connection, long enqueuedNanos) {
+        try (connection) {
+            if (admit(enqueuedNanos)) {
+                serveRequests(connection, false);
+            } else {
+                rejectOverloadedConnection(connection);
+            }
+        } catch (IOException ex) {
+            handleCommunicationError(ex);
+        } finally {
+            releaseConnection(connection);
+        }
+    }
+
+    private void dispatchReadyConnection(ClientConnection connection) {
+        try {
+            var enqueuedNanos = System.nanoTime();
+            threadPool.execute(() -> handleReadyConnection(connection, enqueuedNanos));
+        } catch (RejectedExecutionException ex) {
+            // Server is being stopped
+            closeConnection(connection);
+            releaseConnection(connection);
+        }
+    }
+
+    private void handleReadyConnection(ClientConnection connection, long enqueuedNanos) {
+        var keepOpen = false;
+        try {
+            connection.getChannel().configureBlocking(true);
+            if (admit(enqueuedNanos)) {
+                keepOpen = serveRequests(connection, true);
+            } else {
+                rejectOverloadedConnection(connection);
+            }
+            if (keepOpen) {
+                parkConnection(connection);
+            }
         } catch (IOException ex) {
-            logger.log(FINE, "Communication with HTTP client interrupted because of I/O error or timeout", ex);
+            handleCommunicationError(ex);
+            keepOpen = false;
+        } finally {
+            if (!keepOpen) {
+                closeConnection(connection);
+                releaseConnection(connection);
+            }
         }
     }
 
-    private void handleRequestStream(Socket connection) throws IOException {
-        var responseWriter = new ResponseWriter(connection.getOutputStream());
+    /**
+     * Returns whether a connection that waited in the queue of the thread pool since <code>enqueuedNanos</code>
+     * is to be served (see {@link AdmissionController}).
+     */
+    private boolean admit(long enqueuedNanos) {
+        var now = System.nanoTime();
+        var queueDelay = now - enqueuedNanos;
+        metrics.recordQueueTime(queueDelay);
+        return admissionController == null || admissionController.admit(queueDelay, now);
+    }
+
+    /**
+     * Sends an HTTP 503 response to the request available on the connection, if any, without handling the request.
+     * The connection is then to be closed.
+     */
+    private void rejectOverloadedConnection(ClientConnection connection) throws IOException {
+        logger.log(FINE, "Rejecting connection because the server is overloaded");
+        metrics.connectionShed();
+        var requestParser = connection.getRequestParser();
+        if (!requestParser.isInputAvailable()) {
+            return; // Closed like an idle connection
+        }
+        rejectRequest(connection, OVERLOADED_RESPONSE);
+    }
+
+    /**
+     * Reads the next request on the connection and sends the given response to it, without handling the request.
+     * The connection is then to be closed.
+     */
+    private void rejectRequest(ClientConnection connection, Response response) throws IOException {
+        connection.setDeadline(System.nanoTime() + requestTimeoutNanos);
         try {
-            var requestParser = new RequestParser(connection.getInputStream());
+            // The request is read, so that closing the connection with unread data does not reset it before
+            // the client reads the response
+            connection.getRequestParser().parse();
+            metrics.requestHandled(ServerMetrics.REJECTED, response.getStatus());
+            var responseWriter = connection.getResponseWriter();
+            responseWriter.writeFull(response, false);
+            responseWriter.flush();
+            connection.recordTraffic(metrics);
+        } finally {
+            connection.clearDeadline();
+        }
+    }
+
+    private void handleCommunicationError(IOException exception) {
+        logger.log(FINE, "Communication with HTTP client interrupted because of I/O error or timeout", exception);
+        if (exception instanceof SocketTimeoutException) {
+            metrics.timeout(ServerMetrics.Timeout.READ);
+        }
+    }
+
+    private void parkConnection(ClientConnection connection) throws IOException {
+        var index = Math.floorMod(nextSelectorLoop.getAndIncrement(), selectorLoops.length);
+        selectorLoops[index].park(connection);
+    }
+
+    /**
+     * Serves requests sent over the given connection. Requests that are already available (e.g., because the client
+     * pipelines requests) are served without flushing the responses in between: the responses are sent together
+     * when there is no more request data to process, which saves a network round-trip per request.
+     *
+     * @param connection client connection
+     * @param returnWhenIdle whether to return as soon as no more request data is available without blocking
+     * @return <code>true</code> if the connection should be kept open to serve more requests
+     */
+    private boolean serveRequests(ClientConnection connection, boolean returnWhenIdle) throws IOException {
+        var responseWriter = connection.getResponseWriter();
+        try {
+            var requestParser = connection.getRequestParser();
             // Handle multiple requests on the same connection if keep-alive is requested by the client
-            int numRequests = 0;
-            boolean keepAlive = false;
-            do {
-                // Set timeout for serving the request (cannot be set on the socket itself)
-                var timeoutTask = timerThreadPool.schedule(() -> closeConnection(connection),
-                        REQUEST_TIMEOUT_MS, MILLISECONDS);
+            while (true) {
+                // Set timeout for serving the request (cannot be set on the socket itself). The deadline of a request
+                // also covers flushing its response, which blocks if the client does not read it.
+                connection.setDeadline(System.nanoTime() + requestTimeoutNanos);
 
+                // The parsing time is measured from the arrival of the request, not including the idle time
+                requestParser.awaitRequest();
+                var parseStart = System.nanoTime();
                 var request = requestParser.parse();
-                keepAlive = topLevelRequestHandler.handleRequest(request, responseWriter);
+                var parseEnd = System.nanoTime();
+                metrics.recordParseTime(parseEnd - parseStart);
+                if (connection.getNumRequests() > 0) {
+                    metrics.requestOnReusedConnection();
+                }
+                var client = connection.getClient();
+                if (client != null && !clientLimiter.tryAcquireRequest(client, parseEnd)) {
+                    rejectRateLimitedRequest(connection, client, parseEnd);
+                    return false;
+                }
 
-                timeoutTask.cancel(false);
-                numRequests++;
-            } while (keepAlive && numRequests < MAX_NUM_REQUESTS_PER_CONNECTION);
+                var isLastAllowedRequest = connection.getNumRequests() + 1 >= config.maxRequestsPerConnection();
+                var keepAlive = topLevelRequestHandler.handleRequest(request, responseWriter, !isLastAllowedRequest);
+                if (keepAlive) {
+                    // Still covered by the request timeout, in case the client is slow to send the rest of the body
+                    requestParser.discardUnreadBody();
+                }
 
-            logger.log(FINE, "Connection is to be closed after {0} requests", numRequests);
+                connection.incrementNumRequests();
+
+                if (!keepAlive) {
+                    logger.log(FINE, "Connection is to be closed after {0} requests", connection.getNumRequests());
+                    responseWriter.flush();
+                    connection.recordTraffic(metrics);
+                    return false;
+                }
+                if (!requestParser.isInputAvailable()) {
+                    // Reading the next request would block, so the client must receive all responses first
+                    responseWriter.flush();
+                    connection.recordTraffic(metrics);
+                    if (returnWhenIdle) {
+                        return true;
+                    }
+                }
+            }
         } catch (RuntimeException ex) {
             logger.log(SEVERE, "Internal server error", ex);
             handleServerError(ex, responseWriter);
+            return false;
+        } finally {
+            connection.clearDeadline();
         }
     }
 
-    private void closeConnection(Socket connection) {
+    /**
+     * Sends an HTTP 429 response to a request of a client that exceeded its request rate. The connection is then
+     * to be closed, so that it does not occupy a thread while the client waits.
+     */
+    private void rejectRateLimitedRequest(ClientConnection connection, ClientLimiter.Client client, long nowNanos)
+            throws IOException {
+        logger.log(FINE, "Rejecting request because the client exceeded its request rate");
+        var retryDelaySeconds = Math.max(1, NANOSECONDS.toSeconds(clientLimiter.getRetryDelayNanos(client, nowNanos)
+                + SECONDS.toNanos(1) - 1));
+        var response = Response.builder()
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .header("Retry-After", Long.toString(retryDelaySeconds))
+                .body("Too many requests from the client")
+                .build();
+        metrics.requestHandled(ServerMetrics.REJECTED, response.getStatus());
+        var responseWriter = connection.getResponseWriter();
+        responseWriter.writeFull(response, false);
+        responseWriter.flush();
+        connection.recordTraffic(metrics);
+    }
+
+    private void closeTimedOutConnection(ClientConnection connection) {
         if (connection.isClosed()) {
             return;
         }
 
         logger.log(FINE, "Closing connection because of request timeout");
+        metrics.timeout(ServerMetrics.Timeout.REQUEST);
+        closeConnection(connection);
+    }
+
+    private void closeConnection(ClientConnection connection) {
         try {
             connection.close();
         } catch (IOException ex) {
@@ -166,5 +663,6 @@ public class HttpServer {
                 .body("Server encountered an internal error while processing the request")
                 .build();
         responseWriter.writeFull(response, false);
+        responseWriter.flush();
     }
 }
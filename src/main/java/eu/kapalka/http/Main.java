@@ -1,10 +1,18 @@
 package eu.kapalka.http;
 
+import eu.kapalka.http.handler.MetricsRequestHandler;
 import eu.kapalka.http.handler.StaticContentRequestHandler;
+import eu.kapalka.http.repository.CompressedContentCache;
+import eu.kapalka.http.repository.FileCache;
+import eu.kapalka.http.repository.MappedFileCache;
 import eu.kapalka.http.repository.StaticFileRepository;
+import eu.kapalka.http.request.HttpMethod;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Properties;
 import java.util.logging.LogManager;
 
 import static java.lang.Integer.parseInt;
@@ -14,9 +22,23 @@ import static java.lang.Integer.parseInt;
  */
 public class Main {
 
+    // File cache settings: cache files up to 64 KiB, using at most 64 MiB of memory, and check for file
+    // modifications at most once per second
+    private static final long FILE_CACHE_MAX_ENTRY_SIZE = 64 * 1024;
+    private static final long FILE_CACHE_MAX_TOTAL_SIZE = 64 * 1024 * 1024;
+    private static final long FILE_CACHE_REVALIDATION_INTERVAL_MS = 1_000;
+    // Compress text files up to 1 MiB on the fly, keeping at most 16 MiB of compressed contents
+    private static final long COMPRESSION_MAX_FILE_SIZE = 1024 * 1024;
+    private static final long COMPRESSION_CACHE_MAX_TOTAL_SIZE = 16 * 1024 * 1024;
+    // Memory mappings of large files (if enabled) are released after one minute without requests
+    private static final long MAPPED_FILE_IDLE_TIMEOUT_MS = 60_000;
+    // Path of the server metrics (in Prometheus format), which takes precedence over a file with the same path
+    private static final String METRICS_PATH = "/metrics";
+
     private final Path baseDir;
     private final String bindAddress;
     private final int portNumber;
+    private final ServerConfig serverConfig;
 
     public static void main(String[] args) throws IOException {
         LogManager.getLogManager().readConfiguration(Main.class.getResourceAsStream("/logging.properties"));
@@ -24,19 +46,44 @@ public class Main {
     }
 
     private Main(String[] args) {
-        if (args.length != 3) {
+        var configFile = (Path) null;
+        var serverParameters = new Properties();
+        var positionalArgs = new ArrayList<String>();
+        for (var arg : args) {
+            if (arg.startsWith("--config=")) {
+                configFile = Path.of(arg.substring("--config=".length()));
+            } else if (arg.startsWith("--")) {
+                var separator = arg.indexOf('=');
+                if (separator < 0) {
+                    System.err.println("Invalid option: " + arg);
+                    printUsageAndExit();
+                }
+                serverParameters.setProperty(arg.substring(2, separator), arg.substring(separator + 1));
+            } else {
+                positionalArgs.add(arg);
+            }
+        }
+        if (positionalArgs.size() != 3) {
             printUsageAndExit();
         }
-        this.baseDir = Path.of(args[0]);
-        this.bindAddress = args[1];
-        this.portNumber = parsePortNumber(args[2]);
+        this.baseDir = Path.of(positionalArgs.get(0));
+        this.bindAddress = positionalArgs.get(1);
+        this.portNumber = parsePortNumber(positionalArgs.get(2));
+        this.serverConfig = parseServerConfig(configFile, serverParameters);
    }
 
     private void startServer() {
-        var fileRepository = new StaticFileRepository(baseDir);
+        var fileCache = new FileCache(FILE_CACHE_MAX_ENTRY_SIZE, FILE_CACHE_MAX_TOTAL_SIZE,
+                FILE_CACHE_REVALIDATION_INTERVAL_MS);
+        var compressedContentCache = new CompressedContentCache(COMPRESSION_MAX_FILE_SIZE,
+                COMPRESSION_CACHE_MAX_TOTAL_SIZE);
+        var mappedFileCache = (serverConfig.mappedFileMinSize() == 0) ? null
+                : new MappedFileCache(serverConfig.mappedFileMinSize(), MAPPED_FILE_IDLE_TIMEOUT_MS);
+        var fileRepository = new StaticFileRepository(baseDir, fileCache, mappedFileCache, compressedContentCache);
         var staticFileHandler = new StaticContentRequestHandler(fileRepository);
-        var server = new HttpServer(bindAddress, portNumber);
+        var server = new HttpServer(bindAddress, portNumber, serverConfig);
         server.registerRequestHandler("/", staticFileHandler);
+        server.registerRequestHandler(HttpMethod.GET, METRICS_PATH, new MetricsRequestHandler(server.getMetrics()));
         server.start();
     }
 
@@ -50,13 +97,47 @@ public class Main {
         }
     }
 
+    /**
+     * Loads the server parameters from <code>configFile</code> (if any), overridden by the command-line options.
+     */
+    private ServerConfig parseServerConfig(Path configFile, Properties commandLineParameters) {
+        var parameters = new Properties();
+        if (configFile != null) {
+            try (var reader = Files.newBufferedReader(configFile)) {
+                parameters.load(reader);
+            } catch (IOException ex) {
+                System.err.println("Cannot read configuration file: " + ex);
+                printUsageAndExit();
+            }
+        }
+        parameters.putAll(commandLineParameters);
+        try {
+            return ServerConfig.fromProperties(parameters);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            printUsageAndExit();
+            return null; // Not reachable but required to make compiler happy
+        }
+    }
+
     private void printUsageAndExit() {
         System.err.println("""
-                Usage: run-server BASEDIR BINDADDR PORT
+                Usage: run-server [--config=FILE] [--NAME=VALUE]... BASEDIR BINDADDR PORT
                 
                 Starts HTTP server using bind address BINDADDR and port number PORT.
                 Files under directory BASEDIR are exposed as HTTP resources, e.g.,
                 URL "/some/file.txt" corresponds to file "$BASEDIR/some/file.txt".
+                Server metrics are exposed in Prometheus format under URL "/metrics".
+                
+                Server parameters (see class ServerConfig) can be set in properties file FILE,
+                e.g., "threadPoolSize=32", and overridden with options, e.g., "--threadPoolSize=32":
+                  executionMode (THREAD_POOL, VIRTUAL_THREADS or SELECTOR), maxConcurrentConnections,
+                  backlogSize, acceptors, threadPoolSize, selectorLoops, socketReadTimeoutMs, requestTimeoutMs,
+                  maxRequestsPerConnection, admissionTargetDelayMs (e.g., 20 to enable load shedding),
+                  admissionIntervalMs, clientMaxConnections, clientRequestRate (0 for no limit),
+                  clientRequestBurst, maxTrackedClients, maxLineLength, responseBufferSize, chunkSize,
+                  receiveBufferSize, sendBufferSize (0 for the OS default), tcpNoDelay, reusePort,
+                  mappedFileMinSize (e.g., 1048576 to serve files of 1 MiB and more from memory mappings)
                 """);
         System.exit(1);
     }
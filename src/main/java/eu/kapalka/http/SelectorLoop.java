@@ -0,0 +1,152 @@
+package eu.kapalka.http;
+
+import eu.kapalka.http.metrics.ServerMetrics;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.SEVERE;
+
+/**
+ * Event loop that waits, without blocking any thread per connection, until idle client connections receive data.
+ * Connections are handed over to the loop with {@link #park(ClientConnection)}. As soon as data is available on
+ * a connection, the connection is removed from the loop and passed to the ready connection handler, which can
+ * use blocking I/O operations to serve the request(s). Connections that stay idle for longer than the idle timeout
+ * are closed.
+ */
+class SelectorLoop implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(SelectorLoop.class.getName());
+
+    // Max delay between checks for connections that exceeded the idle timeout
+    private static final long IDLE_CHECK_INTERVAL_MS = 500;
+
+    private final Selector selector;
+    private final Queue<ClientConnection> pendingConnections = new ConcurrentLinkedQueue<>();
+    private final Consumer<ClientConnection> readyConnectionHandler;
+    private final Consumer<ClientConnection> closedConnectionHandler;
+    private final long idleTimeoutNanos;
+    private final ServerMetrics metrics;
+    private volatile boolean running = true;
+
+    /**
+     * @param readyConnectionHandler called (from the loop thread) for connections with data available
+     * @param closedConnectionHandler called (from the loop thread) for connections closed by the loop
+     * @param idleTimeoutMs max time a connection can wait for the next request
+     * @param metrics metrics where idle timeouts are recorded
+     */
+    SelectorLoop(Consumer<ClientConnection> readyConnectionHandler,
+                 Consumer<ClientConnection> closedConnectionHandler, long idleTimeoutMs, ServerMetrics metrics)
+            throws IOException {
+        this.selector = Selector.open();
+        this.readyConnectionHandler = readyConnectionHandler;
+        this.closedConnectionHandler = closedConnectionHandler;
+        this.idleTimeoutNanos = MILLISECONDS.toNanos(idleTimeoutMs);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Hands over an idle connection to this loop. The connection must not be used by the calling thread afterward.
+     * This method can be called from any thread.
+     */
+    void park(ClientConnection connection) throws IOException {
+        connection.getChannel().configureBlocking(false);
+        connection.markIdle();
+        pendingConnections.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * Stops the loop and closes all connections that are currently parked.
+     */
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try (selector) {
+            while (running) {
+                selector.select(IDLE_CHECK_INTERVAL_MS);
+                registerPendingConnections();
+                dispatchReadyConnections();
+                closeIdleConnections();
+            }
+            closeAllConnections();
+        } catch (IOException ex) {
+            logger.log(SEVERE, "Selector loop stopped because of I/O error", ex);
+        }
+    }
+
+    private void registerPendingConnections() {
+        ClientConnection connection;
+        while ((connection = pendingConnections.poll()) != null) {
+            try {
+                connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+            } catch (ClosedChannelException ex) {
+                closeConnection(connection);
+            }
+        }
+    }
+
+    private void dispatchReadyConnections() throws IOException {
+        var selectedKeys = selector.selectedKeys();
+        if (selectedKeys.isEmpty()) {
+            return;
+        }
+
+        var readyConnections = new ArrayList<ClientConnection>(selectedKeys.size());
+        for (var key : selectedKeys) {
+            key.cancel();
+            readyConnections.add((ClientConnection) key.attachment());
+        }
+        selectedKeys.clear();
+
+        // Cancelled keys are only removed during the next selection operation: this is needed before the ready
+        // connections can be switched back to blocking mode
+        selector.selectNow();
+        readyConnections.forEach(readyConnectionHandler);
+    }
+
+    private void closeIdleConnections() {
+        var now = System.nanoTime();
+        for (var key : selector.keys()) {
+            var connection = (ClientConnection) key.attachment();
+            if (key.isValid() && now - connection.getIdleSinceNanos() > idleTimeoutNanos) {
+                logger.log(FINE, "Closing connection because of idle timeout");
+                metrics.timeout(ServerMetrics.Timeout.IDLE);
+                key.cancel();
+                closeConnection(connection);
+            }
+        }
+    }
+
+    private void closeAllConnections() {
+        ClientConnection connection;
+        while ((connection = pendingConnections.poll()) != null) {
+            closeConnection(connection);
+        }
+        for (var key : selector.keys()) {
+            closeConnection((ClientConnection) key.attachment());
+        }
+    }
+
+    private void closeConnection(ClientConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException ex) {
+            // Ignore
+        }
+        closedConnectionHandler.accept(connection);
+    }
+}
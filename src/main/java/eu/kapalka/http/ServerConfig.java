@@ -0,0 +1,363 @@
+package eu.kapalka.http;
+
+import java.lang.reflect.RecordComponent;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Tuning parameters of an {@link HttpServer}. Instances are created with a {@link Builder}, whose defaults are
+ * suitable for a small server, or from {@link Properties} (see {@link #fromProperties(Properties)}), e.g., to tune
+ * the server for the hardware without rebuilding it.
+ *
+ * @param executionMode how connections are served (see {@link ExecutionMode})
+ * @param maxConcurrentConnections max number of connections accepted at any time: when the limit is reached,
+ *                                 the server stops accepting connections, which then wait in the backlog queue
+ * @param backlogSize max length of the queue of connections not yet accepted by the server (per acceptor)
+ * @param acceptors number of acceptor threads: with more than one, each acceptor has its own server socket bound
+ *                  with <code>SO_REUSEPORT</code> (if supported, e.g., on Linux), and the kernel distributes new
+ *                  connections between them
+ * @param threadPoolSize number of threads serving requests (ignored in {@link ExecutionMode#VIRTUAL_THREADS} mode)
+ * @param selectorLoops number of selector loops (only used in {@link ExecutionMode#SELECTOR} mode)
+ * @param socketReadTimeoutMs timeout of each read operation on a connection, which also limits the idle time between
+ *                            the requests of a connection
+ * @param requestTimeoutMs max time to serve a request, including the idle time since the previous request on
+ *                         the same connection (except in {@link ExecutionMode#SELECTOR} mode) and sending
+ *                         the response
+ * @param maxRequestsPerConnection max number of requests served over a connection
+ * @param admissionTargetDelayMs acceptable time a connection waits for a thread under a sustained load (e.g., 20), or
+ *                               0 (the default) to serve all connections regardless of their waiting time (see
+ *                               {@link AdmissionController})
+ * @param admissionIntervalMs period over which the waiting time of connections is monitored to detect an overload,
+ *                            which is also the max waiting time of a connection in a burst
+ * @param clientMaxConnections max number of concurrent connections per client IP address, or 0 for no limit
+ * @param clientRequestRate max sustained number of requests per second per client IP address, or 0 for no limit
+ * @param clientRequestBurst max number of requests per client IP address in a burst above the sustained rate
+ * @param maxTrackedClients max number of client IP addresses whose connections and request rate are tracked
+ *                          (clients beyond this limit are rejected while all tracked clients are active)
+ * @param maxLineLength max length of the request line and of each header line (requests with longer header lines
+ *                      are rejected)
+ * @param responseBufferSize size of the buffer of each connection in which responses are assembled
+ * @param chunkSize max size of a chunk of a response body sent with the chunked transfer coding
+ * @param receiveBufferSize size of the socket receive buffer (<code>SO_RCVBUF</code>), or 0 for the default of
+ *                          the operating system
+ * @param sendBufferSize size of the socket send buffer (<code>SO_SNDBUF</code>), or 0 for the default of
+ *                       the operating system
+ * @param tcpNoDelay whether Nagle's algorithm is disabled (<code>TCP_NODELAY</code>)
+ * @param reusePort whether the server socket is bound with <code>SO_REUSEPORT</code> (if supported)
+ * @param mappedFileMinSize min size of the static files served from shared memory mappings (see
+ *                          {@link eu.kapalka.http.repository.MappedFileCache}), or 0 to send all files from the file
+ *                          system (only used by the repository of static files set up by {@link Main})
+ */
+public record ServerConfig(ExecutionMode executionMode, int maxConcurrentConnections, int backlogSize, int acceptors,
+                           int threadPoolSize, int selectorLoops, int socketReadTimeoutMs, long requestTimeoutMs,
+                           int maxRequestsPerConnection, long admissionTargetDelayMs, long admissionIntervalMs,
+                           int clientMaxConnections, int clientRequestRate, int clientRequestBurst,
+                           int maxTrackedClients, int maxLineLength, int responseBufferSize, int chunkSize,
+                           int receiveBufferSize, int sendBufferSize, boolean tcpNoDelay, boolean reusePort,
+                           long mappedFileMinSize) {
+
+    private static final Set<String> PARAMETER_NAMES = Arrays.stream(ServerConfig.class.getRecordComponents())
+            .map(RecordComponent::getName)
+            .collect(Collectors.toUnmodifiableSet());
+
+    /**
+     * @throws IllegalArgumentException if a parameter is out of its range
+     */
+    public ServerConfig {
+        if (executionMode == null) {
+            throw new IllegalArgumentException("Execution mode must be set");
+        }
+        requirePositive("maxConcurrentConnections", maxConcurrentConnections);
+        requirePositive("backlogSize", backlogSize);
+        requirePositive("acceptors", acceptors);
+        requirePositive("threadPoolSize", threadPoolSize);
+        requirePositive("selectorLoops", selectorLoops);
+        requirePositive("socketReadTimeoutMs", socketReadTimeoutMs);
+        requirePositive("requestTimeoutMs", requestTimeoutMs);
+        requirePositive("maxRequestsPerConnection", maxRequestsPerConnection);
+        requireNonNegative("admissionTargetDelayMs", admissionTargetDelayMs);
+        requirePositive("admissionIntervalMs", admissionIntervalMs);
+        if (admissionIntervalMs < admissionTargetDelayMs) {
+            throw new IllegalArgumentException("Server parameter admissionIntervalMs must not be shorter than "
+                    + "admissionTargetDelayMs: " + admissionIntervalMs);
+        }
+        requireNonNegative("clientMaxConnections", clientMaxConnections);
+        requireNonNegative("clientRequestRate", clientRequestRate);
+        requirePositive("clientRequestBurst", clientRequestBurst);
+        requirePositive("maxTrackedClients", maxTrackedClients);
+        requirePositive("maxLineLength", maxLineLength);
+        requirePositive("responseBufferSize", responseBufferSize);
+        requirePositive("chunkSize", chunkSize);
+        requireNonNegative("receiveBufferSize", receiveBufferSize);
+        requireNonNegative("sendBufferSize", sendBufferSize);
+        requireNonNegative("mappedFileMinSize", mappedFileMinSize);
+    }
+
+    /**
+     * Returns a builder initialized with the default parameters.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a builder initialized with the parameters of this configuration.
+     */
+    public Builder toBuilder() {
+        return new Builder()
+                .executionMode(executionMode)
+                .maxConcurrentConnections(maxConcurrentConnections)
+                .backlogSize(backlogSize)
+                .acceptors(acceptors)
+                .threadPoolSize(threadPoolSize)
+                .selectorLoops(selectorLoops)
+                .socketReadTimeoutMs(socketReadTimeoutMs)
+                .requestTimeoutMs(requestTimeoutMs)
+                .maxRequestsPerConnection(maxRequestsPerConnection)
+                .admissionTargetDelayMs(admissionTargetDelayMs)
+                .admissionIntervalMs(admissionIntervalMs)
+                .clientMaxConnections(clientMaxConnections)
+                .clientRequestRate(clientRequestRate)
+                .clientRequestBurst(clientRequestBurst)
+                .maxTrackedClients(maxTrackedClients)
+                .maxLineLength(maxLineLength)
+                .responseBufferSize(responseBufferSize)
+                .chunkSize(chunkSize)
+                .receiveBufferSize(receiveBufferSize)
+                .sendBufferSize(sendBufferSize)
+                .tcpNoDelay(tcpNoDelay)
+                .reusePort(reusePort)
+                .mappedFileMinSize(mappedFileMinSize);
+    }
+
+    /**
+     * Creates a configuration from properties named after the parameters (e.g., <code>threadPoolSize=16</code>).
+     * Parameters without a property keep their default value.
+     *
+     * @throws IllegalArgumentException if a property is unknown, or if its value is invalid
+     */
+    public static ServerConfig fromProperties(Properties properties) {
+        var builder = builder();
+        for (var name : properties.stringPropertyNames()) {
+            if (!PARAMETER_NAMES.contains(name)) {
+                throw new IllegalArgumentException("Unknown server parameter: " + name);
+            }
+            var value = properties.getProperty(name).trim();
+            try {
+                switch (name) {
+                    case "executionMode" -> builder.executionMode(ExecutionMode.valueOf(value));
+                    case "maxConcurrentConnections" -> builder.maxConcurrentConnections(Integer.parseInt(value));
+                    case "backlogSize" -> builder.backlogSize(Integer.parseInt(value));
+                    case "acceptors" -> builder.acceptors(Integer.parseInt(value));
+                    case "threadPoolSize" -> builder.threadPoolSize(Integer.parseInt(value));
+                    case "selectorLoops" -> builder.selectorLoops(Integer.parseInt(value));
+                    case "socketReadTimeoutMs" -> builder.socketReadTimeoutMs(Integer.parseInt(value));
+                    case "requestTimeoutMs" -> builder.requestTimeoutMs(Long.parseLong(value));
+                    case "maxRequestsPerConnection" -> builder.maxRequestsPerConnection(Integer.parseInt(value));
+                    case "admissionTargetDelayMs" -> builder.admissionTargetDelayMs(Long.parseLong(value));
+                    case "admissionIntervalMs" -> builder.admissionIntervalMs(Long.parseLong(value));
+                    case "clientMaxConnections" -> builder.clientMaxConnections(Integer.parseInt(value));
+                    case "clientRequestRate" -> builder.clientRequestRate(Integer.parseInt(value));
+                    case "clientRequestBurst" -> builder.clientRequestBurst(Integer.parseInt(value));
+                    case "maxTrackedClients" -> builder.maxTrackedClients(Integer.parseInt(value));
+                    case "maxLineLength" -> builder.maxLineLength(Integer.parseInt(value));
+                    case "responseBufferSize" -> builder.responseBufferSize(Integer.parseInt(value));
+                    case "chunkSize" -> builder.chunkSize(Integer.parseInt(value));
+                    case "receiveBufferSize" -> builder.receiveBufferSize(Integer.parseInt(value));
+                    case "sendBufferSize" -> builder.sendBufferSize(Integer.parseInt(value));
+                    case "tcpNoDelay" -> builder.tcpNoDelay(parseBoolean(value));
+                    case "reusePort" -> builder.reusePort(parseBoolean(value));
+                    case "mappedFileMinSize" -> builder.mappedFileMinSize(Long.parseLong(value));
+                }
+            } catch (IllegalArgumentException ex) { // Including NumberFormatException
+                throw new IllegalArgumentException(
+                        "Invalid value of server parameter %s: %s".formatted(name, value), ex);
+            }
+        }
+        return builder.build();
+    }
+
+    private static boolean parseBoolean(String value) {
+        return switch (value.toLowerCase()) {
+            case "true" -> true;
+            case "false" -> false;
+            default -> throw new IllegalArgumentException("Not a boolean: " + value);
+        };
+    }
+
+    private static void requirePositive(String name, long value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("Server parameter %s must be positive: %d".formatted(name, value));
+        }
+    }
+
+    private static void requireNonNegative(String name, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Server parameter %s must not be negative: %d".formatted(name, value));
+        }
+    }
+
+    public static class Builder {
+        private ExecutionMode executionMode = ExecutionMode.THREAD_POOL;
+        private int maxConcurrentConnections = Integer.MAX_VALUE;
+        private int backlogSize = 100;
+        private int acceptors = 1;
+        private int threadPoolSize = 10;
+        private int selectorLoops = Runtime.getRuntime().availableProcessors();
+        private int socketReadTimeoutMs = 5_000;
+        private long requestTimeoutMs = 10_000;
+        // Together with requestTimeoutMs, it limits the time a thread of the pool can be blocked by a single client
+        private int maxRequestsPerConnection = 10;
+        // Higher than the 5 ms / 100 ms of CoDel for network packets: a connection holds a thread for several
+        // requests, so connections naturally wait longer in the queue of the thread pool than packets in a router
+        private long admissionTargetDelayMs = 0;
+        private long admissionIntervalMs = 200;
+        // Clients are not limited by default: clients behind a proxy or a NAT share the same IP address
+        private int clientMaxConnections;
+        private int clientRequestRate;
+        private int clientRequestBurst = 100;
+        private int maxTrackedClients = 100_000;
+        // Not specified in any standard but in line with the limits of common servers
+        private int maxLineLength = 8000;
+        private int responseBufferSize = 8192;
+        private int chunkSize = 8192;
+        private int receiveBufferSize;
+        private int sendBufferSize;
+        // Responses are written in as few writes as possible (see ResponseWriter), so delaying small packets
+        // (Nagle's algorithm) would only add latency
+        private boolean tcpNoDelay = true;
+        private boolean reusePort;
+        private long mappedFileMinSize;
+
+        private Builder() {
+        }
+
+        public Builder executionMode(ExecutionMode executionMode) {
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        public Builder maxConcurrentConnections(int maxConcurrentConnections) {
+            this.maxConcurrentConnections = maxConcurrentConnections;
+            return this;
+        }
+
+        public Builder backlogSize(int backlogSize) {
+            this.backlogSize = backlogSize;
+            return this;
+        }
+
+        public Builder acceptors(int acceptors) {
+            this.acceptors = acceptors;
+            return this;
+        }
+
+        public Builder threadPoolSize(int threadPoolSize) {
+            this.threadPoolSize = threadPoolSize;
+            return this;
+        }
+
+        public Builder selectorLoops(int selectorLoops) {
+            this.selectorLoops = selectorLoops;
+            return this;
+        }
+
+        public Builder socketReadTimeoutMs(int socketReadTimeoutMs) {
+            this.socketReadTimeoutMs = socketReadTimeoutMs;
+            return this;
+        }
+
+        public Builder requestTimeoutMs(long requestTimeoutMs) {
+            this.requestTimeoutMs = requestTimeoutMs;
+            return this;
+        }
+
+        public Builder maxRequestsPerConnection(int maxRequestsPerConnection) {
+            this.maxRequestsPerConnection = maxRequestsPerConnection;
+            return this;
+        }
+
+        public Builder admissionTargetDelayMs(long admissionTargetDelayMs) {
+            this.admissionTargetDelayMs = admissionTargetDelayMs;
+            return this;
+        }
+
+        public Builder admissionIntervalMs(long admissionIntervalMs) {
+            this.admissionIntervalMs = admissionIntervalMs;
+            return this;
+        }
+
+        public Builder clientMaxConnections(int clientMaxConnections) {
+            this.clientMaxConnections = clientMaxConnections;
+            return this;
+        }
+
+        public Builder clientRequestRate(int clientRequestRate) {
+            this.clientRequestRate = clientRequestRate;
+            return this;
+        }
+
+        public Builder clientRequestBurst(int clientRequestBurst) {
+            this.clientRequestBurst = clientRequestBurst;
+            return this;
+        }
+
+        public Builder maxTrackedClients(int maxTrackedClients) {
+            this.maxTrackedClients = maxTrackedClients;
+            return this;
+        }
+
+        public Builder maxLineLength(int maxLineLength) {
+            this.maxLineLength = maxLineLength;
+            return this;
+        }
+
+        public Builder responseBufferSize(int responseBufferSize) {
+            this.responseBufferSize = responseBufferSize;
+            return this;
+        }
+
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public Builder receiveBufferSize(int receiveBufferSize) {
+            this.receiveBufferSize = receiveBufferSize;
+            return this;
+        }
+
+        public Builder sendBufferSize(int sendBufferSize) {
+            this.sendBufferSize = sendBufferSize;
+            return this;
+        }
+
+        public Builder tcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        public Builder reusePort(boolean reusePort) {
+            this.reusePort = reusePort;
+            return this;
+        }
+
+        public Builder mappedFileMinSize(long mappedFileMinSize) {
+            this.mappedFileMinSize = mappedFileMinSize;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if a parameter is out of its range
+         */
+        public ServerConfig build() {
+            return new ServerConfig(executionMode, maxConcurrentConnections, backlogSize, acceptors,
+                    threadPoolSize, selectorLoops, socketReadTimeoutMs, requestTimeoutMs, maxRequestsPerConnection,
+                    admissionTargetDelayMs, admissionIntervalMs, clientMaxConnections, clientRequestRate,
+                    clientRequestBurst, maxTrackedClients, maxLineLength, responseBufferSize, chunkSize,
+                    receiveBufferSize, sendBufferSize, tcpNoDelay, reusePort, mappedFileMinSize);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package eu.kapalka.http.handler;
+
+import eu.kapalka.http.repository.BlobRepository;
+import eu.kapalka.http.request.ValidRequest;
+import eu.kapalka.http.response.HttpStatus;
+import eu.kapalka.http.response.Response;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Handler that exposes a {@link BlobRepository} over HTTP: <code>PUT</code> stores the request body as the blob
+ * whose key is the request path (relative to the prefix of the handler), <code>GET</code> and <code>HEAD</code>
+ * return it, and <code>DELETE</code> deletes it. Request bodies are streamed to disk, and blobs are sent directly
+ * from their files, so blobs never have to fit in memory.
+ */
+public class BlobStoreRequestHandler implements ResourceRequestHandler {
+
+    private static final String ALLOWED_METHODS = "GET, HEAD, PUT, DELETE";
+
+    private final BlobRepository blobRepository;
+
+    public BlobStoreRequestHandler(BlobRepository blobRepository) {
+        this.blobRepository = blobRepository;
+    }
+
+    @Override
+    public Response handle(ValidRequest request, String relativePath) {
+        if (relativePath.isEmpty()) {
+            return errorResponse(HttpStatus.NOT_FOUND, "Missing blob key in URI %s".formatted(request.getURI()));
+        }
+        try {
+            return switch (request.getMethod()) {
+                case GET, HEAD -> getBlob(request, relativePath);
+                case PUT -> putBlob(request, relativePath);
+                case DELETE -> deleteBlob(request, relativePath);
+                default -> Response.builder()
+                        .status(HttpStatus.METHOD_NOT_ALLOWED)
+                        .header("Allow", ALLOWED_METHODS)
+                        .body("Method %s not allowed".formatted(request.getMethod()))
+                        .build();
+            };
+        } catch (IOException ex) {
+            // Either the client connection or the file system failed: in both cases, the connection is closed
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Response getBlob(ValidRequest request, String key) {
+        var blobOpt = blobRepository.find(key);
+        if (blobOpt.isEmpty()) {
+            return blobNotFound(request);
+        }
+        var blob = blobOpt.get();
+        return Response.builder()
+                .body(blob.path(), blob.size())
+                .contentType(blob.mimeType())
+                .header("ETag", blob.etag())
+                .build();
+    }
+
+    private Response putBlob(ValidRequest request, String key) throws IOException {
+        var body = request.getBody();
+        if (body.getLength() > blobRepository.getMaxBlobSize()) {
+            return contentTooLarge(); // Rejected without reading the body
+        }
+        var storedBlobOpt = blobRepository.put(key, body.getInputStream());
+        if (storedBlobOpt.isEmpty()) {
+            return contentTooLarge();
+        }
+        var storedBlob = storedBlobOpt.get();
+        return Response.builder()
+                .status(storedBlob.created() ? HttpStatus.CREATED : HttpStatus.NO_CONTENT)
+                .header("ETag", storedBlob.fileInfo().etag())
+                .build();
+    }
+
+    private Response deleteBlob(ValidRequest request, String key) throws IOException {
+        if (!blobRepository.delete(key)) {
+            return blobNotFound(request);
+        }
+        return Response.builder()
+                .status(HttpStatus.NO_CONTENT)
+                .build();
+    }
+
+    private Response blobNotFound(ValidRequest request) {
+        return errorResponse(HttpStatus.NOT_FOUND, "Blob with URI %s not found".formatted(request.getURI()));
+    }
+
+    private Response contentTooLarge() {
+        return errorResponse(HttpStatus.CONTENT_TOO_LARGE,
+                "Blob size exceeds the allowed maximum of %d bytes".formatted(blobRepository.getMaxBlobSize()));
+    }
+
+    private static Response errorResponse(HttpStatus status, String message) {
+        return Response.builder()
+                .status(status)
+                .body(message)
+                .build();
+    }
+}
@@ -0,0 +1,41 @@
+package eu.kapalka.http.handler;
+
+import eu.kapalka.http.metrics.ServerMetrics;
+import eu.kapalka.http.request.HttpMethod;
+import eu.kapalka.http.request.ValidRequest;
+import eu.kapalka.http.response.HttpStatus;
+import eu.kapalka.http.response.Response;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Handler that exposes {@link ServerMetrics} in the Prometheus text format, to be scraped by a Prometheus server
+ * (or read by a human). It is typically registered under <code>/metrics</code> with
+ * {@link eu.kapalka.http.HttpServer#getMetrics()}.
+ */
+public class MetricsRequestHandler implements ResourceRequestHandler {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final ServerMetrics metrics;
+
+    public MetricsRequestHandler(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Response handle(ValidRequest request, String relativePath) {
+        if (request.getMethod() != HttpMethod.GET && request.getMethod() != HttpMethod.HEAD) {
+            return Response.builder()
+                    .status(HttpStatus.METHOD_NOT_ALLOWED)
+                    .header("Allow", "GET, HEAD")
+                    .body("Method %s not allowed".formatted(request.getMethod()))
+                    .build();
+        }
+        return Response.builder()
+                .body(metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8))
+                .contentType(CONTENT_TYPE)
+                .header("Cache-Control", "no-store")
+                .build();
+    }
+}
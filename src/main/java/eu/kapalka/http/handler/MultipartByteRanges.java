@@ -0,0 +1,65 @@
+package eu.kapalka.http.handler;
+
+import eu.kapalka.http.repository.FileInfo;
+import eu.kapalka.http.request.ByteRange;
+import eu.kapalka.http.response.FileSegmentsInputStream;
+import eu.kapalka.http.response.FileSegmentsInputStream.Segment;
+import eu.kapalka.http.response.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Body of a response to a request for multiple ranges of a file (<code>multipart/byteranges</code> media type,
+ * see RFC 9110, section 14.6). The parts are streamed from the file: the file contents are never copied to
+ * a buffer that would hold the whole body.
+ */
+final class MultipartByteRanges {
+
+    private MultipartByteRanges() {
+    }
+
+    /**
+     * Sets the body and the content type of the response to the given ranges of the file.
+     */
+    static void setBody(Response.Builder responseBuilder, FileInfo file, List<ByteRange> ranges) {
+        // A random boundary cannot appear in the file contents except by (extremely unlikely) accident
+        var boundary = Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+
+        var segments = new ArrayList<Segment>(2 * ranges.size() + 1);
+        for (int i = 0; i < ranges.size(); i++) {
+            var range = ranges.get(i);
+            var partHeaders = new StringBuilder();
+            if (i > 0) {
+                partHeaders.append("\r\n");
+            }
+            partHeaders.append("--").append(boundary).append("\r\n");
+            if (file.mimeType() != null) {
+                partHeaders.append("Content-Type: ").append(file.mimeType()).append("\r\n");
+            }
+            partHeaders.append("Content-Range: ").append(contentRange(range, file.size())).append("\r\n\r\n");
+            segments.add(Segment.bytes(ascii(partHeaders.toString())));
+            segments.add(Segment.fileRegion(range.first(), range.length()));
+        }
+        segments.add(Segment.bytes(ascii("\r\n--" + boundary + "--\r\n")));
+
+        var finalSegments = List.copyOf(segments);
+        responseBuilder
+                .body(() -> new FileSegmentsInputStream(file.path(), finalSegments),
+                        FileSegmentsInputStream.length(finalSegments))
+                .contentType("multipart/byteranges; boundary=" + boundary);
+    }
+
+    /**
+     * Returns the value of the <code>Content-Range</code> header for the given range.
+     */
+    static String contentRange(ByteRange range, long size) {
+        return "bytes %d-%d/%d".formatted(range.first(), range.last(), size);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
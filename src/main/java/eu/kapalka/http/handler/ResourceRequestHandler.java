@@ -13,7 +13,8 @@ public interface ResourceRequestHandler {
      * Processes the given HTTP requests and returns an HTTP response that will be sent back to the client.
      * Note that <code>request</code> contains the original request URI, as sent by the HTTP client, while
      * <code>relativePath</code> is the URI path (without fragment or parameters) relative to the prefix
-     * under which the handler is registered in {@link TopLevelRequestHandler}.
+     * under which the handler is registered in {@link TopLevelRequestHandler}. The request body, if any, can only be
+     * read before this method returns (see {@link ValidRequest#getBody()}): the part that is not read is discarded.
      *
      * @param request valid HTTP request
      * @param relativePath URI path relative to the prefix under which this handler is registered
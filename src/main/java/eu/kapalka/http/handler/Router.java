@@ -0,0 +1,341 @@
+package eu.kapalka.http.handler;
+
+import eu.kapalka.http.request.HttpMethod;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable routing table that maps request paths to {@link ResourceRequestHandler}s. Routes are defined with
+ * a {@link Builder} and compiled into a radix trie, so that routing a request takes time proportional to the length
+ * of its path, independently of the number of routes and of the order in which they were defined.
+ * <p>
+ * A route pattern is a path prefix (e.g., <code>/static/</code>) that may contain parameter segments
+ * (e.g., <code>/users/{id}/orders</code>): a parameter matches one non-empty path segment, i.e., up to the next
+ * <code>/</code>. A request is routed to the route with the longest matching prefix. For matches of equal length,
+ * literal characters take precedence over parameters.
+ */
+final class Router {
+
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+
+    private final Node root;
+    private final int maxParameters;
+
+    private Router(Node root, int maxParameters) {
+        this.root = root;
+        this.maxParameters = maxParameters;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Finds the route with the longest prefix matching <code>path</code>. Returns an empty result if no route
+     * matches. If the matching route has no handler for <code>method</code>, the returned match has
+     * a <code>null</code> handler (see {@link RouteMatch#isMethodAllowed()}): the request is not routed to a less
+     * specific route, which would most likely be unrelated.
+     */
+    Optional<RouteMatch> match(HttpMethod method, String path) {
+        var search = new Search(path, maxParameters);
+        search.visit(root, 0, 0);
+        if (search.bestNode == null) {
+            return Optional.empty();
+        }
+
+        var node = search.bestNode;
+        var pathParameters = Map.<String, String>of();
+        if (node.parameterNames.length > 0) {
+            var parameters = new LinkedHashMap<String, String>();
+            for (int i = 0; i < node.parameterNames.length; i++) {
+                parameters.put(node.parameterNames[i],
+                        path.substring(search.bestSpans[2 * i], search.bestSpans[2 * i + 1]));
+            }
+            pathParameters = Collections.unmodifiableMap(parameters);
+        }
+        return Optional.of(new RouteMatch(node.pattern, node.handlers[method.ordinal()],
+                path.substring(search.bestEnd), pathParameters, node.allowedMethods));
+    }
+
+    /**
+     * Result of routing a request.
+     *
+     * @param pattern path pattern of the route, as defined in the builder
+     * @param handler handler of the request, or <code>null</code> if the route does not accept the request method
+     * @param relativePath remainder of the request path after the matched prefix
+     * @param pathParameters values of the parameter segments of the route (parameter name to value)
+     * @param allowedMethods methods accepted by the route
+     */
+    record RouteMatch(String pattern, ResourceRequestHandler handler, String relativePath,
+                      Map<String, String> pathParameters, Set<HttpMethod> allowedMethods) {
+
+        boolean isMethodAllowed() {
+            return handler != null;
+        }
+    }
+
+    /**
+     * Trie node. The root path of a node consists of the labels of its ancestors and its own label: a literal node
+     * matches its label exactly, while a parameter node matches one path segment.
+     */
+    private static final class Node {
+        final String label;
+        final char[] childFirstChars; // Sorted, for binary search
+        final Node[] children;
+        final Node parameterChild;
+        // Pattern of the route that ends at this node, or null if none
+        final String pattern;
+        // Handlers indexed by HttpMethod ordinal, or null if no route ends at this node
+        final ResourceRequestHandler[] handlers;
+        final Set<HttpMethod> allowedMethods;
+        // Names of the parameter nodes on the root path of this node
+        final String[] parameterNames;
+
+        Node(String label, char[] childFirstChars, Node[] children, Node parameterChild, String pattern,
+             ResourceRequestHandler[] handlers, Set<HttpMethod> allowedMethods, String[] parameterNames) {
+            this.label = label;
+            this.childFirstChars = childFirstChars;
+            this.children = children;
+            this.parameterChild = parameterChild;
+            this.pattern = pattern;
+            this.handlers = handlers;
+            this.allowedMethods = allowedMethods;
+            this.parameterNames = parameterNames;
+        }
+
+        Node literalChild(char firstChar) {
+            var index = Arrays.binarySearch(childFirstChars, firstChar);
+            return (index >= 0) ? children[index] : null;
+        }
+    }
+
+    /**
+     * Depth-first search for the longest match. Literal children are unambiguous (at most one child per first
+     * character), so the search only branches at nodes that also have a parameter child.
+     */
+    private static final class Search {
+        final String path;
+        // Start and end index in the path of each parameter value on the current / best root path
+        final int[] spans;
+        final int[] bestSpans;
+        Node bestNode;
+        int bestEnd = -1;
+
+        Search(String path, int maxParameters) {
+            this.path = path;
+            this.spans = new int[2 * maxParameters];
+            this.bestSpans = new int[2 * maxParameters];
+        }
+
+        /**
+         * Visits <code>node</code>, whose root path matches the path up to index <code>end</code> (exclusive) and
+         * includes <code>numParameters</code> parameter nodes.
+         */
+        void visit(Node node, int end, int numParameters) {
+            if (node.handlers != null && end > bestEnd) {
+                bestNode = node;
+                bestEnd = end;
+                System.arraycopy(spans, 0, bestSpans, 0, 2 * numParameters);
+            }
+            if (end == path.length()) {
+                return;
+            }
+
+            var child = node.literalChild(path.charAt(end));
+            if (child != null && path.startsWith(child.label, end)) {
+                visit(child, end + child.label.length(), numParameters);
+            }
+
+            if (node.parameterChild != null) {
+                var segmentEnd = path.indexOf('/', end);
+                if (segmentEnd == -1) {
+                    segmentEnd = path.length();
+                }
+                if (segmentEnd > end) {
+                    spans[2 * numParameters] = end;
+                    spans[2 * numParameters + 1] = segmentEnd;
+                    visit(node.parameterChild, segmentEnd, numParameters + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builder of {@link Router}s. The builder can be reused: each call to {@link #build()} compiles a new,
+     * independent router from all the routes defined so far.
+     */
+    static class Builder {
+
+        private final MutableNode root = new MutableNode("", null);
+
+        private Builder() {
+        }
+
+        /**
+         * Routes requests with any method whose path starts with <code>pathPattern</code> to
+         * <code>requestHandler</code>, unless a route for the specific method is defined for the same pattern.
+         *
+         * @throws IllegalArgumentException if the pattern is invalid or a route is already defined for it
+         */
+        Builder route(String pathPattern, ResourceRequestHandler requestHandler) {
+            var node = insertPattern(pathPattern);
+            if (node.anyMethodHandler != null) {
+                throw new IllegalArgumentException("Route %s already defined".formatted(pathPattern));
+            }
+            node.anyMethodHandler = requestHandler;
+            node.pattern = pathPattern;
+            return this;
+        }
+
+        /**
+         * Routes requests with the given method whose path starts with <code>pathPattern</code> to
+         * <code>requestHandler</code>. A route for <code>GET</code> also serves <code>HEAD</code> requests, unless
+         * a route for <code>HEAD</code> is defined for the same pattern.
+         *
+         * @throws IllegalArgumentException if the pattern is invalid or a route is already defined for it
+         */
+        Builder route(HttpMethod method, String pathPattern, ResourceRequestHandler requestHandler) {
+            var node = insertPattern(pathPattern);
+            if (node.methodHandlers.putIfAbsent(method, requestHandler) != null) {
+                throw new IllegalArgumentException("Route %s %s already defined".formatted(method, pathPattern));
+            }
+            node.pattern = pathPattern;
+            return this;
+        }
+
+        Router build() {
+            var maxParameters = new int[1];
+            var compiledRoot = compile(root, new String[0], maxParameters);
+            return new Router(compiledRoot, maxParameters[0]);
+        }
+
+        private MutableNode insertPattern(String pathPattern) {
+            if (!pathPattern.startsWith("/")) {
+                throw new IllegalArgumentException("Route %s does not start with /".formatted(pathPattern));
+            }
+            var node = root;
+            var literalStart = 0;
+            while (true) {
+                var parameterStart = pathPattern.indexOf('{', literalStart);
+                if (parameterStart == -1) {
+                    return insertLiteral(node, pathPattern.substring(literalStart));
+                }
+                var parameterEnd = pathPattern.indexOf('}', parameterStart);
+                if (pathPattern.charAt(parameterStart - 1) != '/' || parameterEnd == -1
+                        || parameterEnd == parameterStart + 1
+                        || pathPattern.substring(parameterStart + 1, parameterEnd).matches(".*[/{].*")
+                        || (parameterEnd + 1 < pathPattern.length() && pathPattern.charAt(parameterEnd + 1) != '/')) {
+                    throw new IllegalArgumentException(
+                            "Parameters of route %s must span whole path segments".formatted(pathPattern));
+                }
+                node = insertLiteral(node, pathPattern.substring(literalStart, parameterStart));
+                node = insertParameter(node, pathPattern.substring(parameterStart + 1, parameterEnd), pathPattern);
+                literalStart = parameterEnd + 1;
+            }
+        }
+
+        private static MutableNode insertLiteral(MutableNode node, String literal) {
+            while (!literal.isEmpty()) {
+                var child = node.children.get(literal.charAt(0));
+                if (child == null) {
+                    child = new MutableNode(literal, null);
+                    node.children.put(literal.charAt(0), child);
+                    return child;
+                }
+                var commonLength = commonPrefixLength(child.label, literal);
+                if (commonLength < child.label.length()) {
+                    // Split the child: its label becomes the common prefix of an intermediate node
+                    var intermediate = new MutableNode(child.label.substring(0, commonLength), null);
+                    child.label = child.label.substring(commonLength);
+                    intermediate.children.put(child.label.charAt(0), child);
+                    node.children.put(literal.charAt(0), intermediate);
+                    child = intermediate;
+                }
+                node = child;
+                literal = literal.substring(commonLength);
+            }
+            return node;
+        }
+
+        private static MutableNode insertParameter(MutableNode node, String name, String pathPattern) {
+            if (node.parameterChild == null) {
+                node.parameterChild = new MutableNode("", name);
+            } else if (!node.parameterChild.parameterName.equals(name)) {
+                // The values would be ambiguous: both names would refer to the same path segment
+                throw new IllegalArgumentException("Parameter {%s} of route %s conflicts with parameter {%s}"
+                        .formatted(name, pathPattern, node.parameterChild.parameterName));
+            }
+            return node.parameterChild;
+        }
+
+        private static int commonPrefixLength(String a, String b) {
+            var maxLength = Math.min(a.length(), b.length());
+            var length = 0;
+            while (length < maxLength && a.charAt(length) == b.charAt(length)) {
+                length++;
+            }
+            return length;
+        }
+
+        private static Node compile(MutableNode node, String[] parameterNames, int[] maxParameters) {
+            if (node.parameterName != null) {
+                parameterNames = Arrays.copyOf(parameterNames, parameterNames.length + 1);
+                parameterNames[parameterNames.length - 1] = node.parameterName;
+                maxParameters[0] = Math.max(maxParameters[0], parameterNames.length);
+            }
+
+            var childFirstChars = new char[node.children.size()];
+            var children = new Node[node.children.size()];
+            var i = 0;
+            for (var entry : node.children.entrySet()) { // Sorted by first character
+                childFirstChars[i] = entry.getKey();
+                children[i++] = compile(entry.getValue(), parameterNames, maxParameters);
+            }
+            var parameterChild = (node.parameterChild != null)
+                    ? compile(node.parameterChild, parameterNames, maxParameters) : null;
+
+            ResourceRequestHandler[] handlers = null;
+            Set<HttpMethod> allowedMethods = Set.of();
+            if (node.anyMethodHandler != null || !node.methodHandlers.isEmpty()) {
+                handlers = new ResourceRequestHandler[METHODS.length];
+                var methods = EnumSet.noneOf(HttpMethod.class);
+                for (var method : METHODS) {
+                    var handler = node.methodHandlers.get(method);
+                    if (handler == null && method == HttpMethod.HEAD) {
+                        handler = node.methodHandlers.get(HttpMethod.GET);
+                    }
+                    handlers[method.ordinal()] = (handler != null) ? handler : node.anyMethodHandler;
+                    if (handlers[method.ordinal()] != null) {
+                        methods.add(method);
+                    }
+                }
+                allowedMethods = Collections.unmodifiableSet(methods);
+            }
+            return new Node(node.label, childFirstChars, children, parameterChild, node.pattern, handlers,
+                    allowedMethods, parameterNames);
+        }
+    }
+
+    private static final class MutableNode {
+        String label;
+        final String parameterName;
+        final TreeMap<Character, MutableNode> children = new TreeMap<>();
+        MutableNode parameterChild;
+        final Map<HttpMethod, ResourceRequestHandler> methodHandlers = new EnumMap<>(HttpMethod.class);
+        ResourceRequestHandler anyMethodHandler;
+        String pattern;
+
+        MutableNode(String label, String parameterName) {
+            this.label = label;
+            this.parameterName = parameterName;
+        }
+    }
+}
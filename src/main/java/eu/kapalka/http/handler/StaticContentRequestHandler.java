@@ -1,13 +1,23 @@
 package eu.kapalka.http.handler;
 
+import eu.kapalka.http.repository.ContentEncoding;
+import eu.kapalka.http.repository.FileInfo;
 import eu.kapalka.http.repository.StaticFileRepository;
+import eu.kapalka.http.request.ByteRange;
 import eu.kapalka.http.request.HttpMethod;
 import eu.kapalka.http.request.ValidRequest;
 import eu.kapalka.http.response.HttpStatus;
-import eu.kapalka.http.response.InputStreamSupplier;
 import eu.kapalka.http.response.Response;
 
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
 
 public class StaticContentRequestHandler implements ResourceRequestHandler {
 
@@ -36,10 +46,255 @@ public class StaticContentRequestHandler implements ResourceRequestHandler {
         }
 
         var targetFile = targetFileOpt.get();
-        InputStreamSupplier body = () -> Files.newInputStream(targetFile.path());
-        return Response.builder()
-                .body(body, targetFile.size())
+        var compressible = ContentEncoding.isCompressible(targetFile.mimeType());
+        var ranges = requestedRanges(request, targetFile);
+        // Ranges always refer to the uncompressed file, which is what clients resuming a download expect
+        var encodedContent = (compressible && ranges.isEmpty())
+                ? findEncodedContent(request, targetFile) : Optional.<EncodedContent>empty();
+        var etag = encodedContent.map(EncodedContent::etag).orElse(targetFile.etag());
+        // The validators describe the representation that is sent, and a precompressed variant has its own version
+        var representation = encodedContent.map(EncodedContent::variantFile).orElse(targetFile);
+
+        var responseBuilder = Response.builder()
+                .header("ETag", etag)
+                .header("Last-Modified", representation.lastModified())
+                .header("Accept-Ranges", "bytes");
+        if (compressible) {
+            // Caches must not serve a compressed response to clients that do not accept it (and vice versa)
+            responseBuilder.header("Vary", "Accept-Encoding");
+        }
+        if (isNotModified(request, etag, representation.lastModifiedMillis())) {
+            // The client already has the current version: only the metadata is needed, the file is not even opened
+            return responseBuilder
+                    .status(HttpStatus.NOT_MODIFIED)
+                    .build();
+        }
+
+        if (ranges.isPresent()) {
+            return rangeResponse(responseBuilder, targetFile, ranges.get());
+        }
+        if (encodedContent.isPresent()) {
+            var encoded = encodedContent.get();
+            responseBuilder.header("Content-Encoding", encoded.encoding().getToken());
+            if (encoded.content() != null) {
+                responseBuilder.body(encoded.content());
+            } else {
+                setBody(responseBuilder, encoded.variantFile());
+            }
+        } else {
+            setBody(responseBuilder, targetFile);
+        }
+        return responseBuilder
+                .contentType(targetFile.mimeType())
+                .build();
+    }
+
+    /**
+     * Returns the best compressed representation of the file accepted by the client: a precompressed variant
+     * (Brotli preferred over gzip) or, for gzip, the file compressed on the fly. Returns {@link Optional#empty()}
+     * if the file must be sent uncompressed.
+     */
+    private Optional<EncodedContent> findEncodedContent(ValidRequest request, FileInfo targetFile) {
+        if (request.getAcceptEncoding() == null) {
+            return Optional.empty();
+        }
+        var acceptedEncodings = acceptedEncodings(request.getAcceptEncoding());
+        for (var encoding : acceptedEncodings) {
+            var variant = fileRepository.findPrecompressedVariant(targetFile, encoding);
+            if (variant.isPresent()) {
+                return Optional.of(new EncodedContent(encoding, variant.get().etag(), variant.get(), null));
+            }
+        }
+        if (acceptedEncodings.contains(ContentEncoding.GZIP)) {
+            return fileRepository.getCompressedContent(targetFile)
+                    .map(content -> new EncodedContent(ContentEncoding.GZIP,
+                            encodedEntityTag(targetFile.etag(), ContentEncoding.GZIP), null, content));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Parses an Accept-Encoding header, e.g., <code>gzip, deflate, br;q=0.8</code>. Only the codings that the
+     * server supports and that the client accepts (quality value greater than zero) are returned, in the order
+     * of preference of the server (given that the client accepts them, the server knows better which coding is
+     * the most efficient).
+     */
+    static Set<ContentEncoding> acceptedEncodings(String acceptEncoding) {
+        var accepted = EnumSet.noneOf(ContentEncoding.class);
+        var rejected = EnumSet.noneOf(ContentEncoding.class);
+        var wildcardAccepted = false;
+        for (var element : acceptEncoding.split(",")) {
+            var parameters = element.split(";");
+            var coding = parameters[0].trim().toLowerCase(Locale.ROOT);
+            var isAccepted = !isZeroQuality(parameters);
+            if (coding.equals("*")) {
+                wildcardAccepted = isAccepted;
+                continue;
+            }
+            for (var encoding : ContentEncoding.values()) {
+                if (coding.equals(encoding.getToken()) || coding.equals("x-" + encoding.getToken())) {
+                    (isAccepted ? accepted : rejected).add(encoding);
+                }
+            }
+        }
+        if (wildcardAccepted) {
+            accepted = EnumSet.complementOf(rejected);
+        }
+        return accepted;
+    }
+
+    private static boolean isZeroQuality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            var parameter = parameters[i].trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) == 0;
+                } catch (NumberFormatException ex) {
+                    return false; // Invalid quality values are ignored
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the entity tag of a compressed representation of a file: a different representation must have
+     * a different tag, otherwise a cache could validate its compressed copy with the tag of the uncompressed one.
+     */
+    private static String encodedEntityTag(String etag, ContentEncoding encoding) {
+        return etag.substring(0, etag.length() - 1) + "-" + encoding.getToken() + "\"";
+    }
+
+    /**
+     * Returns the ranges of the file requested by a valid <code>Range</code> header (see
+     * {@link ByteRange#parse(String, long)}), or {@link Optional#empty()} if the full file must be sent.
+     */
+    private static Optional<List<ByteRange>> requestedRanges(ValidRequest request, FileInfo targetFile) {
+        if (request.getMethod() != HttpMethod.GET || request.getRange() == null) {
+            return Optional.empty();
+        }
+        if (request.getIfRange() != null && !matchesIfRange(request.getIfRange(), targetFile)) {
+            return Optional.empty(); // The client's copy is outdated: it needs the full file
+        }
+        return ByteRange.parse(request.getRange(), targetFile.size());
+    }
+
+    /**
+     * Evaluates an If-Range header: the entity tag or the modification date must match the current version of
+     * the file, using the strong comparison (weak validators never match).
+     */
+    private static boolean matchesIfRange(String ifRange, FileInfo targetFile) {
+        if (targetFile.etag().startsWith("W/")) {
+            return false;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(targetFile.etag());
+        }
+        try {
+            var date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return date.toEpochSecond() == targetFile.lastModifiedMillis() / 1000;
+        } catch (DateTimeParseException ex) {
+            return false;
+        }
+    }
+
+    private Response rangeResponse(Response.Builder responseBuilder, FileInfo targetFile, List<ByteRange> ranges) {
+        if (ranges.isEmpty()) {
+            return responseBuilder
+                    .status(HttpStatus.RANGE_NOT_SATISFIABLE)
+                    .header("Content-Range", "bytes */" + targetFile.size())
+                    .body("Range not satisfiable for resource of size %d".formatted(targetFile.size()))
+                    .build();
+        }
+
+        responseBuilder.status(HttpStatus.PARTIAL_CONTENT);
+        if (ranges.size() > 1) {
+            MultipartByteRanges.setBody(responseBuilder, targetFile, ranges);
+            return responseBuilder.build();
+        }
+        var range = ranges.getFirst();
+        setRangeBody(responseBuilder, targetFile, range);
+        return responseBuilder
+                .header("Content-Range", MultipartByteRanges.contentRange(range, targetFile.size()))
                 .contentType(targetFile.mimeType())
                 .build();
     }
+
+    /**
+     * Evaluates the conditional request headers as specified in RFC 9110 (section 13.2.2): If-Modified-Since
+     * is ignored if If-None-Match is present.
+     */
+    private static boolean isNotModified(ValidRequest request, String etag, long lastModifiedMillis) {
+        if (request.getIfNoneMatch() != null) {
+            return matchesAnyEntityTag(request.getIfNoneMatch(), etag);
+        }
+        if (request.getIfModifiedSince() != null) {
+            try {
+                var since = ZonedDateTime.parse(request.getIfModifiedSince(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                // HTTP dates have a resolution of one second
+                return lastModifiedMillis / 1000 <= since.toEpochSecond();
+            } catch (DateTimeParseException ex) {
+                return false; // Invalid dates must be ignored
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if the value of an If-None-Match header (<code>*</code> or a list of entity tags)
+     * matches the given entity tag, using the weak comparison (i.e., ignoring the weakness indicator).
+     */
+    private static boolean matchesAnyEntityTag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch.trim().equals("*")) {
+            return true;
+        }
+        var opaqueTag = stripWeakIndicator(etag);
+        for (var candidate : ifNoneMatch.split(",")) {
+            if (stripWeakIndicator(candidate.trim()).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeakIndicator(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private void setBody(Response.Builder responseBuilder, FileInfo targetFile) {
+        // From the cheapest to the most expensive way of sending the file contents
+        var cachedContent = fileRepository.getCachedContent(targetFile);
+        if (cachedContent.isPresent()) {
+            responseBuilder.body(cachedContent.get());
+            return;
+        }
+        var mappedContent = fileRepository.getMappedContent(targetFile);
+        if (mappedContent.isPresent()) {
+            responseBuilder.body(mappedContent.get());
+            return;
+        }
+        responseBuilder.body(targetFile.path(), targetFile.size());
+    }
+
+    private void setRangeBody(Response.Builder responseBuilder, FileInfo targetFile, ByteRange range) {
+        // Only the requested bytes are sent: buffers are sliced, files are read (or transferred) from the offset
+        var cachedContent = fileRepository.getCachedContent(targetFile);
+        if (cachedContent.isPresent()) {
+            responseBuilder.body(ByteBuffer.wrap(cachedContent.get(), (int) range.first(), (int) range.length()));
+            return;
+        }
+        var mappedContent = fileRepository.getMappedContent(targetFile);
+        if (mappedContent.isPresent()) {
+            responseBuilder.body(mappedContent.get().slice((int) range.first(), (int) range.length()));
+            return;
+        }
+        responseBuilder.body(targetFile.path(), range.first(), range.length());
+    }
+
+    /**
+     * Compressed representation of a file: either a precompressed variant of the file or the contents of the file
+     * compressed on the fly.
+     */
+    private record EncodedContent(ContentEncoding encoding, String etag, FileInfo variantFile, byte[] content) {
+    }
 }
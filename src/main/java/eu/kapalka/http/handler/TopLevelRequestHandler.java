@@ -1,5 +1,6 @@
 package eu.kapalka.http.handler;
 
+import eu.kapalka.http.metrics.ServerMetrics;
 import eu.kapalka.http.request.HttpMethod;
 import eu.kapalka.http.request.InvalidRequest;
 import eu.kapalka.http.request.Request;
@@ -9,27 +10,65 @@ import eu.kapalka.http.response.Response;
 import eu.kapalka.http.response.ResponseWriter;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Root handler of HTTP requests. For valid HTTP requests, it uses a {@link ResourceRequestHandler} attached
- * to the corresponding URI path prefix (see {@link #registerRequestHandler(String, ResourceRequestHandler)})
+ * to the longest matching URI path prefix (see {@link #registerRequestHandler(String, ResourceRequestHandler)})
  * to generate the HTTP response, and then sends the response to the HTTP client. Invalid HTTP requests are handled
  * directly by this class.
+ * <p>
+ * Handlers are typically registered at startup. Each registration compiles a new immutable {@link Router}, so that
+ * requests are routed without any locking, even if handlers are registered while the server is running.
+ * <p>
+ * Each request is recorded in the {@link ServerMetrics} of the handler, labeled with the path prefix of the
+ * {@link ResourceRequestHandler} that handled it.
  */
 public class TopLevelRequestHandler {
 
-    // List is fine assuming a small number of handlers
-    private final List<RegisteredRequestHandler> requestHandlers = new ArrayList<>();
+    private final ServerMetrics metrics;
+    // Guarded by this; only used to compile new routers
+    private final Router.Builder routerBuilder = Router.builder();
+    private volatile Router router = routerBuilder.build();
+
+    public TopLevelRequestHandler() {
+        this(new ServerMetrics());
+    }
+
+    public TopLevelRequestHandler(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
 
     /**
      * Register <code>requestHandler</code> that will handle all requests with URI path starting with the given
-     * prefix <code>pathPrefix</code>.
+     * prefix <code>pathPrefix</code>, unless a longer registered prefix matches the path. The prefix may contain
+     * parameter segments, e.g., <code>/users/{id}/</code> (see {@link ValidRequest#getPathParameters()}).
+     *
+     * @throws IllegalArgumentException if the prefix is invalid or a handler is already registered for it
+     */
+    public synchronized void registerRequestHandler(String pathPrefix, ResourceRequestHandler requestHandler) {
+        routerBuilder.route(pathPrefix, requestHandler);
+        router = routerBuilder.build();
+    }
+
+    /**
+     * Register <code>requestHandler</code> that will handle requests with the given method (see
+     * {@link #registerRequestHandler(String, ResourceRequestHandler)}). If the longest prefix matching a request
+     * has no handler for the request method, the request is rejected with status 405 (Method Not Allowed).
+     * A handler of <code>GET</code> requests also handles <code>HEAD</code> requests, unless a separate handler is
+     * registered for them.
+     *
+     * @throws IllegalArgumentException if the prefix is invalid or a handler is already registered for it
      */
-    public void registerRequestHandler(String pathPrefix, ResourceRequestHandler requestHandler) {
-        requestHandlers.add(new RegisteredRequestHandler(pathPrefix, requestHandler));
+    public synchronized void registerRequestHandler(HttpMethod method, String pathPrefix,
+                                                    ResourceRequestHandler requestHandler) {
+        routerBuilder.route(method, pathPrefix, requestHandler);
+        router = routerBuilder.build();
     }
 
     /**
@@ -41,37 +80,67 @@ public class TopLevelRequestHandler {
      * @throws IOException on issues with the network connection or data transfer (e.g., file system to socket)
      */
     public boolean handleRequest(Request request, ResponseWriter responseWriter) throws IOException {
+        return handleRequest(request, responseWriter, true);
+    }
+
+    /**
+     * Processes the given HTTP request and sends a response back to the client. If <code>keepAliveAllowed</code>
+     * is <code>false</code>, e.g., because the server will close the connection after this request, the response
+     * tells the client that the connection is closed, even if the client requested keep-alive. This way, clients
+     * that pipeline requests know that they have to resend the requests that follow this one.
+     *
+     * @param request parsed HTTP request
+     * @param responseWriter sink where to write the HTTP response
+     * @param keepAliveAllowed whether the connection may be kept open after the request
+     * @return whether the connection should be kept open after the request (keep-alive),
+     * @throws IOException on issues with the network connection or data transfer (e.g., file system to socket)
+     */
+    public boolean handleRequest(Request request, ResponseWriter responseWriter, boolean keepAliveAllowed)
+            throws IOException {
         return switch (request) {
-            case ValidRequest req -> handleValidRequest(req, responseWriter);
+            case ValidRequest req -> handleValidRequest(req, responseWriter, keepAliveAllowed);
             case InvalidRequest req -> handleInvalidRequest(req, responseWriter);
         };
     }
 
-    private boolean handleValidRequest(ValidRequest request, ResponseWriter responseWriter) throws IOException {
-        var handlerOpt = findHandler(request);
-        var response = handlerOpt.map(handler -> callRequestHandler(handler, request))
-                .orElseGet(() -> noHandlerErrorResponse(request));
-
-        var keepAlive = isKeepAliveEnabled(request);
+    private boolean handleValidRequest(ValidRequest request, ResponseWriter responseWriter, boolean keepAliveAllowed)
+            throws IOException {
+        var handlerStart = System.nanoTime();
+        var matchOpt = router.match(request.getMethod(), request.getURI().getPath());
+        var handlerLabel = matchOpt.map(Router.RouteMatch::pattern).orElse(ServerMetrics.NO_HANDLER);
+        Response response;
+        try {
+            response = matchOpt.isPresent() ? callRequestHandler(matchOpt.get(), request)
+                    : noHandlerErrorResponse(request);
+        } catch (RuntimeException ex) {
+            metrics.requestHandled(handlerLabel, HttpStatus.INTERNAL_SERVER_ERROR); // Sent by HttpServer
+            throw ex;
+        }
+        var writeStart = System.nanoTime();
+        metrics.recordHandlerTime(writeStart - handlerStart);
+        metrics.requestHandled(handlerLabel, response.getStatus());
+
+        // HTTP 1.0 clients do not support the chunked transfer coding: the end of a body of unknown length is
+        // then signaled by closing the connection
+        var keepAlive = keepAliveAllowed && isKeepAliveEnabled(request)
+                && (response.getBodyLength() != Response.UNKNOWN_LENGTH || request.getHttpMinorVersion() > 0);
         responseWriter.writeHeaders(response, keepAlive);
 
         if (request.getMethod() != HttpMethod.HEAD) {
             responseWriter.writeBody(response);
         }
+        metrics.recordWriteTime(System.nanoTime() - writeStart);
 
         return keepAlive;
     }
 
-    private Optional<RegisteredRequestHandler> findHandler(ValidRequest request) {
-        var requestPath = request.getURI().getPath();
-        return requestHandlers.stream()
-                .filter(handler -> handler.pathPrefix.equals("/") || requestPath.startsWith(handler.pathPrefix))
-                .findFirst();
-    }
-
-    private Response callRequestHandler(RegisteredRequestHandler handler, ValidRequest request) {
-        var relativeRequestPath = request.getURI().getPath().substring(handler.pathPrefix.length());
-        return handler.requestHandler.handle(request, relativeRequestPath);
+    private Response callRequestHandler(Router.RouteMatch match, ValidRequest request) {
+        if (!match.isMethodAllowed()) {
+            return methodNotAllowedErrorResponse(request, match.allowedMethods());
+        }
+        var routedRequest = match.pathParameters().isEmpty() ? request
+                : request.withPathParameters(match.pathParameters());
+        return match.handler().handle(routedRequest, match.relativePath());
     }
 
     private Response noHandlerErrorResponse(ValidRequest request) {
@@ -81,6 +150,14 @@ public class TopLevelRequestHandler {
                 .build();
     }
 
+    private Response methodNotAllowedErrorResponse(ValidRequest request, Set<HttpMethod> allowedMethods) {
+        return Response.builder()
+                .status(HttpStatus.METHOD_NOT_ALLOWED)
+                .header("Allow", allowedMethods.stream().map(Enum::name).collect(Collectors.joining(", ")))
+                .body("Method %s not allowed for path %s".formatted(request.getMethod(), request.getURI().getPath()))
+                .build();
+    }
+
     private boolean isKeepAliveEnabled(ValidRequest request) {
         var keepAliveHeader = request.getKeepAliveHeader();
         if (keepAliveHeader != null) {
@@ -97,10 +174,8 @@ public class TopLevelRequestHandler {
                 .status(requestError.statusCode())
                 .body(requestError.errorMessage())
                 .build();
+        metrics.requestHandled(ServerMetrics.INVALID_REQUEST, response.getStatus());
         responseWriter.writeFull(response, false);
         return false; // No reason to keep the connection open when we receive invalid request
     }
-
-    private record RegisteredRequestHandler(String pathPrefix, ResourceRequestHandler requestHandler) {
-    }
 }
@@ -0,0 +1,65 @@
+package eu.kapalka.http.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values (e.g., durations in nanoseconds) with fixed bucket upper bounds. Each bucket is
+ * a {@link LongAdder}, which spreads concurrent updates over per-thread cells, so that recording a value takes
+ * neither a lock nor a contended compare-and-swap. Reads are not atomic with respect to concurrent updates: the sum
+ * may include a value that is not counted in the buckets yet (or vice versa).
+ */
+public class Histogram {
+
+    private final long[] upperBounds;
+    // One more bucket than upper bounds, for the values above the largest bound
+    private final LongAdder[] buckets;
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Creates a histogram whose buckets count the values smaller than or equal to the given (strictly increasing)
+     * upper bounds, plus a bucket for the values larger than the last bound.
+     */
+    public Histogram(long... upperBounds) {
+        for (int i = 1; i < upperBounds.length; i++) {
+            if (upperBounds[i] <= upperBounds[i - 1]) {
+                throw new IllegalArgumentException("Upper bounds must be strictly increasing");
+            }
+        }
+        this.upperBounds = upperBounds.clone();
+        this.buckets = new LongAdder[upperBounds.length + 1];
+        Arrays.setAll(buckets, i -> new LongAdder());
+    }
+
+    public void record(long value) {
+        var index = Arrays.binarySearch(upperBounds, value);
+        buckets[(index >= 0) ? index : -index - 1].increment();
+        sum.add(value);
+    }
+
+    public long[] getUpperBounds() {
+        return upperBounds.clone();
+    }
+
+    /**
+     * Returns, for each upper bound (and, as the last element, for the total), the number of recorded values smaller
+     * than or equal to the bound.
+     */
+    public long[] getCumulativeCounts() {
+        var counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            count += buckets[i].sum();
+            counts[i] = count;
+        }
+        return counts;
+    }
+
+    public long getCount() {
+        return Arrays.stream(buckets).mapToLong(LongAdder::sum).sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+}
@@ -0,0 +1,296 @@
+package eu.kapalka.http.metrics;
+
+import eu.kapalka.http.response.HttpStatus;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of an HTTP server: connections, requests (per handler and status), traffic, timeouts and the time spent
+ * in each phase of request processing. All updates are lock-free, so that recording metrics does not introduce
+ * contention between the threads that serve requests. The metrics can be exported in the Prometheus text format
+ * (see {@link #toPrometheusText()}).
+ * <p>
+ * Requests are labeled with the path pattern of the handler they are routed to, or with {@link #NO_HANDLER},
+ * {@link #INVALID_REQUEST} and {@link #REJECTED} if they are not routed to any handler.
+ */
+public class ServerMetrics {
+
+    public static final String NO_HANDLER = "none";
+    public static final String INVALID_REQUEST = "invalid";
+    public static final String REJECTED = "rejected";
+
+    // Upper bounds of the buckets of duration histograms, from 10 microseconds to 10 seconds
+    private static final long[] DURATION_BUCKETS_NANOS = {
+            10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000, 10_000_000, 25_000_000, 50_000_000, 100_000_000, 250_000_000, 500_000_000,
+            1_000_000_000, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L};
+
+    private static final HttpStatus[] STATUSES = HttpStatus.values();
+
+    /**
+     * Reasons for closing a connection because of a timeout.
+     */
+    public enum Timeout {
+        /** Serving a request took longer than the request timeout. */
+        REQUEST,
+        /** The client did not send data within the read timeout of the socket. */
+        READ,
+        /** The connection stayed idle between requests for longer than the idle timeout. */
+        IDLE
+    }
+
+    private final LongAdder acceptedConnections = new LongAdder();
+    // Accepted connections by acceptor thread index
+    private final Map<Integer, LongAdder> acceptorConnections = new ConcurrentHashMap<>();
+    private final LongAdder activeConnections = new LongAdder();
+    private final LongAdder reusedConnectionRequests = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder[] timeouts = new LongAdder[Timeout.values().length];
+    private final LongAdder shedConnections = new LongAdder();
+    // Request counters by handler label, indexed by HttpStatus ordinal
+    private final Map<String, LongAdder[]> requests = new ConcurrentHashMap<>();
+    private final Histogram queueTime = new Histogram(DURATION_BUCKETS_NANOS);
+    private final Histogram parseTime = new Histogram(DURATION_BUCKETS_NANOS);
+    private final Histogram handlerTime = new Histogram(DURATION_BUCKETS_NANOS);
+    private final Histogram writeTime = new Histogram(DURATION_BUCKETS_NANOS);
+
+    public ServerMetrics() {
+        Arrays.setAll(timeouts, i -> new LongAdder());
+    }
+
+    /**
+     * Records a connection accepted by the acceptor thread with the given index.
+     */
+    public void connectionAccepted(int acceptor) {
+        acceptedConnections.increment();
+        var counter = acceptorConnections.get(acceptor);
+        if (counter == null) {
+            counter = acceptorConnections.computeIfAbsent(acceptor, a -> new LongAdder());
+        }
+        counter.increment();
+        activeConnections.increment();
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    /**
+     * Records a request sent over a connection that already served a previous request (keep-alive).
+     */
+    public void requestOnReusedConnection() {
+        reusedConnectionRequests.increment();
+    }
+
+    public void addBytesReceived(long numBytes) {
+        bytesReceived.add(numBytes);
+    }
+
+    public void addBytesSent(long numBytes) {
+        bytesSent.add(numBytes);
+    }
+
+    public void timeout(Timeout timeout) {
+        timeouts[timeout.ordinal()].increment();
+    }
+
+    /**
+     * Records a connection closed without being served because the server is overloaded.
+     */
+    public void connectionShed() {
+        shedConnections.increment();
+    }
+
+    /**
+     * Records a request handled by the given handler (see {@link ServerMetrics}) with a response with the given
+     * status.
+     */
+    public void requestHandled(String handler, HttpStatus status) {
+        var counters = requests.get(handler);
+        if (counters == null) {
+            counters = requests.computeIfAbsent(handler, h -> {
+                var newCounters = new LongAdder[STATUSES.length];
+                Arrays.setAll(newCounters, i -> new LongAdder());
+                return newCounters;
+            });
+        }
+        counters[status.ordinal()].increment();
+    }
+
+    /**
+     * Records the time a connection waited for a thread to serve it.
+     */
+    public void recordQueueTime(long nanos) {
+        queueTime.record(nanos);
+    }
+
+    /**
+     * Records the time spent parsing the request line and headers, from the arrival of the first bytes
+     * of a request.
+     */
+    public void recordParseTime(long nanos) {
+        parseTime.record(nanos);
+    }
+
+    /**
+     * Records the time spent routing a request and generating the response.
+     */
+    public void recordHandlerTime(long nanos) {
+        handlerTime.record(nanos);
+    }
+
+    /**
+     * Records the time spent writing a response. Responses are buffered, so this may not include sending the last
+     * part of the response.
+     */
+    public void recordWriteTime(long nanos) {
+        writeTime.record(nanos);
+    }
+
+    public long getAcceptedConnectionCount() {
+        return acceptedConnections.sum();
+    }
+
+    public long getAcceptedConnectionCount(int acceptor) {
+        var counter = acceptorConnections.get(acceptor);
+        return (counter != null) ? counter.sum() : 0;
+    }
+
+    public long getActiveConnectionCount() {
+        return activeConnections.sum();
+    }
+
+    public long getReusedConnectionRequestCount() {
+        return reusedConnectionRequests.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getTimeoutCount(Timeout timeout) {
+        return timeouts[timeout.ordinal()].sum();
+    }
+
+    public long getShedConnectionCount() {
+        return shedConnections.sum();
+    }
+
+    public long getRequestCount(String handler, HttpStatus status) {
+        var counters = requests.get(handler);
+        return (counters != null) ? counters[status.ordinal()].sum() : 0;
+    }
+
+    public Histogram getQueueTime() {
+        return queueTime;
+    }
+
+    public Histogram getParseTime() {
+        return parseTime;
+    }
+
+    public Histogram getHandlerTime() {
+        return handlerTime;
+    }
+
+    public Histogram getWriteTime() {
+        return writeTime;
+    }
+
+    /**
+     * Returns the metrics in the Prometheus text exposition format (version 0.0.4). Durations are in seconds.
+     */
+    public String toPrometheusText() {
+        var out = new StringBuilder(4096);
+        metricHeader(out, "http_connections_accepted_total", "counter", "Connections accepted");
+        sample(out, "http_connections_accepted_total", "", acceptedConnections.sum());
+        metricHeader(out, "http_acceptor_connections_accepted_total", "counter", "Connections accepted by acceptor");
+        for (var entry : new TreeMap<>(acceptorConnections).entrySet()) {
+            sample(out, "http_acceptor_connections_accepted_total", "acceptor=\"%d\"".formatted(entry.getKey()),
+                    entry.getValue().sum());
+        }
+        metricHeader(out, "http_connections_active", "gauge", "Connections currently open");
+        sample(out, "http_connections_active", "", activeConnections.sum());
+
+        metricHeader(out, "http_requests_total", "counter", "Requests by handler and response status");
+        // Sorted, so that consecutive scrapes list the series in the same order
+        for (var entry : new TreeMap<>(requests).entrySet()) {
+            var counters = entry.getValue();
+            for (var status : STATUSES) {
+                var count = counters[status.ordinal()].sum();
+                if (count > 0) {
+                    sample(out, "http_requests_total", "handler=\"%s\",status=\"%d\""
+                            .formatted(escapeLabelValue(entry.getKey()), status.getCode()), count);
+                }
+            }
+        }
+        metricHeader(out, "http_reused_connection_requests_total", "counter",
+                "Requests sent over a connection that served a previous request");
+        sample(out, "http_reused_connection_requests_total", "", reusedConnectionRequests.sum());
+
+        metricHeader(out, "http_received_bytes_total", "counter", "Bytes received from clients");
+        sample(out, "http_received_bytes_total", "", bytesReceived.sum());
+        metricHeader(out, "http_sent_bytes_total", "counter", "Bytes sent to clients");
+        sample(out, "http_sent_bytes_total", "", bytesSent.sum());
+
+        metricHeader(out, "http_timeouts_total", "counter", "Connections closed because of a timeout");
+        for (var timeout : Timeout.values()) {
+            sample(out, "http_timeouts_total", "type=\"%s\"".formatted(timeout.name().toLowerCase()),
+                    timeouts[timeout.ordinal()].sum());
+        }
+
+        metricHeader(out, "http_shed_connections_total", "counter",
+                "Connections closed without being served because of an overload");
+        sample(out, "http_shed_connections_total", "", shedConnections.sum());
+
+        durationHistogram(out, "http_queue_wait_seconds", "Time connections waited for a thread", queueTime);
+        durationHistogram(out, "http_request_parse_seconds", "Time spent parsing request headers", parseTime);
+        durationHistogram(out, "http_handler_seconds", "Time spent generating responses", handlerTime);
+        durationHistogram(out, "http_response_write_seconds", "Time spent writing responses", writeTime);
+        return out.toString();
+    }
+
+    private static void metricHeader(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Object value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void durationHistogram(StringBuilder out, String name, String help, Histogram histogram) {
+        metricHeader(out, name, "histogram", help);
+        var upperBounds = histogram.getUpperBounds();
+        var cumulativeCounts = histogram.getCumulativeCounts();
+        for (int i = 0; i < upperBounds.length; i++) {
+            sample(out, name + "_bucket", "le=\"%s\"".formatted(nanosToSeconds(upperBounds[i])), cumulativeCounts[i]);
+        }
+        var count = cumulativeCounts[upperBounds.length];
+        sample(out, name + "_bucket", "le=\"+Inf\"", count);
+        sample(out, name + "_sum", "", nanosToSeconds(histogram.getSum()));
+        sample(out, name + "_count", "", count);
+    }
+
+    private static String nanosToSeconds(long nanos) {
+        return BigDecimal.valueOf(nanos, 9).stripTrailingZeros().toPlainString();
+    }
+
+    private static String escapeLabelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,261 @@
+package eu.kapalka.http.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.util.logging.Level.FINE;
+
+/**
+ * Repository of blobs (binary contents identified by arbitrary keys) stored as files under a base directory.
+ * Blob files are named after the SHA-256 hash of their keys, so that keys never translate to file system paths
+ * (no path traversal, no restrictions on characters or length), and spread over 256 subdirectories.
+ * <p>
+ * A blob is written to a temporary file that is then atomically renamed to the blob file: readers see either
+ * the previous or the new contents of the blob, never partial contents. Whether completed writes survive a system
+ * crash depends on the configured {@link Durability}. With {@link Durability#GROUP_COMMIT}, the repository either
+ * uses a {@link GroupCommitScheduler} shared with other repositories, or owns a scheduler that is stopped by
+ * {@link #close()}.
+ * <p>
+ * The base directory must be used by a single repository (and a single server process). Blob files are opened
+ * when the responses are sent, so a read that overlaps with a write of the same blob may send the new contents
+ * with the metadata (e.g., size) of the previous version: if the sizes differ, the transfer fails and
+ * the connection is closed.
+ */
+public class BlobRepository implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(BlobRepository.class.getName());
+
+    private static final String MIME_TYPE = "application/octet-stream";
+    private static final String TEMP_DIRECTORY = "tmp";
+    private static final String TEMP_FILE_PREFIX = "upload-";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final Path basePath;
+    private final Path tempPath;
+    private final long maxBlobSize;
+    private final Durability durability;
+    private final GroupCommitScheduler groupCommitScheduler;
+    private final boolean ownsGroupCommitScheduler;
+
+    /**
+     * Creates a repository of blobs of at most <code>maxBlobSize</code> bytes stored under <code>basePath</code>.
+     * The directory is created if it does not exist. Temporary files left by interrupted writes are deleted.
+     * With {@link Durability#GROUP_COMMIT}, the repository creates a {@link GroupCommitScheduler} with
+     * the default settings.
+     *
+     * @throws IOException if the directory cannot be created or cleaned up
+     */
+    public BlobRepository(Path basePath, long maxBlobSize, Durability durability) throws IOException {
+        this(basePath, maxBlobSize, durability,
+                (durability == Durability.GROUP_COMMIT) ? new GroupCommitScheduler() : null, true);
+    }
+
+    /**
+     * Creates a repository with {@link Durability#GROUP_COMMIT} whose writes are flushed to disk by
+     * <code>groupCommitScheduler</code> (which is not stopped when the repository is closed).
+     *
+     * @throws IOException if the directory cannot be created or cleaned up
+     */
+    public BlobRepository(Path basePath, long maxBlobSize, GroupCommitScheduler groupCommitScheduler)
+            throws IOException {
+        this(basePath, maxBlobSize, Durability.GROUP_COMMIT, groupCommitScheduler, false);
+    }
+
+    private BlobRepository(Path basePath, long maxBlobSize, Durability durability,
+                           GroupCommitScheduler groupCommitScheduler, boolean ownsGroupCommitScheduler)
+            throws IOException {
+        this.basePath = basePath.toAbsolutePath().normalize();
+        this.tempPath = this.basePath.resolve(TEMP_DIRECTORY);
+        this.maxBlobSize = maxBlobSize;
+        this.durability = durability;
+        this.groupCommitScheduler = groupCommitScheduler;
+        this.ownsGroupCommitScheduler = ownsGroupCommitScheduler;
+
+        Files.createDirectories(tempPath);
+        try (var tempFiles = Files.newDirectoryStream(tempPath, TEMP_FILE_PREFIX + "*")) {
+            for (var tempFile : tempFiles) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    public long getMaxBlobSize() {
+        return maxBlobSize;
+    }
+
+    /**
+     * Returns the blob with the given key, or {@link Optional#empty()} if it does not exist.
+     */
+    public Optional<FileInfo> find(String key) {
+        var blobPath = blobPath(key);
+        try {
+            var fileAttrs = Files.readAttributes(blobPath, BasicFileAttributes.class);
+            return Optional.of(toFileInfo(blobPath, fileAttrs));
+        } catch (IOException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores the contents read from <code>contents</code> (until its end) as the blob with the given key, replacing
+     * the previous version of the blob if any. Returns {@link Optional#empty()}, without modifying the blob,
+     * if the contents is longer than {@link #getMaxBlobSize()}.
+     *
+     * @throws IOException if reading the contents or writing the blob fails (the blob is then not modified)
+     */
+    public Optional<StoredBlob> put(String key, InputStream contents) throws IOException {
+        var blobPath = blobPath(key);
+        var tempFile = Files.createTempFile(tempPath, TEMP_FILE_PREFIX, ".tmp");
+        try {
+            if (!writeFile(tempFile, contents)) {
+                return Optional.empty();
+            }
+            var fileAttrs = Files.readAttributes(tempFile, BasicFileAttributes.class);
+
+            var directory = blobPath.getParent();
+            var newDirectory = !Files.isDirectory(directory);
+            if (newDirectory) {
+                Files.createDirectories(directory);
+            }
+            if (newDirectory && durability != Durability.NONE) {
+                syncDirectory(basePath); // Rare enough not to be worth batching
+            }
+            var created = !Files.exists(blobPath); // Only informative: concurrent writes may race
+            moveToBlobFile(tempFile, blobPath);
+            logger.log(FINE, "Stored blob {0} ({1} bytes)", new Object[]{key, fileAttrs.size()});
+            return Optional.of(new StoredBlob(toFileInfo(blobPath, fileAttrs), created));
+        } finally {
+            Files.deleteIfExists(tempFile); // Does nothing if the file was moved
+        }
+    }
+
+    /**
+     * Deletes the blob with the given key. Returns <code>false</code> if the blob does not exist.
+     *
+     * @throws IOException if the blob cannot be deleted
+     */
+    public boolean delete(String key) throws IOException {
+        var blobPath = blobPath(key);
+        try {
+            Files.delete(blobPath);
+        } catch (NoSuchFileException ex) {
+            return false;
+        }
+        switch (durability) {
+            case NONE -> {
+            }
+            case PER_WRITE -> syncDirectory(blobPath.getParent());
+            case GROUP_COMMIT -> groupCommitScheduler.commit(null, null, blobPath.getParent());
+        }
+        logger.log(FINE, "Deleted blob {0}", key);
+        return true;
+    }
+
+    /**
+     * Stops the {@link GroupCommitScheduler} created by the repository, if any.
+     */
+    @Override
+    public void close() {
+        if (ownsGroupCommitScheduler && groupCommitScheduler != null) {
+            groupCommitScheduler.close();
+        }
+    }
+
+    /**
+     * Returns the path of the file of the blob with the given key, e.g.,
+     * <code>${basePath}/3a/3a7bd3e2...</code>.
+     */
+    Path blobPath(String key) {
+        var hash = HexFormat.of().formatHex(sha256(key));
+        return basePath.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * Atomically renames a complete temporary file to a blob file (replacing the previous version of the blob, if
+     * any) with the configured durability.
+     */
+    private void moveToBlobFile(Path tempFile, Path blobPath) throws IOException {
+        switch (durability) {
+            case NONE -> Files.move(tempFile, blobPath, ATOMIC_MOVE);
+            case PER_WRITE -> {
+                Files.move(tempFile, blobPath, ATOMIC_MOVE);
+                syncDirectory(blobPath.getParent());
+            }
+            case GROUP_COMMIT -> groupCommitScheduler.commit(tempFile,
+                    () -> Files.move(tempFile, blobPath, ATOMIC_MOVE), blobPath.getParent());
+        }
+    }
+
+    /**
+     * Copies <code>contents</code> to <code>file</code>. Returns <code>false</code> if the contents is too long.
+     */
+    private boolean writeFile(Path file, InputStream contents) throws IOException {
+        try (var fileChannel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            var buffer = new byte[COPY_BUFFER_SIZE];
+            long size = 0;
+            int length;
+            while ((length = contents.read(buffer)) != -1) {
+                size += length;
+                if (size > maxBlobSize) {
+                    return false;
+                }
+                var byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+                while (byteBuffer.hasRemaining()) {
+                    fileChannel.write(byteBuffer);
+                }
+            }
+            if (durability == Durability.PER_WRITE) {
+                fileChannel.force(false); // File metadata other than the size is not needed to read the blob
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Flushes the entries of a directory (e.g., a renamed file) to disk. This works on POSIX file systems, where
+     * directories can be opened for reading.
+     */
+    private static void syncDirectory(Path directory) throws IOException {
+        try (var directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        }
+    }
+
+    private static FileInfo toFileInfo(Path blobPath, BasicFileAttributes fileAttrs) {
+        var lastModifiedTime = fileAttrs.lastModifiedTime();
+        return new FileInfo(blobPath, fileAttrs.size(), MIME_TYPE, lastModifiedTime.toMillis(),
+                StaticFileRepository.entityTag(fileAttrs.size(), lastModifiedTime));
+    }
+
+    private static byte[] sha256(String key) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not supported", ex); // Every Java platform supports it
+        }
+    }
+
+    /**
+     * Blob written by {@link #put(String, InputStream)}.
+     *
+     * @param fileInfo the written blob
+     * @param created whether the blob did not exist before
+     */
+    public record StoredBlob(FileInfo fileInfo, boolean created) {
+    }
+}
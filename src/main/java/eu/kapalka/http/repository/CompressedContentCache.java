@@ -0,0 +1,146 @@
+package eu.kapalka.http.repository;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * In-memory cache of files compressed on the fly (gzip), used by {@link StaticFileRepository} for compressible
+ * files that have no precompressed variant. Compressing a file is much more expensive than sending it, so each
+ * version of a file is compressed once: entries are keyed by path and tagged with the entity tag of the file
+ * version (derived from its size and modification time), which makes entries of modified files stale.
+ * <p>
+ * Like {@link FileCache}, the cache is bounded by a total byte budget and evicts the least recently used entries.
+ * Files whose compressed size is not smaller than their size are remembered as such, so that they are not
+ * compressed again.
+ */
+public class CompressedContentCache {
+
+    // Approximation of the memory used by an entry, in addition to the compressed contents
+    static final long ENTRY_OVERHEAD_BYTES = 256;
+    // Smaller files would barely shrink: the gzip header and trailer take 18 bytes
+    static final long MIN_FILE_SIZE = 256;
+
+    private final long maxFileSize;
+    private final long maxTotalSize;
+
+    // Access-ordered map: the first entry is the least recently used one
+    private final LinkedHashMap<Path, CompressedFile> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maxFileSize max size of a file that is compressed on the fly (larger files are sent uncompressed
+     *                    unless they have a precompressed variant)
+     * @param maxTotalSize max total size of the cache (compressed contents and metadata)
+     */
+    public CompressedContentCache(long maxFileSize, long maxTotalSize) {
+        if (maxFileSize < 0 || maxTotalSize < 0) {
+            throw new IllegalArgumentException("Cache sizes cannot be negative");
+        }
+        if (maxFileSize > Integer.MAX_VALUE) {
+            // The compressed contents is held in a byte array
+            throw new IllegalArgumentException("Max size of a compressed file cannot exceed 2 GiB: " + maxFileSize);
+        }
+        this.maxFileSize = maxFileSize;
+        this.maxTotalSize = maxTotalSize;
+    }
+
+    /**
+     * Returns the number of lookups served from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of lookups that required compressing the file.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted to keep the cache within its size limit.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the current size of the cache in bytes, including the metadata overhead.
+     */
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Returns the compressed contents of the given file, compressing it with <code>compressor</code> if
+     * the cache has no entry for the current version of the file. Returns {@link Optional#empty()} if the file
+     * is too small or too large to be compressed on the fly, or if compression does not reduce its size.
+     */
+    Optional<byte[]> get(FileInfo fileInfo, Function<FileInfo, Optional<byte[]>> compressor) {
+        if (fileInfo.size() < MIN_FILE_SIZE || fileInfo.size() > maxFileSize) {
+            return Optional.empty();
+        }
+
+        var compressedFile = lookup(fileInfo.path());
+        if (compressedFile != null && compressedFile.etag().equals(fileInfo.etag())) {
+            hitCount.increment();
+            return Optional.ofNullable(compressedFile.content());
+        }
+
+        // The file is compressed without holding the lock, so concurrent misses may compress it twice
+        missCount.increment();
+        var content = compressor.apply(fileInfo);
+        if (content.isEmpty()) {
+            return Optional.empty(); // The file could not be read
+        }
+        var compressedContent = (content.get().length < fileInfo.size()) ? content.get() : null;
+        if (!fileInfo.etag().startsWith("W/")) {
+            // Weak tags do not identify the contents reliably (the file may still be being written)
+            put(fileInfo.path(), new CompressedFile(fileInfo.etag(), compressedContent));
+        }
+        return Optional.ofNullable(compressedContent);
+    }
+
+    private synchronized CompressedFile lookup(Path path) {
+        return entries.get(path);
+    }
+
+    private synchronized void put(Path path, CompressedFile compressedFile) {
+        if (compressedFile.cacheSize() > maxTotalSize) {
+            return;
+        }
+
+        var previous = entries.put(path, compressedFile);
+        if (previous != null) {
+            totalSize -= previous.cacheSize();
+        }
+        totalSize += compressedFile.cacheSize();
+
+        var iterator = entries.values().iterator();
+        while (totalSize > maxTotalSize) {
+            var eldest = iterator.next();
+            iterator.remove();
+            totalSize -= eldest.cacheSize();
+            evictionCount.increment();
+        }
+    }
+
+    /**
+     * Cache entry: entity tag of the compressed file version and compressed contents (<code>null</code> if
+     * compression does not reduce the file size).
+     */
+    private record CompressedFile(String etag, byte[] content) {
+
+        long cacheSize() {
+            return ENTRY_OVERHEAD_BYTES + (content != null ? content.length : 0);
+        }
+    }
+}
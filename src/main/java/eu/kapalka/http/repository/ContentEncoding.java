@@ -0,0 +1,52 @@
+package eu.kapalka.http.repository;
+
+import java.util.Set;
+
+/**
+ * Content codings (compression formats) that can be applied to static files, in the order of preference of
+ * the server (better compression first). The compressed variants of a file can be stored next to the file,
+ * with the coding-specific suffix (e.g., <code>style.css.br</code> and <code>style.css.gz</code>).
+ */
+public enum ContentEncoding {
+    BROTLI("br", ".br"),
+    GZIP("gzip", ".gz");
+
+    // Media types, other than text/*, whose contents is typically compressible
+    private static final Set<String> COMPRESSIBLE_MEDIA_TYPES = Set.of("application/javascript", "application/json",
+            "application/xml", "application/xhtml+xml", "application/wasm", "image/svg+xml");
+
+    private final String token;
+    private final String fileSuffix;
+
+    ContentEncoding(String token, String fileSuffix) {
+        this.token = token;
+        this.fileSuffix = fileSuffix;
+    }
+
+    /**
+     * Returns the name of the coding in the <code>Accept-Encoding</code> and <code>Content-Encoding</code> headers.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Returns the suffix of the file name of a precompressed variant.
+     */
+    public String getFileSuffix() {
+        return fileSuffix;
+    }
+
+    /**
+     * Returns <code>true</code> if files with the given media type are worth compressing. Formats that are
+     * already compressed (images, audio, video, archives) are not.
+     */
+    public static boolean isCompressible(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        var separator = mimeType.indexOf(';');
+        var mediaType = (separator == -1 ? mimeType : mimeType.substring(0, separator)).trim();
+        return mediaType.startsWith("text/") || COMPRESSIBLE_MEDIA_TYPES.contains(mediaType);
+    }
+}
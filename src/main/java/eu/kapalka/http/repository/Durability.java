@@ -0,0 +1,24 @@
+package eu.kapalka.http.repository;
+
+/**
+ * Durability guarantees of write operations of a {@link BlobRepository}, i.e., whether a completed write survives
+ * a crash of the operating system or a power failure (writes survive a crash of the server process in any case).
+ */
+public enum Durability {
+    /**
+     * Writes are left in the page cache of the operating system, which writes them to disk eventually. This is
+     * the fastest option, but the most recent writes may be lost (or a blob may be empty) after a system crash.
+     */
+    NONE,
+    /**
+     * Each write is flushed to disk (<code>fsync</code> of the file and of its directory) before it completes.
+     * The throughput of writes is then limited by the latency of disk flushes.
+     */
+    PER_WRITE,
+    /**
+     * Like {@link #PER_WRITE}, but concurrent writes are flushed to disk together by a {@link GroupCommitScheduler}:
+     * each write waits for a short flush window, and a directory is flushed once for all the writes in it. This
+     * trades some latency of single writes for a throughput that grows with the number of concurrent writes.
+     */
+    GROUP_COMMIT
+}
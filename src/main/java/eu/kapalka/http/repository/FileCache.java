@@ -0,0 +1,233 @@
+package eu.kapalka.http.repository;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * In-memory cache of file metadata and (for small files) file contents, used by {@link StaticFileRepository}.
+ * The cache is bounded by a total byte budget: the least recently used entries are evicted when the budget is
+ * exceeded. Each entry accounts for the cached file contents plus a fixed overhead for the metadata.
+ * <p>
+ * Hits, which are the hot path of serving static files, do not take any lock: entries are kept in a concurrent map
+ * and record the time of their latest access. Only the updates of the cache after a miss are serialized, and finding
+ * the least recently used entry to evict requires a scan of the entries, which is cheap compared to reading a file.
+ * <p>
+ * Cached entries are revalidated against the file system (modification time and size) when they are accessed
+ * and the latest validation is older than the revalidation interval. A revalidation interval of zero means that
+ * the file attributes are checked on every access, which is still much cheaper than reading a file from scratch.
+ * <p>
+ * The cache can also hold negative entries, which record that a file does not exist (see {@link CachedFile#missing()}),
+ * for files that are looked up on every request but usually absent.
+ */
+public class FileCache {
+
+    // Approximation of the memory used by an entry, in addition to the cached file contents
+    static final long ENTRY_OVERHEAD_BYTES = 256;
+
+    private final long maxEntrySize;
+    private final long maxTotalSize;
+    private final long revalidationIntervalNanos;
+
+    private final Map<Path, CachedFile> entries = new ConcurrentHashMap<>();
+    // Guarded by this
+    private long totalSize;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maxEntrySize max size of a file whose contents is cached (metadata is cached for larger files)
+     * @param maxTotalSize max total size of the cache (file contents and metadata)
+     * @param revalidationIntervalMs max time during which a cached entry is used without checking whether
+     *                               the file was modified
+     */
+    public FileCache(long maxEntrySize, long maxTotalSize, long revalidationIntervalMs) {
+        if (maxEntrySize < 0 || maxTotalSize < 0 || revalidationIntervalMs < 0) {
+            throw new IllegalArgumentException("Cache sizes and revalidation interval cannot be negative");
+        }
+        this.maxEntrySize = maxEntrySize;
+        this.maxTotalSize = maxTotalSize;
+        this.revalidationIntervalNanos = MILLISECONDS.toNanos(revalidationIntervalMs);
+    }
+
+    /**
+     * Returns the number of lookups served from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of lookups that required reading the file from the file system (including entries
+     * found to be stale).
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted to keep the cache within its size limit.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the current size of the cache in bytes, including the metadata overhead.
+     */
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    long getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    /**
+     * Returns the cached entry for the given (absolute, normalized) path, or loads it with <code>loader</code>
+     * if it is missing or stale. Entries rejected by <code>validator</code> (when they need to be revalidated)
+     * are considered stale.
+     */
+    Optional<CachedFile> get(Path path, Predicate<CachedFile> validator,
+                             Function<Path, Optional<CachedFile>> loader) {
+        var cachedFile = entries.get(path);
+        if (cachedFile != null) {
+            var now = System.nanoTime();
+            cachedFile.markAccessed(now);
+            if (now - cachedFile.validatedAtNanos() <= revalidationIntervalNanos) {
+                hitCount.increment();
+                return Optional.of(cachedFile);
+            }
+            if (validator.test(cachedFile)) {
+                hitCount.increment();
+                cachedFile.markValidated(now);
+                return Optional.of(cachedFile);
+            }
+            remove(path, cachedFile);
+        }
+
+        // The file is read without holding the lock, so concurrent misses on the same file may load it twice
+        missCount.increment();
+        var loadedFile = loader.apply(path);
+        loadedFile.filter(CachedFile::isCacheable).ifPresent(file -> put(path, file));
+        return loadedFile;
+    }
+
+    /**
+     * Returns the cached entry for the given path, if any, without validating it (and without updating
+     * the cache statistics).
+     */
+    Optional<CachedFile> peek(Path path) {
+        return Optional.ofNullable(entries.get(path));
+    }
+
+    private synchronized void remove(Path path, CachedFile cachedFile) {
+        if (entries.remove(path, cachedFile)) {
+            totalSize -= cachedFile.cacheSize();
+        }
+    }
+
+    private synchronized void put(Path path, CachedFile cachedFile) {
+        if (cachedFile.cacheSize() > maxTotalSize) {
+            return;
+        }
+
+        var previous = entries.put(path, cachedFile);
+        if (previous != null) {
+            totalSize -= previous.cacheSize();
+        }
+        totalSize += cachedFile.cacheSize();
+
+        while (totalSize > maxTotalSize) {
+            var eldest = findLeastRecentlyUsed();
+            entries.remove(eldest.getKey());
+            totalSize -= eldest.getValue().cacheSize();
+            evictionCount.increment();
+        }
+    }
+
+    private Map.Entry<Path, CachedFile> findLeastRecentlyUsed() {
+        Map.Entry<Path, CachedFile> eldest = null;
+        for (var entry : entries.entrySet()) {
+            if (eldest == null || entry.getValue().accessedAtNanos() - eldest.getValue().accessedAtNanos() < 0) {
+                eldest = entry;
+            }
+        }
+        return eldest;
+    }
+
+    /**
+     * Cache entry: file metadata (including the attributes used to detect file modifications) and file contents
+     * (<code>null</code> if the file is too large to be cached), or no metadata for a file that does not exist.
+     */
+    static final class CachedFile {
+
+        private final FileInfo fileInfo;
+        private final byte[] content;
+        private volatile long validatedAtNanos;
+        private volatile long accessedAtNanos;
+
+        CachedFile(FileInfo fileInfo, byte[] content) {
+            this.fileInfo = fileInfo;
+            this.content = content;
+            this.validatedAtNanos = System.nanoTime();
+            this.accessedAtNanos = validatedAtNanos;
+        }
+
+        /**
+         * Returns a negative entry, for a file that does not exist.
+         */
+        static CachedFile missing() {
+            return new CachedFile(null, null);
+        }
+
+        boolean exists() {
+            return fileInfo != null;
+        }
+
+        /**
+         * Returns <code>false</code> for a file modified very recently: its entity tag is weak (see
+         * {@link StaticFileRepository#entityTag}) and revalidation would keep it weak, so the entry is loaded again
+         * until the tag becomes strong.
+         */
+        boolean isCacheable() {
+            return fileInfo == null || !fileInfo.etag().startsWith("W/");
+        }
+
+        FileInfo fileInfo() {
+            return fileInfo;
+        }
+
+        byte[] content() {
+            return content;
+        }
+
+        long validatedAtNanos() {
+            return validatedAtNanos;
+        }
+
+        void markValidated(long nanoTime) {
+            validatedAtNanos = nanoTime;
+        }
+
+        long accessedAtNanos() {
+            return accessedAtNanos;
+        }
+
+        void markAccessed(long nanoTime) {
+            accessedAtNanos = nanoTime;
+        }
+
+        long cacheSize() {
+            return ENTRY_OVERHEAD_BYTES + (content != null ? content.length : 0);
+        }
+    }
+}
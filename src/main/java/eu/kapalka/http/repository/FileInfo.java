@@ -1,9 +1,28 @@
 package eu.kapalka.http.repository;
 
 import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 
 /**
- * Represents a file stored on the file system and returned by {@link StaticFileRepository#findFile(String)}.
+ * Represents a file stored on the file system and returned by {@link StaticFileRepository#findFile(String)}
+ * (or {@link BlobRepository#find(String)}).
+ * The entity tag <code>etag</code> (in the format of the HTTP <code>ETag</code> header, i.e., quoted and possibly
+ * marked as weak) identifies the version of the file: it changes whenever the file is modified.
+ * The modification time is also formatted as an HTTP date (<code>lastModified</code>, the value of
+ * the <code>Last-Modified</code> header), once per file version rather than for each response.
  */
-public record FileInfo(Path path, long size, String mimeType) {
+public record FileInfo(Path path, long size, String mimeType, long lastModifiedMillis, String etag,
+                       String lastModified) {
+
+    // IMF-fixdate, the preferred format of HTTP dates (RFC_1123_DATE_TIME omits the leading zero of the day)
+    private static final DateTimeFormatter HTTP_DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    public FileInfo(Path path, long size, String mimeType, long lastModifiedMillis, String etag) {
+        this(path, size, mimeType, lastModifiedMillis, etag,
+                HTTP_DATE_FORMATTER.format(Instant.ofEpochMilli(lastModifiedMillis)));
+    }
 }
@@ -0,0 +1,252 @@
+package eu.kapalka.http.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Scheduler that makes concurrent writes durable together ("group commit"), so that the throughput of durable writes
+ * grows with the number of concurrent writers instead of being limited to one disk flush per write. Each write is
+ * described by a file to flush, an action that commits the write (e.g., renaming the file into place) and
+ * the directory whose entries the action modifies (see {@link #commit(Path, CommitAction, Path)}).
+ * <p>
+ * Files are flushed, and commit actions run, by the writing threads themselves: Java cannot flush several files
+ * at once, but the file system merges the flushes issued concurrently into the same journal commit. Directories are
+ * flushed by a single flusher thread, which collects the writes submitted within a flush window: the window starts
+ * with the first write and lasts at most the configured max delay, or until the max batch size is reached. Writes
+ * submitted while a batch is being flushed are taken immediately into the next batch, so batches grow with the load
+ * even with a max delay of zero. Each distinct directory of a batch is flushed once, after all the commit actions
+ * of the batch, which is the order that crash safety requires.
+ */
+public class GroupCommitScheduler implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(GroupCommitScheduler.class.getName());
+
+    /**
+     * By default, writes do not wait for a flush window: batches form from the writes submitted during the previous
+     * flush, so that single writes are not delayed.
+     */
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ZERO;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 128;
+
+    private final long maxDelayNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingCommit> pendingCommits = new LinkedBlockingQueue<>();
+    private final Thread flusherThread;
+    private volatile boolean running = true;
+
+    private final LongAdder commitCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+
+    /**
+     * Creates a scheduler with {@link #DEFAULT_MAX_DELAY} and {@link #DEFAULT_MAX_BATCH_SIZE}.
+     */
+    public GroupCommitScheduler() {
+        this(DEFAULT_MAX_DELAY, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a scheduler and starts its flusher thread (a daemon thread).
+     *
+     * @param maxDelay max time the first write of a batch waits for other writes
+     * @param maxBatchSize max number of writes flushed together
+     */
+    public GroupCommitScheduler(Duration maxDelay, int maxBatchSize) {
+        if (maxDelay.isNegative() || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Max delay must not be negative and max batch size must be positive");
+        }
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.flusherThread = new Thread(this::run, "group-commit-flusher");
+        this.flusherThread.setDaemon(true);
+        this.flusherThread.start();
+    }
+
+    /**
+     * Returns the number of writes committed successfully.
+     */
+    public long getCommitCount() {
+        return commitCount.sum();
+    }
+
+    /**
+     * Returns the number of batches flushed (including batches in which some writes failed).
+     */
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    /**
+     * Makes a write durable: flushes the data of <code>file</code> to disk, then runs <code>commitAction</code>,
+     * then flushes the entries of <code>directory</code> to disk. Each of the three parameters can be
+     * <code>null</code> if the corresponding step is not needed (e.g., the file of a deletion). This method blocks
+     * until the batch that contains the write is flushed.
+     *
+     * @throws IOException if a step of the write fails (the commit action is not run if the file cannot be flushed),
+     *                     or if the scheduler is closed
+     */
+    public void commit(Path file, CommitAction commitAction, Path directory) throws IOException {
+        if (!running) {
+            throw schedulerClosed();
+        }
+        if (file != null) {
+            syncFile(file);
+        }
+        if (commitAction != null) {
+            commitAction.run();
+        }
+        if (directory == null) {
+            commitCount.increment();
+            return;
+        }
+        var pendingCommit = new PendingCommit(directory);
+        pendingCommits.add(pendingCommit);
+        // Unless the flusher thread took it, the commit cannot be flushed after the scheduler was closed
+        if (!running && pendingCommits.remove(pendingCommit)) {
+            throw schedulerClosed();
+        }
+        pendingCommit.await();
+    }
+
+    /**
+     * Stops the flusher thread. Writes that are not flushed yet fail.
+     */
+    @Override
+    public void close() {
+        running = false;
+        flusherThread.interrupt();
+    }
+
+    private void run() {
+        var batch = new ArrayList<PendingCommit>();
+        try {
+            while (running) {
+                batch.add(pendingCommits.take());
+                var deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    // Returns immediately once the deadline has passed, but still takes writes already waiting
+                    var pendingCommit = pendingCommits.poll(deadline - System.nanoTime(), NANOSECONDS);
+                    if (pendingCommit == null) {
+                        break;
+                    }
+                    batch.add(pendingCommit);
+                }
+                flush(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            // Closed
+        } finally {
+            pendingCommits.drainTo(batch);
+            batch.forEach(pendingCommit -> pendingCommit.fail(schedulerClosed()));
+        }
+    }
+
+    private void flush(List<PendingCommit> batch) {
+        batchCount.increment();
+        logger.log(FINE, "Flushing batch of {0} writes", batch.size());
+
+        // Each directory is flushed once for all the writes in it
+        var directoryFailures = new HashMap<Path, IOException>();
+        for (var pendingCommit : batch) {
+            var directory = pendingCommit.directory;
+            if (directoryFailures.containsKey(directory)) {
+                continue;
+            }
+            try {
+                syncDirectory(directory);
+                directoryFailures.put(directory, null);
+            } catch (IOException ex) {
+                logger.log(WARNING, "Flushing directory %s failed".formatted(directory), ex);
+                directoryFailures.put(directory, ex);
+            }
+        }
+
+        for (var pendingCommit : batch) {
+            var failure = directoryFailures.get(pendingCommit.directory);
+            if (failure != null) {
+                pendingCommit.fail(failure);
+            } else {
+                commitCount.increment();
+                pendingCommit.complete();
+            }
+        }
+    }
+
+    private static void syncFile(Path file) throws IOException {
+        try (var fileChannel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            fileChannel.force(false);
+        }
+    }
+
+    /**
+     * Flushes the entries of a directory to disk (directories can be opened for reading on POSIX file systems).
+     */
+    private static void syncDirectory(Path directory) throws IOException {
+        try (var directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        }
+    }
+
+    private static IOException schedulerClosed() {
+        return new IOException("Group commit scheduler closed");
+    }
+
+    /**
+     * Action that commits a write once its file is durable.
+     */
+    @FunctionalInterface
+    public interface CommitAction {
+        void run() throws IOException;
+    }
+
+    /**
+     * Write whose directory is to be flushed.
+     */
+    private static final class PendingCommit {
+        final Path directory;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile IOException failure;
+
+        PendingCommit(Path directory) {
+            this.directory = directory;
+        }
+
+        void complete() {
+            done.countDown();
+        }
+
+        void fail(IOException exception) {
+            failure = exception;
+            done.countDown();
+        }
+
+        void await() throws IOException {
+            try {
+                done.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the commit of a write");
+            }
+            if (failure != null) {
+                throw new IOException("Flushing directory %s failed".formatted(directory), failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package eu.kapalka.http.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.FINE;
+
+/**
+ * Shared memory mappings of large files, used by {@link StaticFileRepository}. A file is mapped once and
+ * the mapping is reused by all concurrent requests for the file, which saves opening and reading the file for
+ * every request. Mappings that are not used for longer than the idle timeout are released.
+ * <p>
+ * Mappings cannot be unmapped explicitly: a released mapping is unmapped by the garbage collector once the last
+ * buffer that refers to it (e.g., the body of a response that is still being sent) becomes unreachable. This also
+ * means that releasing a mapping is always safe, even while it is in use.
+ * <p>
+ * Note that files are expected not to be truncated while they are mapped: reading a mapping past the end of
+ * the underlying file fails with an error.
+ */
+public class MappedFileCache {
+
+    private static final Logger logger = Logger.getLogger(MappedFileCache.class.getName());
+
+    // A mapping is a ByteBuffer, which cannot be larger than 2 GiB: larger files are sent from the file
+    static final long MAX_MAPPED_FILE_SIZE = Integer.MAX_VALUE;
+
+    private final long minFileSize;
+    private final long idleTimeoutNanos;
+
+    private final ConcurrentHashMap<Path, MappedFile> mappedFiles = new ConcurrentHashMap<>();
+    private final AtomicLong lastIdleCheckNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param minFileSize min size of files that are mapped (smaller files are served more efficiently by
+     *                    other means)
+     * @param idleTimeoutMs time after which an unused mapping is released
+     */
+    public MappedFileCache(long minFileSize, long idleTimeoutMs) {
+        if (minFileSize < 0 || idleTimeoutMs < 0) {
+            throw new IllegalArgumentException("Min file size and idle timeout cannot be negative");
+        }
+        this.minFileSize = minFileSize;
+        this.idleTimeoutNanos = MILLISECONDS.toNanos(idleTimeoutMs);
+    }
+
+    /**
+     * Returns the number of files that are currently mapped.
+     */
+    public int getMappedFileCount() {
+        return mappedFiles.size();
+    }
+
+    /**
+     * Returns a read-only buffer with the contents of the given file, or {@link Optional#empty()} if the file
+     * is too small or too large to be mapped or mapping fails. The buffer can be used independently of other buffers
+     * returned for the same file.
+     */
+    Optional<ByteBuffer> getContent(FileInfo fileInfo) {
+        releaseIdleMappings();
+        if (fileInfo.size() < minFileSize || fileInfo.size() > MAX_MAPPED_FILE_SIZE) {
+            return Optional.empty();
+        }
+
+        // Remap the file if it changed since it was mapped
+        var mappedFile = mappedFiles.compute(fileInfo.path(), (path, mapping) ->
+                (mapping != null && mapping.fileInfo().equals(fileInfo)) ? mapping : map(fileInfo));
+        if (mappedFile == null) {
+            return Optional.empty();
+        }
+
+        mappedFile.markUsed();
+        return Optional.of(mappedFile.buffer().duplicate());
+    }
+
+    private MappedFile map(FileInfo fileInfo) {
+        logger.log(FINE, "Mapping file {0} in memory", fileInfo.path());
+        try (var channel = FileChannel.open(fileInfo.path(), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileInfo.size());
+            return new MappedFile(fileInfo, buffer);
+        } catch (IOException ex) {
+            logger.log(FINE, "Cannot map file in memory", ex);
+            return null;
+        }
+    }
+
+    private void releaseIdleMappings() {
+        var now = System.nanoTime();
+        var lastCheck = lastIdleCheckNanos.get();
+        // Check at most once per (half) idle timeout, and in a single thread at a time
+        if (now - lastCheck < idleTimeoutNanos / 2 || !lastIdleCheckNanos.compareAndSet(lastCheck, now)) {
+            return;
+        }
+        mappedFiles.values().removeIf(mappedFile -> now - mappedFile.lastUsedNanos() > idleTimeoutNanos);
+    }
+
+    private static final class MappedFile {
+
+        private final FileInfo fileInfo;
+        private final ByteBuffer buffer;
+        private volatile long lastUsedNanos;
+
+        private MappedFile(FileInfo fileInfo, ByteBuffer buffer) {
+            this.fileInfo = fileInfo;
+            this.buffer = buffer.asReadOnlyBuffer();
+            this.lastUsedNanos = System.nanoTime();
+        }
+
+        FileInfo fileInfo() {
+            return fileInfo;
+        }
+
+        ByteBuffer buffer() {
+            return buffer;
+        }
+
+        long lastUsedNanos() {
+            return lastUsedNanos;
+        }
+
+        void markUsed() {
+            lastUsedNanos = System.nanoTime();
+        }
+    }
+}
@@ -1,17 +1,32 @@
 package eu.kapalka.http.repository;
 
+import eu.kapalka.http.repository.FileCache.CachedFile;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 import static java.util.logging.Level.FINE;
 
 /**
  * Read-only repository of static files. For security reasons, we serve only files whose absolute normalized paths
  * start from {@link #baseRepositoryPath}. We follow symbolic links.
+ * <p>
+ * Optionally, file metadata and the contents of small files can be kept in a {@link FileCache}, which avoids
+ * most file system operations for frequently requested files, and large files can be served from shared memory
+ * mappings (see {@link MappedFileCache}).
+ * <p>
+ * Compressible files can be served in compressed form: from precompressed variants stored next to the files
+ * (see {@link ContentEncoding}), or compressed on the fly and kept in a {@link CompressedContentCache}.
  */
 public class StaticFileRepository {
 
@@ -19,10 +34,44 @@ public class StaticFileRepository {
 
     private static final String DEFAULT_INDEX_FILE = "index.html";
 
+    // Files modified more recently than this get a weak entity tag (see entityTag)
+    private static final long WEAK_ETAG_PERIOD_MS = 1_000;
+
     private final Path baseRepositoryPath;
+    private final FileCache fileCache;
+    private final MappedFileCache mappedFileCache;
+    private final CompressedContentCache compressedContentCache;
 
     public StaticFileRepository(Path baseRepositoryPath) {
+        this(baseRepositoryPath, null, null);
+    }
+
+    /**
+     * Creates a repository that uses the given cache (if not <code>null</code>).
+     */
+    public StaticFileRepository(Path baseRepositoryPath, FileCache fileCache) {
+        this(baseRepositoryPath, fileCache, null);
+    }
+
+    /**
+     * Creates a repository that uses the given file cache and memory-mapped file cache (each of them can be
+     * <code>null</code>).
+     */
+    public StaticFileRepository(Path baseRepositoryPath, FileCache fileCache, MappedFileCache mappedFileCache) {
+        this(baseRepositoryPath, fileCache, mappedFileCache, null);
+    }
+
+    /**
+     * Creates a repository that uses the given file cache, memory-mapped file cache and cache of files compressed
+     * on the fly (each of them can be <code>null</code>). Files are compressed on the fly only if the latter is
+     * not <code>null</code>.
+     */
+    public StaticFileRepository(Path baseRepositoryPath, FileCache fileCache, MappedFileCache mappedFileCache,
+                                CompressedContentCache compressedContentCache) {
         this.baseRepositoryPath = baseRepositoryPath.toAbsolutePath().normalize();
+        this.fileCache = fileCache;
+        this.mappedFileCache = mappedFileCache;
+        this.compressedContentCache = compressedContentCache;
     }
 
     /**
@@ -46,14 +95,165 @@ public class StaticFileRepository {
             return Optional.empty();
         }
 
+        return findFile(targetPath, false);
+    }
+
+    /**
+     * Finds the variant of the given file that is precompressed with the given coding, i.e., the file with
+     * the same name plus the coding suffix (e.g., "file.txt.gz"). A variant older than the file is ignored:
+     * it was most likely not regenerated when the file was modified. The returned file has the media type of
+     * the variant, not of the original file. Files that are not compressible have no variants.
+     * <p>
+     * Most files have no precompressed variants, so the absence of a variant is kept in the file cache: otherwise,
+     * looking for variants would cost a file system operation per request.
+     *
+     * @param fileInfo file returned by {@link #findFile(String)}
+     */
+    public Optional<FileInfo> findPrecompressedVariant(FileInfo fileInfo, ContentEncoding encoding) {
+        if (!ContentEncoding.isCompressible(fileInfo.mimeType())) {
+            return Optional.empty();
+        }
+        var variantPath = fileInfo.path().resolveSibling(fileInfo.path().getFileName() + encoding.getFileSuffix());
+        return findFile(variantPath, true)
+                .filter(variant -> variant.lastModifiedMillis() >= fileInfo.lastModifiedMillis());
+    }
+
+    /**
+     * Returns the contents of the given file compressed with gzip, if the repository compresses files on the fly
+     * and compression is worthwhile for this file (see {@link CompressedContentCache}).
+     *
+     * @param fileInfo file returned by {@link #findFile(String)}
+     */
+    public Optional<byte[]> getCompressedContent(FileInfo fileInfo) {
+        if (compressedContentCache == null || !ContentEncoding.isCompressible(fileInfo.mimeType())) {
+            return Optional.empty();
+        }
+        return compressedContentCache.get(fileInfo, this::compress);
+    }
+
+    /**
+     * Returns the contents of the given file if it is available in the cache.
+     *
+     * @param fileInfo file returned by {@link #findFile(String)}
+     */
+    public Optional<byte[]> getCachedContent(FileInfo fileInfo) {
+        if (fileCache == null) {
+            return Optional.empty();
+        }
+        return fileCache.peek(fileInfo.path())
+                .filter(cachedFile -> fileInfo.equals(cachedFile.fileInfo()))
+                .map(CachedFile::content);
+    }
+
+    /**
+     * Returns a buffer with the contents of the given file mapped in memory, if the repository uses memory mappings
+     * for files of this size.
+     *
+     * @param fileInfo file returned by {@link #findFile(String)}
+     */
+    public Optional<ByteBuffer> getMappedContent(FileInfo fileInfo) {
+        if (mappedFileCache == null) {
+            return Optional.empty();
+        }
+        return mappedFileCache.getContent(fileInfo);
+    }
+
+    /**
+     * @param cacheMissing whether to keep a negative entry in the file cache if the file does not exist (only for
+     *                     files that are looked up for existing files, so that requests for arbitrary paths cannot
+     *                     fill the cache)
+     */
+    private Optional<FileInfo> findFile(Path targetPath, boolean cacheMissing) {
+        if (fileCache != null) {
+            Function<Path, Optional<CachedFile>> loader = cacheMissing
+                    ? path -> Optional.of(loadFile(path).orElseGet(CachedFile::missing))
+                    : this::loadFile;
+            return fileCache.get(targetPath, cachedFile -> isUnmodified(targetPath, cachedFile), loader)
+                    .filter(CachedFile::exists)
+                    .map(CachedFile::fileInfo);
+        }
+        return readFileInfo(targetPath);
+    }
+
+    private Optional<FileInfo> readFileInfo(Path targetPath) {
+        try {
+            var fileAttrs = Files.readAttributes(targetPath, BasicFileAttributes.class);
+            return toFileInfo(targetPath, fileAttrs);
+        } catch (IOException ex) {
+            return Optional.empty();
+        }
+    }
+
+    private Optional<FileInfo> toFileInfo(Path targetPath, BasicFileAttributes fileAttrs) throws IOException {
+        if (fileAttrs.isRegularFile() && Files.isReadable(targetPath)) {
+            var lastModifiedTime = fileAttrs.lastModifiedTime();
+            return Optional.of(new FileInfo(targetPath, fileAttrs.size(), Files.probeContentType(targetPath),
+                    lastModifiedTime.toMillis(), entityTag(fileAttrs.size(), lastModifiedTime)));
+        }
+        return Optional.empty();
+    }
+
+    private Optional<CachedFile> loadFile(Path targetPath) {
         try {
             var fileAttrs = Files.readAttributes(targetPath, BasicFileAttributes.class);
-            if (fileAttrs.isRegularFile() && Files.isReadable(targetPath)) {
-                return Optional.of(new FileInfo(targetPath, fileAttrs.size(), Files.probeContentType(targetPath)));
+            var fileInfoOpt = toFileInfo(targetPath, fileAttrs);
+            if (fileInfoOpt.isEmpty()) {
+                return Optional.empty();
+            }
+
+            var fileInfo = fileInfoOpt.get();
+            var content = (fileInfo.size() <= fileCache.getMaxEntrySize()) ? Files.readAllBytes(targetPath) : null;
+            if (content != null && content.length != fileInfo.size()) {
+                content = null; // File modified while being read, don't cache inconsistent data
             }
+            return Optional.of(new CachedFile(fileInfo, content));
+        } catch (IOException ex) {
             return Optional.empty();
+        }
+    }
+
+    private Optional<byte[]> compress(FileInfo fileInfo) {
+        var compressed = new ByteArrayOutputStream((int) Math.min(fileInfo.size() / 2, Integer.MAX_VALUE));
+        try (var gzip = new GZIPOutputStream(compressed)) {
+            var cachedContent = getCachedContent(fileInfo);
+            long size;
+            if (cachedContent.isPresent()) {
+                gzip.write(cachedContent.get());
+                size = cachedContent.get().length;
+            } else {
+                try (var input = Files.newInputStream(fileInfo.path())) {
+                    size = input.transferTo(gzip);
+                }
+            }
+            if (size != fileInfo.size()) {
+                return Optional.empty(); // File modified while being read, don't cache inconsistent data
+            }
         } catch (IOException ex) {
             return Optional.empty();
         }
+        return Optional.of(compressed.toByteArray());
+    }
+
+    private boolean isUnmodified(Path path, CachedFile cachedFile) {
+        try {
+            var fileAttrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return cachedFile.exists()
+                    && fileAttrs.size() == cachedFile.fileInfo().size()
+                    && fileAttrs.lastModifiedTime().toMillis() == cachedFile.fileInfo().lastModifiedMillis();
+        } catch (IOException ex) {
+            // A negative entry is still valid if the file is still missing
+            return !cachedFile.exists();
+        }
+    }
+
+    /**
+     * Returns an entity tag derived from the size and the modification time of a file, like most web servers do.
+     * The tag is weak if the file was modified very recently: the file might be modified again without changing
+     * its modification time (which has a limited resolution), so the tag does not guarantee identical contents.
+     */
+    static String entityTag(long size, FileTime lastModifiedTime) {
+        var tag = "\"%x-%x\"".formatted(size, lastModifiedTime.to(TimeUnit.MICROSECONDS));
+        var isRecent = System.currentTimeMillis() - lastModifiedTime.toMillis() < WEAK_ETAG_PERIOD_MS;
+        return isRecent ? "W/" + tag : tag;
     }
 }
@@ -0,0 +1,84 @@
+package eu.kapalka.http.request;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Range of bytes of a resource, from <code>first</code> to <code>last</code> (both inclusive), as requested
+ * by the <code>Range</code> header.
+ */
+public record ByteRange(long first, long last) {
+
+    // Limits the work (and the response size) of requests with many (possibly overlapping) ranges
+    static final int MAX_RANGES = 16;
+
+    private static final String BYTES_UNIT_PREFIX = "bytes=";
+
+    public long length() {
+        return last - first + 1;
+    }
+
+    /**
+     * Parses the value of a <code>Range</code> header (e.g., <code>bytes=0-499, 1000-, -500</code>) for
+     * a resource of the given size. Unsatisfiable ranges (i.e., starting after the end of the resource) are
+     * skipped, and the last position of the other ranges is limited to the end of the resource.
+     *
+     * @return {@link Optional#empty()} if the header must be ignored (the header is invalid, uses a unit other
+     *         than bytes, or has too many ranges), or the list of satisfiable ranges in the order of the header
+     *         (empty if none of the ranges is satisfiable)
+     */
+    public static Optional<List<ByteRange>> parse(String rangeHeader, long size) {
+        if (!rangeHeader.regionMatches(true, 0, BYTES_UNIT_PREFIX, 0, BYTES_UNIT_PREFIX.length())) {
+            return Optional.empty();
+        }
+
+        var specs = rangeHeader.substring(BYTES_UNIT_PREFIX.length()).split(",");
+        var ranges = new ArrayList<ByteRange>();
+        var numSpecs = 0;
+        for (var spec : specs) {
+            spec = spec.trim();
+            if (spec.isEmpty()) {
+                continue; // Empty list elements are allowed
+            }
+            if (++numSpecs > MAX_RANGES) {
+                return Optional.empty();
+            }
+
+            var separator = spec.indexOf('-');
+            if (separator == -1) {
+                return Optional.empty();
+            }
+            try {
+                if (separator == 0) {
+                    // Suffix range: the last N bytes
+                    var suffixLength = parsePosition(spec.substring(1));
+                    if (suffixLength > 0 && size > 0) {
+                        ranges.add(new ByteRange(Math.max(0, size - suffixLength), size - 1));
+                    }
+                    continue;
+                }
+                var first = parsePosition(spec.substring(0, separator));
+                var lastSpec = spec.substring(separator + 1);
+                var last = lastSpec.isEmpty() ? Long.MAX_VALUE : parsePosition(lastSpec);
+                if (last < first) {
+                    return Optional.empty();
+                }
+                if (first < size) {
+                    ranges.add(new ByteRange(first, Math.min(last, size - 1)));
+                }
+            } catch (NumberFormatException ex) {
+                return Optional.empty();
+            }
+        }
+        return numSpecs == 0 ? Optional.empty() : Optional.of(ranges);
+    }
+
+    private static long parsePosition(String value) {
+        // Long.parseLong accepts a sign, which is not allowed here
+        if (value.isEmpty() || !Character.isDigit(value.charAt(0))) {
+            throw new NumberFormatException(value);
+        }
+        return Long.parseLong(value);
+    }
+}
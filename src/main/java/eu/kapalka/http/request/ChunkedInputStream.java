@@ -0,0 +1,105 @@
+package eu.kapalka.http.request;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that decodes a request body sent with the chunked transfer coding (RFC 9112, section 7.1):
+ * a sequence of chunks, each of them preceded by its size in hexadecimal, terminated by a chunk of size zero and
+ * an optional trailer section. Chunk extensions and trailer fields are ignored.
+ * <p>
+ * Malformed chunks are reported as {@link IOException}s: the request boundaries are then unknown, so
+ * the connection cannot be used anymore.
+ */
+class ChunkedInputStream extends InputStream {
+
+    private final LineReader lineReader;
+    private long remainingChunkBytes;
+    private boolean firstChunk = true;
+    private boolean eof;
+
+    ChunkedInputStream(LineReader lineReader) {
+        this.lineReader = lineReader;
+    }
+
+    @Override
+    public int read() throws IOException {
+        var singleByte = new byte[1];
+        return (read(singleByte, 0, 1) == -1) ? -1 : (singleByte[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (remainingChunkBytes == 0 && !nextChunk()) {
+            return -1;
+        }
+        var size = lineReader.read(bytes, offset, (int) Math.min(length, remainingChunkBytes));
+        if (size == -1) {
+            throw new EOFException("Connection closed in the middle of a chunk");
+        }
+        remainingChunkBytes -= size;
+        return size;
+    }
+
+    @Override
+    public long skip(long numBytes) throws IOException {
+        long skipped = 0;
+        while (skipped < numBytes && (remainingChunkBytes > 0 || nextChunk())) {
+            var size = Math.min(numBytes - skipped, remainingChunkBytes);
+            lineReader.skipBytes(size);
+            remainingChunkBytes -= size;
+            skipped += size;
+        }
+        return skipped;
+    }
+
+    /**
+     * Reads the size line of the next chunk. Returns <code>false</code> at the end of the body.
+     */
+    private boolean nextChunk() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (!firstChunk) {
+            nextLine();
+            if (!lineReader.isLineEmpty()) {
+                throw new IOException("Chunk data not followed by CRLF");
+            }
+        }
+        firstChunk = false;
+
+        nextLine();
+        if (!lineReader.nextToken((byte) ';')) { // Chunk extensions (after ';') are ignored
+            throw new IOException("Missing chunk size");
+        }
+        long chunkSize;
+        try {
+            chunkSize = lineReader.tokenToHexLong();
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid chunk size: %s".formatted(lineReader.tokenToString()));
+        }
+
+        if (chunkSize == 0) {
+            do {
+                nextLine(); // Trailer section, until an empty line
+            } while (!lineReader.isLineEmpty());
+            eof = true;
+            return false;
+        }
+        remainingChunkBytes = chunkSize;
+        return true;
+    }
+
+    private void nextLine() throws IOException {
+        if (!lineReader.nextLine()) {
+            throw new EOFException("Connection closed in the middle of a chunked body");
+        }
+        if (lineReader.isLineTruncated()) {
+            throw new IOException("Chunk size or trailer line too long");
+        }
+    }
+}
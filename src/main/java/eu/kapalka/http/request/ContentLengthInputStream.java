@@ -0,0 +1,50 @@
+package eu.kapalka.http.request;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream of a request body whose length is given by the <code>Content-Length</code> header: the stream ends
+ * after that many bytes, where the next request starts.
+ */
+class ContentLengthInputStream extends InputStream {
+
+    private final LineReader lineReader;
+    private long remainingBytes;
+
+    ContentLengthInputStream(LineReader lineReader, long length) {
+        this.lineReader = lineReader;
+        this.remainingBytes = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        var singleByte = new byte[1];
+        return (read(singleByte, 0, 1) == -1) ? -1 : (singleByte[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (remainingBytes == 0) {
+            return -1;
+        }
+        var size = lineReader.read(bytes, offset, (int) Math.min(length, remainingBytes));
+        if (size == -1) {
+            throw new EOFException("Connection closed before the end of the request body");
+        }
+        remainingBytes -= size;
+        return size;
+    }
+
+    @Override
+    public long skip(long numBytes) throws IOException {
+        var size = Math.min(Math.max(numBytes, 0), remainingBytes);
+        lineReader.skipBytes(size);
+        remainingBytes -= size;
+        return size;
+    }
+}
@@ -1,26 +1,62 @@
 package eu.kapalka.http.request;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * Reader and tokenizer of ASCII text with CRLF-terminated lines. Unlike {@link BufferedReader#readLine()},
  * it enforces a maximum line length, which is important for untrusted input data. Non-ASCII characters
  * are converted to "?".
+ * <p>
+ * The reader is designed to be reused for all requests sent over a connection: lines are read into an internal
+ * byte buffer and tokens are delimited by indexes within this buffer. Tokens can be compared with expected values
+ * without creating any object: strings are only created when requested (see {@link #tokenToString()}).
  */
 public class LineReader {
 
-    private static final int MAX_LINE_LENGHT = 8000;
+    public static final int DEFAULT_MAX_LINE_LENGTH = 8000;
+
+    private static final int MIN_BUFFER_SIZE = 8192;
 
     private final InputStream inputStream;
-    private StringBuilder buffer;
-    private int currentPos;
+    private final int maxLineLength;
+    // Must be able to hold a line of maximum length together with its line terminator
+    private final byte[] buffer;
+    // Unread data in the buffer is between readPos (inclusive) and limit (exclusive)
+    private int readPos;
+    private int limit;
+    // Bytes read from the input stream (including buffered data)
+    private long bytesRead;
+
+    // Current line is between lineStart (inclusive) and lineEnd (exclusive), excluding the line terminator
+    private int lineStart;
+    private int lineEnd;
     private boolean lineTruncated;
 
+    // Current token is between tokenStart (inclusive) and tokenEnd (exclusive), currentPos is where the next
+    // token starts
+    private int tokenStart;
+    private int tokenEnd;
+    private int currentPos;
+
     public LineReader(InputStream inputStream) {
-        this.inputStream = new BufferedInputStream(inputStream);
+        this(inputStream, DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * Creates a reader that returns lines longer than <code>maxLineLength</code> bytes in several parts (see
+     * {@link #isLineTruncated()}).
+     */
+    public LineReader(InputStream inputStream, int maxLineLength) {
+        if (maxLineLength <= 0) {
+            throw new IllegalArgumentException("Max line length must be positive");
+        }
+        this.inputStream = inputStream;
+        this.maxLineLength = maxLineLength;
+        this.buffer = new byte[Math.max(MIN_BUFFER_SIZE, maxLineLength + 2)];
     }
 
     /**
@@ -30,44 +66,100 @@ public class LineReader {
      * @throws IOException when reading from the input stream fails
      */
     public boolean nextLine() throws IOException {
-        buffer = new StringBuilder();
-        currentPos = 0;
         lineTruncated = false;
-        while (buffer.length() < MAX_LINE_LENGHT) {
-            var b = inputStream.read();
-            if (b == -1) {
-                return false;
+        var scanPos = readPos;
+        while (true) {
+            for (; scanPos < limit && scanPos - readPos < maxLineLength; scanPos++) {
+                if (buffer[scanPos] == '\n') {
+                    setLine(readPos, withoutCarriageReturn(scanPos), scanPos + 1);
+                    return true;
+                }
             }
-            // ASCII encoding (required for HTTP header), so byte --> char translation is trivial
-            char ch = (b <= 127) ? (char) b : '?';
-            if (ch == '\n') {
+            if (scanPos - readPos >= maxLineLength) {
+                // The rest of the line will be returned by the next invocation
+                setLine(readPos, scanPos, scanPos);
+                lineTruncated = true;
                 return true;
             }
-            if (ch != '\r') {
-                buffer.append(ch);
+
+            var scanOffset = scanPos - readPos;
+            if (!fillBuffer()) {
+                setLine(readPos, withoutCarriageReturn(limit), limit);
+                return false;
             }
+            scanPos = readPos + scanOffset;
         }
-        lineTruncated = true;
-        return true;
     }
 
     /**
      * Skips the given number of bytes (without any conversion / processing).
      *
      * @param numBytes number of bytes to skip
-     * @throws IOException when
+     * @throws IOException when reading from the input stream fails
      */
     public void skipBytes(long numBytes) throws IOException {
+        var bufferedBytes = Math.min(numBytes, limit - readPos);
+        readPos += (int) bufferedBytes;
         // EOFException thrown below means that connection with client was interrupted, so we propagate it
         // the same way as any other I/O error.
-        inputStream.skipNBytes(numBytes);
+        inputStream.skipNBytes(numBytes - bufferedBytes);
+        bytesRead += numBytes - bufferedBytes;
+    }
+
+    /**
+     * Blocks until input data is available (in the internal buffer or read from the input stream), or until EOF.
+     *
+     * @return <code>false</code> on EOF
+     * @throws IOException when reading from the input stream fails
+     */
+    public boolean awaitInput() throws IOException {
+        return readPos < limit || fillBuffer();
+    }
+
+    /**
+     * Returns the number of bytes read from the input stream so far, including bytes that are buffered but not
+     * consumed yet.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Reads up to <code>length</code> bytes (without any conversion / processing), from the internal buffer if it
+     * contains unread data, or directly from the input stream otherwise.
+     *
+     * @return the number of bytes read, or -1 on EOF
+     * @throws IOException when reading from the input stream fails
+     */
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (readPos == limit) {
+            var size = inputStream.read(bytes, offset, length);
+            if (size > 0) {
+                bytesRead += size;
+            }
+            return size;
+        }
+        var size = Math.min(length, limit - readPos);
+        System.arraycopy(buffer, readPos, bytes, offset, size);
+        readPos += size;
+        return size;
+    }
+
+    /**
+     * Returns <code>true</code> if more input data can be read without blocking, either from the internal buffer
+     * or from the underlying input stream.
+     *
+     * @throws IOException when querying the input stream fails
+     */
+    public boolean isInputAvailable() throws IOException {
+        return readPos < limit || inputStream.available() > 0;
     }
 
     /**
      * Returns <code>true</code> if the last line read by {@link #nextLine()} is empty.
      */
     public boolean isLineEmpty() {
-        return buffer.isEmpty();
+        return lineStart == lineEnd;
     }
 
     /**
@@ -85,16 +177,201 @@ public class LineReader {
      * Returns <code>null</code> if there are no more tokens to be read.
      */
     public String readToken() {
-        if (currentPos >= buffer.length()) {
-            return null;
+        return nextToken() ? tokenToString() : null;
+    }
+
+    /**
+     * Moves to the next token of the last line read by {@link #nextLine()}, until a space character or EOL.
+     * Returns <code>false</code> if there are no more tokens to be read.
+     */
+    public boolean nextToken() {
+        return nextToken((byte) ' ');
+    }
+
+    /**
+     * Moves to the next token of the last line read by {@link #nextLine()}, until the given separator or EOL.
+     * Returns <code>false</code> if there are no more tokens to be read.
+     */
+    public boolean nextToken(byte separator) {
+        if (currentPos >= lineEnd) {
+            return false;
         }
 
-        var prevPos = currentPos;
-        while (currentPos < buffer.length() && buffer.charAt(currentPos) != ' ') {
+        tokenStart = currentPos;
+        while (currentPos < lineEnd && buffer[currentPos] != separator) {
             currentPos++;
         }
-        var token = buffer.substring(prevPos, currentPos);
+        tokenEnd = currentPos;
         currentPos++; // skip over the separator
-        return token;
+        return true;
+    }
+
+    /**
+     * Moves to the token made of the rest of the last line read by {@link #nextLine()}, without leading and
+     * trailing spaces or tabs. Returns <code>false</code> if the token would be empty.
+     */
+    public boolean nextRemainderToken() {
+        var start = currentPos;
+        var end = lineEnd;
+        while (start < end && isWhitespace(buffer[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(buffer[end - 1])) {
+            end--;
+        }
+        currentPos = lineEnd;
+        if (start == end) {
+            return false;
+        }
+        tokenStart = start;
+        tokenEnd = end;
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> if the current token ends at the end of the last line read by {@link #nextLine()},
+     * i.e., if the token was not followed by a separator.
+     */
+    public boolean isTokenAtEndOfLine() {
+        return tokenEnd == lineEnd;
+    }
+
+    /**
+     * Returns the length (in bytes) of the current token.
+     */
+    public int tokenLength() {
+        return tokenEnd - tokenStart;
+    }
+
+    /**
+     * Returns the byte at the given index of the current token.
+     */
+    public byte tokenByteAt(int index) {
+        return buffer[tokenStart + index];
+    }
+
+    /**
+     * Returns <code>true</code> if the current token is equal to the given ASCII bytes.
+     */
+    public boolean tokenEquals(byte[] expected) {
+        return tokenLength() == expected.length
+                && Arrays.equals(buffer, tokenStart, tokenEnd, expected, 0, expected.length);
+    }
+
+    /**
+     * Returns <code>true</code> if the current token is equal to the given lower-case ASCII bytes, ignoring
+     * the case of the token.
+     */
+    public boolean tokenEqualsIgnoreCase(byte[] expectedLowerCase) {
+        if (tokenLength() != expectedLowerCase.length) {
+            return false;
+        }
+        for (int i = 0; i < expectedLowerCase.length; i++) {
+            var b = buffer[tokenStart + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != expectedLowerCase[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the current token as a non-negative decimal number.
+     *
+     * @throws NumberFormatException if the token is not a valid non-negative number
+     */
+    public long tokenToLong() {
+        if (tokenLength() == 0 || tokenLength() > 18) { // Longer numbers might overflow
+            throw new NumberFormatException("Invalid number");
+        }
+        long value = 0;
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            var digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parses the current token as a non-negative hexadecimal number.
+     *
+     * @throws NumberFormatException if the token is not a valid non-negative number
+     */
+    public long tokenToHexLong() {
+        if (tokenLength() == 0 || tokenLength() > 15) { // Longer numbers might overflow
+            throw new NumberFormatException("Invalid number");
+        }
+        long value = 0;
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            var digit = Character.digit(buffer[i], 16);
+            if (digit == -1) {
+                throw new NumberFormatException("Invalid number");
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the current token as a string.
+     */
+    public String tokenToString() {
+        var isAscii = true;
+        for (int i = tokenStart; i < tokenEnd && isAscii; i++) {
+            isAscii = buffer[i] >= 0;
+        }
+        if (isAscii) {
+            return new String(buffer, tokenStart, tokenLength(), StandardCharsets.ISO_8859_1);
+        }
+
+        // ASCII encoding (required for HTTP header), so byte --> char translation is trivial
+        var chars = new char[tokenLength()];
+        for (int i = 0; i < chars.length; i++) {
+            var b = buffer[tokenStart + i];
+            chars[i] = (b >= 0) ? (char) b : '?';
+        }
+        return new String(chars);
+    }
+
+    private int withoutCarriageReturn(int lineEnd) {
+        return (lineEnd > readPos && buffer[lineEnd - 1] == '\r') ? lineEnd - 1 : lineEnd;
+    }
+
+    private void setLine(int start, int end, int nextReadPos) {
+        lineStart = start;
+        lineEnd = end;
+        currentPos = start;
+        tokenStart = start;
+        tokenEnd = start;
+        readPos = nextReadPos;
+    }
+
+    /**
+     * Reads more data from the input stream, moving unread data to the beginning of the buffer if needed.
+     * Returns <code>false</code> on EOF.
+     */
+    private boolean fillBuffer() throws IOException {
+        if (readPos > 0) {
+            System.arraycopy(buffer, readPos, buffer, 0, limit - readPos);
+            limit -= readPos;
+            readPos = 0;
+        }
+        var size = inputStream.read(buffer, limit, buffer.length - limit);
+        if (size == -1) {
+            return false;
+        }
+        limit += size;
+        bytesRead += size;
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
     }
 }
@@ -0,0 +1,98 @@
+package eu.kapalka.http.request;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Body of an HTTP request. The body is not read by the request parser: it is read lazily from the connection
+ * through {@link #getInputStream()}, so that handlers can process large bodies without holding them in memory.
+ * The stream ends at the end of the body, and the part of the body that is not read by the handler is discarded
+ * before the next request on the connection is parsed.
+ * <p>
+ * The stream must be read by the thread that handles the request, before the handler returns.
+ */
+public final class RequestBody {
+
+    /**
+     * Length of bodies sent with the chunked transfer coding, which is not known until the whole body is read.
+     */
+    public static final long UNKNOWN_LENGTH = -1;
+
+    static final RequestBody EMPTY = new RequestBody(InputStream.nullInputStream(), 0);
+
+    private final InputStream inputStream;
+    private final long length;
+
+    private RequestBody(InputStream inputStream, long length) {
+        this.inputStream = inputStream;
+        this.length = length;
+    }
+
+    /**
+     * Creates a body with the given contents (e.g., for requests that are not parsed from a connection).
+     */
+    public static RequestBody of(byte[] contents) {
+        return new RequestBody(new ByteArrayInputStream(contents), contents.length);
+    }
+
+    /**
+     * Creates a body of <code>length</code> bytes (or {@link #UNKNOWN_LENGTH}) read from the given stream.
+     */
+    public static RequestBody of(InputStream inputStream, long length) {
+        return new RequestBody(inputStream, length);
+    }
+
+    /**
+     * Returns the length of the body in bytes, or {@link #UNKNOWN_LENGTH} if the body is chunked.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns <code>true</code> if the request has no body (or a body of length 0).
+     */
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Returns the stream of the body contents. The same stream is returned on each call: data read from it is not
+     * available anymore. Closing the stream has no effect. Reading the stream throws an {@link IOException} on
+     * network errors or if the body is malformed: the handler should rethrow it (as an
+     * {@link java.io.UncheckedIOException}), so that the connection is closed.
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * Reads the (rest of the) body into memory. Returns an empty result, without reading the whole body, if
+     * the body is longer than <code>maxLength</code> bytes.
+     *
+     * @throws IOException on network errors or if the body is malformed
+     */
+    public Optional<byte[]> readFully(int maxLength) throws IOException {
+        if (length > maxLength) {
+            return Optional.empty();
+        }
+        // One more byte than allowed tells whether a body of unknown length is too long
+        var contents = inputStream.readNBytes((int) Math.min((long) maxLength + 1, Integer.MAX_VALUE));
+        if (contents.length > maxLength) {
+            return Optional.empty();
+        }
+        return Optional.of(contents);
+    }
+
+    /**
+     * Skips the part of the body that has not been read.
+     */
+    void discardUnread() throws IOException {
+        // Skipping may stop early for some streams: only the end of stream is conclusive
+        while (inputStream.skip(Long.MAX_VALUE) > 0 || inputStream.read() != -1) {
+            // Continue until the end of the body
+        }
+    }
+}
@@ -6,71 +6,156 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.regex.Pattern;
+import java.nio.charset.StandardCharsets;
 
 /**
- * HTTP 1.0/1.1 request parser.
+ * HTTP 1.0/1.1 request parser. The parser is meant to be reused for all requests sent over a connection.
+ * The request line and headers are matched byte by byte against the expected values, so that parsing does not
+ * create any objects except for the parsed request itself (and its URI).
  */
 public class RequestParser {
 
-    private static final Pattern PROTOCOL_REGEX = Pattern.compile("HTTP/1.(\\d)");
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+    private static final byte[][] METHOD_NAMES = new byte[METHODS.length][];
+
+    static {
+        for (int i = 0; i < METHODS.length; i++) {
+            METHOD_NAMES[i] = ascii(METHODS[i].name());
+        }
+    }
+
+    private static final byte[] PROTOCOL_PREFIX = ascii("HTTP/1.");
+
+    // Header names (in lower case) that require specific treatment
+    private static final byte[] CONNECTION_HEADER = ascii("connection");
+    private static final byte[] CONTENT_LENGTH_HEADER = ascii("content-length");
+    private static final byte[] TRANSFER_ENCODING_HEADER = ascii("transfer-encoding");
+    private static final byte[] IF_NONE_MATCH_HEADER = ascii("if-none-match");
+    private static final byte[] IF_MODIFIED_SINCE_HEADER = ascii("if-modified-since");
+    private static final byte[] RANGE_HEADER = ascii("range");
+    private static final byte[] IF_RANGE_HEADER = ascii("if-range");
+    private static final byte[] ACCEPT_ENCODING_HEADER = ascii("accept-encoding");
+
+    private static final byte[] CONNECTION_CLOSE = ascii("close");
+    private static final byte[] CHUNKED = ascii("chunked");
 
     // Not specified in any standard but seems in line with what web browsers enforce
     private static final int MAX_URI_LENGTH = 2048;
 
     private final LineReader lineReader;
     private ValidRequest.Builder requestBuilder;
-    private Long bodyLength;
+    private long bodyLength;
+    private boolean hasContentLength;
+    private boolean chunkedBody;
+    // Body of the last parsed request, read lazily by the request handler
+    private RequestBody body = RequestBody.EMPTY;
 
     public RequestParser(InputStream inputStream) {
-        this.lineReader = new LineReader(inputStream);
+        this(inputStream, LineReader.DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * Creates a parser that accepts request and header lines of at most <code>maxLineLength</code> bytes (longer
+     * lines make the request invalid).
+     */
+    public RequestParser(InputStream inputStream, int maxLineLength) {
+        this.lineReader = new LineReader(inputStream, maxLineLength);
     }
 
+    /**
+     * Parses the next request. The body of the previous request, if not read entirely by the request handler,
+     * is discarded first. The body of the parsed request is not read by this method (see {@link RequestBody}).
+     *
+     * @throws IOException on network errors or if the previous request has a malformed body
+     */
     public Request parse() throws IOException {
+        discardUnreadBody();
         try {
             requestBuilder = ValidRequest.builder();
+            bodyLength = 0;
+            hasContentLength = false;
+            chunkedBody = false;
             parseStartLine();
             parseHeaders();
-            skipBody(); // We don't store body data (but adding this feature would be easy)
-            return requestBuilder.build();
+            validateBodyFraming();
+            body = createBody();
+            return requestBuilder.body(body).build();
         } catch (InvalidRequestException ex) {
             return new InvalidRequest(ex.statusCode, ex.getMessage());
         }
     }
 
+    /**
+     * Discards the part of the body of the last parsed request that has not been read by the request handler,
+     * so that the connection is positioned at the start of the next request. This method may block until the client
+     * sends the rest of the body.
+     *
+     * @throws IOException on network errors or if the body is malformed
+     */
+    public void discardUnreadBody() throws IOException {
+        body.discardUnread();
+        body = RequestBody.EMPTY;
+    }
+
+    /**
+     * Blocks until the first bytes of the next request are received (or the client closes the connection), so that
+     * the time spent in {@link #parse()} can be measured without the time the connection is idle. The body of the
+     * last parsed request must be discarded first (see {@link #discardUnreadBody()}).
+     *
+     * @throws IOException on network errors
+     */
+    public void awaitRequest() throws IOException {
+        lineReader.awaitInput();
+    }
+
+    /**
+     * Returns the number of bytes received so far over the connection.
+     */
+    public long getBytesRead() {
+        return lineReader.getBytesRead();
+    }
+
+    /**
+     * Returns <code>true</code> if (part of) the next request can be read without blocking, e.g., because
+     * the client sent multiple requests at once. The body of the last parsed request must be discarded first
+     * (see {@link #discardUnreadBody()}), otherwise the unread part of the body counts as available input.
+     *
+     * @throws IOException when querying the input stream fails
+     */
+    public boolean isInputAvailable() throws IOException {
+        return lineReader.isInputAvailable();
+    }
+
     private void parseStartLine() throws IOException {
         lineReader.nextLine();
 
-        var methodName = lineReader.readToken();
-        if (methodName == null) {
+        if (!lineReader.nextToken()) {
             throw invalidRequest("Missing HTTP method");
         }
-        var method = HttpMethod.of(methodName);
-        if (method == null) {
-            throw invalidRequest("Invalid method: %s".formatted(methodName));
-        }
-        requestBuilder.method(method);
+        requestBuilder.method(parseMethod());
 
-        var path = lineReader.readToken();
-        if (path == null) {
+        if (!lineReader.nextToken()) {
             throw invalidRequest("Missing path (URI)");
         }
-        if (path.length() > MAX_URI_LENGTH) {
+        if (lineReader.tokenLength() > MAX_URI_LENGTH) {
             throw invalidRequest(HttpStatus.URI_TOO_LONG,
                     "URI length exceeds the allowed maximum of %d bytes".formatted(MAX_URI_LENGTH));
         }
-        requestBuilder.uri(parsePathURI(path));
+        requestBuilder.uri(parsePathURI(lineReader.tokenToString()));
 
-        var protocol = lineReader.readToken();
-        if (protocol == null) {
+        if (!lineReader.nextToken()) {
             throw invalidRequest("Missing protocol");
         }
-        var protocolMatcher = PROTOCOL_REGEX.matcher(protocol);
-        if (!protocolMatcher.matches()) {
-            throw invalidRequest("Unsupported protocol: %s".formatted(protocol));
+        requestBuilder.httpMinorVersion(parseProtocolMinorVersion());
+    }
+
+    private HttpMethod parseMethod() {
+        for (int i = 0; i < METHODS.length; i++) {
+            if (lineReader.tokenEquals(METHOD_NAMES[i])) {
+                return METHODS[i];
+            }
         }
-        // Regex matched a single digit, so we cannot get a NumberFormatException here
-        requestBuilder.httpMinorVersion(Byte.parseByte(protocolMatcher.group(1)));
+        throw invalidRequest("Invalid method: %s".formatted(lineReader.tokenToString()));
     }
 
     private URI parsePathURI(String pathURI) {
@@ -81,6 +166,22 @@ public class RequestParser {
         }
     }
 
+    private byte parseProtocolMinorVersion() {
+        // Expected format: "HTTP/1.<digit>"
+        var length = lineReader.tokenLength();
+        var isValid = length == PROTOCOL_PREFIX.length + 1;
+        for (int i = 0; i < PROTOCOL_PREFIX.length && isValid; i++) {
+            isValid = lineReader.tokenByteAt(i) == PROTOCOL_PREFIX[i];
+        }
+        if (isValid) {
+            var minorVersion = lineReader.tokenByteAt(length - 1) - '0';
+            if (minorVersion >= 0 && minorVersion <= 9) {
+                return (byte) minorVersion;
+            }
+        }
+        throw invalidRequest("Unsupported protocol: %s".formatted(lineReader.tokenToString()));
+    }
+
     private void parseHeaders() throws IOException {
         while(true) {
             lineReader.nextLine();
@@ -88,49 +189,97 @@ public class RequestParser {
                 return;
             }
 
-            var headerKey = lineReader.readToken();
-            var headerValue = lineReader.readToken();
+            lineReader.nextToken((byte) ':');
             if (lineReader.isLineTruncated()) {
-                throw invalidRequest(HttpStatus.REQUEST_HEADER_TOO_LARGE, "HTTP header %s too large".formatted(headerKey));
+                throw invalidRequest(HttpStatus.REQUEST_HEADER_TOO_LARGE,
+                        "HTTP header %s too large".formatted(lineReader.tokenToString()));
             }
-            if (!headerKey.endsWith(":") || headerValue == null) {
-                throw invalidRequest("Invalid HTTP header key: %s".formatted(headerKey));
+            if (lineReader.isTokenAtEndOfLine()) {
+                throw invalidRequest("Invalid HTTP header key: %s".formatted(lineReader.tokenToString()));
             }
 
-            var normalizedHeaderKey = headerKey.substring(0, headerKey.length() - 1).toLowerCase();
-            switch (normalizedHeaderKey) {
-                case "connection" -> parseConnectionHeader(headerValue);
-                case "content-length" -> parseContentLength(headerValue);
+            if (lineReader.tokenEqualsIgnoreCase(CONNECTION_HEADER)) {
+                parseHeaderValue();
+                parseConnectionHeader();
+            } else if (lineReader.tokenEqualsIgnoreCase(CONTENT_LENGTH_HEADER)) {
+                parseHeaderValue();
+                parseContentLength();
+            } else if (lineReader.tokenEqualsIgnoreCase(TRANSFER_ENCODING_HEADER)) {
+                parseHeaderValue();
+                parseTransferEncoding();
+            } else if (lineReader.tokenEqualsIgnoreCase(IF_NONE_MATCH_HEADER)) {
+                parseHeaderValue();
+                requestBuilder.ifNoneMatch(lineReader.tokenToString());
+            } else if (lineReader.tokenEqualsIgnoreCase(IF_MODIFIED_SINCE_HEADER)) {
+                parseHeaderValue();
+                requestBuilder.ifModifiedSince(lineReader.tokenToString());
+            } else if (lineReader.tokenEqualsIgnoreCase(RANGE_HEADER)) {
+                parseHeaderValue();
+                requestBuilder.range(lineReader.tokenToString());
+            } else if (lineReader.tokenEqualsIgnoreCase(IF_RANGE_HEADER)) {
+                parseHeaderValue();
+                requestBuilder.ifRange(lineReader.tokenToString());
+            } else if (lineReader.tokenEqualsIgnoreCase(ACCEPT_ENCODING_HEADER)) {
+                parseHeaderValue();
+                requestBuilder.acceptEncoding(lineReader.tokenToString());
+            } else {
                 // We can add here more headers that require specific treatment...
+                parseHeaderValue();
             }
         }
     }
 
-    private void parseConnectionHeader(String connection) {
+    private void parseHeaderValue() {
+        if (!lineReader.nextRemainderToken()) {
+            throw invalidRequest("Missing HTTP header value");
+        }
+    }
+
+    private void parseConnectionHeader() {
         // According to Mozilla MDN Web Docs: "Connection" header can have value "close" or any comma-separated list
         // of HTTP headers (usually "keep-alive" only). The latter case means that the client would like to keep
         // the connection open.
-        if (connection.equals("close")) {
+        if (lineReader.tokenEqualsIgnoreCase(CONNECTION_CLOSE)) {
             requestBuilder.keepAlive(false);
         } else {
             requestBuilder.keepAlive(true);
         }
     }
 
-    private void parseContentLength(String headerValue) {
+    private void parseContentLength() {
         try {
-            bodyLength = Long.parseLong(headerValue.trim());
+            bodyLength = lineReader.tokenToLong();
+            hasContentLength = true;
         } catch (NumberFormatException ex) {
-            throw invalidRequest("Invalid value of Content-Length header: %s".formatted(headerValue));
+            throw invalidRequest("Invalid value of Content-Length header: %s".formatted(lineReader.tokenToString()));
         }
     }
 
-    private void skipBody() throws IOException {
-        if (bodyLength == null) {
-            return;
+    private void parseTransferEncoding() {
+        // Other transfer codings (e.g., gzip) are rarely used in requests: we don't support them
+        if (!lineReader.tokenEqualsIgnoreCase(CHUNKED)) {
+            throw invalidRequest(HttpStatus.NOT_IMPLEMENTED,
+                    "Unsupported transfer encoding: %s".formatted(lineReader.tokenToString()));
         }
+        chunkedBody = true;
+    }
 
-        lineReader.skipBytes(bodyLength);
+    private void validateBodyFraming() {
+        // A request with both headers is a typical request smuggling attempt: the sender and the receiver of such
+        // a request may disagree on where the body ends (RFC 9112, section 6.1)
+        if (chunkedBody && hasContentLength) {
+            throw invalidRequest("Both Transfer-Encoding and Content-Length headers present");
+        }
+    }
+
+    private RequestBody createBody() {
+        if (chunkedBody) {
+            return RequestBody.of(new ChunkedInputStream(lineReader), RequestBody.UNKNOWN_LENGTH);
+        }
+        if (bodyLength == 0) {
+            return RequestBody.EMPTY;
+        }
+        return RequestBody.of(new ContentLengthInputStream(lineReader, bodyLength), bodyLength);
     }
 
     private InvalidRequestException invalidRequest(String message) {
@@ -141,6 +290,10 @@ public class RequestParser {
         return new InvalidRequestException(statusCode, message);
     }
 
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
     private static class InvalidRequestException extends RuntimeException {
 
         private final HttpStatus statusCode;
@@ -1,6 +1,7 @@
 package eu.kapalka.http.request;
 
 import java.net.URI;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -12,6 +13,13 @@ public final class ValidRequest implements Request {
     private final URI uri;
     private final byte httpMinorVersion;
     private final Boolean keepAliveHeader;
+    private final String ifNoneMatch;
+    private final String ifModifiedSince;
+    private final String range;
+    private final String ifRange;
+    private final String acceptEncoding;
+    private final Map<String, String> pathParameters;
+    private final RequestBody body;
 
     public static Builder builder() {
         return new Builder();
@@ -33,25 +41,102 @@ public final class ValidRequest implements Request {
         return keepAliveHeader;
     }
 
+    /**
+     * Returns the value of the <code>If-None-Match</code> header (entity tags), or <code>null</code> if the header
+     * is not present.
+     */
+    public String getIfNoneMatch() {
+        return ifNoneMatch;
+    }
+
+    /**
+     * Returns the value of the <code>If-Modified-Since</code> header (HTTP date), or <code>null</code> if the header
+     * is not present.
+     */
+    public String getIfModifiedSince() {
+        return ifModifiedSince;
+    }
+
+    /**
+     * Returns the value of the <code>Range</code> header (see {@link ByteRange#parse(String, long)}), or
+     * <code>null</code> if the header is not present.
+     */
+    public String getRange() {
+        return range;
+    }
+
+    /**
+     * Returns the value of the <code>If-Range</code> header (entity tag or HTTP date), or <code>null</code> if
+     * the header is not present.
+     */
+    public String getIfRange() {
+        return ifRange;
+    }
+
+    /**
+     * Returns the value of the <code>Accept-Encoding</code> header (content codings accepted by the client), or
+     * <code>null</code> if the header is not present.
+     */
+    public String getAcceptEncoding() {
+        return acceptEncoding;
+    }
+
+    /**
+     * Returns the values of the parameter segments of the path (parameter name to value), as captured by the route
+     * that matched the request (e.g., <code>/users/{id}</code>). The map is empty if the route has no parameters.
+     */
+    public Map<String, String> getPathParameters() {
+        return pathParameters;
+    }
+
+    /**
+     * Returns the body of the request, which is empty (but not <code>null</code>) if the request has no body.
+     */
+    public RequestBody getBody() {
+        return body;
+    }
+
+    /**
+     * Returns a copy of this request with the given path parameters (see {@link #getPathParameters()}).
+     */
+    public ValidRequest withPathParameters(Map<String, String> pathParameters) {
+        return new ValidRequest(method, uri, httpMinorVersion, keepAliveHeader, ifNoneMatch, ifModifiedSince, range,
+                ifRange, acceptEncoding, Map.copyOf(pathParameters), body);
+    }
+
+    // The body is a stream, so it is not taken into account by equals() and hashCode()
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ValidRequest that = (ValidRequest) o;
         return httpMinorVersion == that.httpMinorVersion && method == that.method && Objects.equals(uri, that.uri)
-                && Objects.equals(keepAliveHeader, that.keepAliveHeader);
+                && Objects.equals(keepAliveHeader, that.keepAliveHeader) && Objects.equals(ifNoneMatch, that.ifNoneMatch)
+                && Objects.equals(ifModifiedSince, that.ifModifiedSince) && Objects.equals(range, that.range)
+                && Objects.equals(ifRange, that.ifRange) && Objects.equals(acceptEncoding, that.acceptEncoding)
+                && Objects.equals(pathParameters, that.pathParameters);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(method, uri, httpMinorVersion, keepAliveHeader);
+        return Objects.hash(method, uri, httpMinorVersion, keepAliveHeader, ifNoneMatch, ifModifiedSince, range,
+                ifRange, acceptEncoding, pathParameters);
     }
 
-    private ValidRequest(HttpMethod method, URI uri, byte httpMinorVersion, Boolean keepAliveHeader) {
+    private ValidRequest(HttpMethod method, URI uri, byte httpMinorVersion, Boolean keepAliveHeader,
+                         String ifNoneMatch, String ifModifiedSince, String range, String ifRange,
+                         String acceptEncoding, Map<String, String> pathParameters, RequestBody body) {
         this.method = method;
         this.uri = uri;
         this.httpMinorVersion = httpMinorVersion;
         this.keepAliveHeader = keepAliveHeader;
+        this.ifNoneMatch = ifNoneMatch;
+        this.ifModifiedSince = ifModifiedSince;
+        this.range = range;
+        this.ifRange = ifRange;
+        this.acceptEncoding = acceptEncoding;
+        this.pathParameters = pathParameters;
+        this.body = body;
     }
 
     public static class Builder {
@@ -59,6 +144,12 @@ public final class ValidRequest implements Request {
         private URI uri;
         private byte httpMinorVersion;
         private Boolean keepAliveHeader;
+        private String ifNoneMatch;
+        private String ifModifiedSince;
+        private String range;
+        private String ifRange;
+        private String acceptEncoding;
+        private RequestBody body = RequestBody.EMPTY;
 
         private Builder() {
         }
@@ -83,8 +174,40 @@ public final class ValidRequest implements Request {
             return this;
         }
 
+        public Builder ifNoneMatch(String ifNoneMatch) {
+            this.ifNoneMatch = ifNoneMatch;
+            return this;
+        }
+
+        public Builder ifModifiedSince(String ifModifiedSince) {
+            this.ifModifiedSince = ifModifiedSince;
+            return this;
+        }
+
+        public Builder range(String range) {
+            this.range = range;
+            return this;
+        }
+
+        public Builder ifRange(String ifRange) {
+            this.ifRange = ifRange;
+            return this;
+        }
+
+        public Builder acceptEncoding(String acceptEncoding) {
+            this.acceptEncoding = acceptEncoding;
+            return this;
+        }
+
+        public Builder body(RequestBody body) {
+            this.body = body;
+            return this;
+        }
+
         public ValidRequest build() {
-            return new ValidRequest(this.method, this.uri, this.httpMinorVersion, this.keepAliveHeader);
+            return new ValidRequest(this.method, this.uri, this.httpMinorVersion, this.keepAliveHeader,
+                    this.ifNoneMatch, this.ifModifiedSince, this.range, this.ifRange,
+                    this.acceptEncoding, Map.of(), this.body);
         }
     }
 }
@@ -0,0 +1,20 @@
+package eu.kapalka.http.response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Producer of a response body whose length is not known in advance (see {@link Response.Builder#body(BodyWriter)}).
+ * The body is written to the given stream while the response is being sent, so that it never has to be held
+ * in memory entirely. Calling {@link OutputStream#flush()} sends the data written so far to the client
+ * immediately (e.g., for progressive rendering); otherwise, the data is sent as buffers fill up.
+ */
+@FunctionalInterface
+public interface BodyWriter {
+
+    /**
+     * Writes the response body to <code>output</code>. The stream must not be used after this method returns;
+     * it does not need to be closed.
+     */
+    void writeTo(OutputStream output) throws IOException;
+}
@@ -0,0 +1,40 @@
+package eu.kapalka.http.response;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream that reads the remaining contents of a {@link ByteBuffer}. The position of the buffer is advanced
+ * as data is read.
+ */
+class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        var size = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, size);
+        return size;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
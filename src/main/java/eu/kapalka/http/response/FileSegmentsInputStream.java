@@ -0,0 +1,104 @@
+package eu.kapalka.http.response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Input stream that reads a sequence of segments, each of them being either a region of a file or a constant
+ * byte array (e.g., the part headers of a <code>multipart/byteranges</code> body). File regions are read with
+ * positional reads from a single file channel, which is opened on the first read: nothing is skipped or read
+ * twice, whatever the position of the regions in the file.
+ */
+public class FileSegmentsInputStream extends InputStream {
+
+    /**
+     * Segment of the stream: the bytes of <code>data</code> if not <code>null</code>, the file region of
+     * <code>length</code> bytes starting at <code>fileOffset</code> otherwise.
+     */
+    public record Segment(byte[] data, long fileOffset, long length) {
+
+        public static Segment bytes(byte[] data) {
+            return new Segment(data, 0, data.length);
+        }
+
+        public static Segment fileRegion(long fileOffset, long length) {
+            return new Segment(null, fileOffset, length);
+        }
+    }
+
+    private final Path file;
+    private final List<Segment> segments;
+    private FileChannel fileChannel;
+    private int segmentIndex;
+    private long segmentPosition;
+
+    public FileSegmentsInputStream(Path file, List<Segment> segments) {
+        this.file = file;
+        this.segments = segments;
+    }
+
+    /**
+     * Returns the total length of the given segments.
+     */
+    public static long length(List<Segment> segments) {
+        long length = 0;
+        for (var segment : segments) {
+            length += segment.length();
+        }
+        return length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        var singleByte = new byte[1];
+        return (read(singleByte, 0, 1) == -1) ? -1 : (singleByte[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (segmentIndex < segments.size() && segmentPosition == segments.get(segmentIndex).length()) {
+            segmentIndex++;
+            segmentPosition = 0;
+        }
+        if (segmentIndex == segments.size()) {
+            return -1;
+        }
+
+        var segment = segments.get(segmentIndex);
+        var size = (int) Math.min(length, segment.length() - segmentPosition);
+        if (segment.data() != null) {
+            System.arraycopy(segment.data(), (int) segmentPosition, bytes, offset, size);
+        } else {
+            size = readFile(ByteBuffer.wrap(bytes, offset, size), segment.fileOffset() + segmentPosition);
+        }
+        segmentPosition += size;
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileChannel != null) {
+            fileChannel.close();
+        }
+    }
+
+    private int readFile(ByteBuffer target, long position) throws IOException {
+        if (fileChannel == null) {
+            fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+        var size = fileChannel.read(target, position);
+        if (size == -1) {
+            // The file was truncated: we cannot provide the number of bytes announced in the header
+            throw new IOException("File %s truncated while being read".formatted(file));
+        }
+        return size;
+    }
+}
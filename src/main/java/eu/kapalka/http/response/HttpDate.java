@@ -0,0 +1,44 @@
+package eu.kapalka.http.response;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Encoded <code>Date</code> header line shared by all response writers. The header has a resolution of one second,
+ * so it is formatted at most once per second: the first response of every second refreshes the shared value and
+ * all other responses reuse it.
+ */
+final class HttpDate {
+
+    private static final AtomicReference<EncodedDate> current =
+            new AtomicReference<>(new EncodedDate(Long.MIN_VALUE, null));
+
+    private HttpDate() {
+    }
+
+    /**
+     * Returns the encoded <code>Date</code> header line (including the line terminator) for the current time of
+     * the given clock. The returned array must not be modified.
+     */
+    static byte[] headerLine(Clock clock) {
+        var epochSecond = Math.floorDiv(clock.millis(), 1000); // Unlike Clock.instant(), no allocation
+        var date = current.get();
+        if (date.epochSecond() != epochSecond) {
+            var formattedDate = ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), clock.getZone())
+                    .format(DateTimeFormatter.RFC_1123_DATE_TIME);
+            var newDate = new EncodedDate(epochSecond,
+                    "Date: %s\r\n".formatted(formattedDate).getBytes(StandardCharsets.US_ASCII));
+            // If another thread refreshed the value concurrently, both values are equally valid
+            current.compareAndSet(date, newDate);
+            date = newDate;
+        }
+        return date.headerLine();
+    }
+
+    private record EncodedDate(long epochSecond, byte[] headerLine) {
+    }
+}
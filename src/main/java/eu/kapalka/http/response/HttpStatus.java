@@ -1,21 +1,33 @@
 package eu.kapalka.http.response;
 
+import java.nio.charset.StandardCharsets;
+
 public enum HttpStatus {
     OK(200, "OK"),
+    CREATED(201, "Created"),
     NO_CONTENT(204, "No Content"),
+    PARTIAL_CONTENT(206, "Partial Content"),
+    NOT_MODIFIED(304, "Not Modified"),
     BAD_REQUEST(400, "Bad Request"),
     NOT_FOUND(404, "Not Found"),
     METHOD_NOT_ALLOWED(405, "Method Not Allowed"),
+    CONTENT_TOO_LARGE(413, "Content Too Large"),
     URI_TOO_LONG(414, "URI Too Long"),
+    RANGE_NOT_SATISFIABLE(416, "Range Not Satisfiable"),
+    TOO_MANY_REQUESTS(429, "Too Many Requests"),
     REQUEST_HEADER_TOO_LARGE(431, "Request Header Fields Too Large"),
-    INTERNAL_SERVER_ERROR(500, "Internal Server Error");
+    INTERNAL_SERVER_ERROR(500, "Internal Server Error"),
+    NOT_IMPLEMENTED(501, "Not Implemented"),
+    SERVICE_UNAVAILABLE(503, "Service Unavailable");
 
     private final int code;
     private final String message;
+    private final byte[] statusLine;
 
     private HttpStatus(int code, String message) {
         this.code = code;
         this.message = message;
+        this.statusLine = "HTTP/1.1 %d %s\r\n".formatted(code, message).getBytes(StandardCharsets.US_ASCII);
     }
 
     public int getCode() {
@@ -25,4 +37,12 @@ public enum HttpStatus {
     public String getMessage() {
         return message;
     }
+
+    /**
+     * Returns the encoded status line of a response with this status (including the line terminator).
+     * The returned array must not be modified.
+     */
+    byte[] getStatusLine() {
+        return statusLine;
+    }
 }
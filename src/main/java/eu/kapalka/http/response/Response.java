@@ -1,19 +1,36 @@
 package eu.kapalka.http.response;
 
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Represents HTTP response. For simplicity, only fields that are used in this repository are represented in this class.
  */
 public class Response {
 
+    /**
+     * Body length of responses whose body is produced by a {@link BodyWriter}.
+     */
+    public static final long UNKNOWN_LENGTH = -1;
+
     private static final String TEXT_BODY_CONTENT_TYPE = "text/plain; charset=utf-8";
 
     private final HttpStatus status;
     private final InputStreamSupplier body;
+    private final Path bodyFile;
+    private final long bodyFileOffset;
+    private final ByteBuffer bodyBuffer;
+    private final BodyWriter bodyWriter;
     private final long bodyLength;
     private final String contentType;
+    private final Map<String, String> headers;
 
     public static Builder builder() {
         return new Builder();
@@ -23,10 +40,52 @@ public class Response {
         return status;
     }
 
+    /**
+     * Returns the supplier of the response body, or <code>null</code> if the response has no body or if the body
+     * is produced by a {@link BodyWriter} (see {@link #getBodyWriter()}).
+     */
     public InputStreamSupplier getBody() {
         return body;
     }
 
+    /**
+     * Returns the file whose contents is the body of the response, or <code>null</code> if the body is not
+     * backed by a file. When not <code>null</code>, {@link #getBody()} returns a stream with the file contents,
+     * more precisely the {@link #getBodyLength()} bytes starting at {@link #getBodyFileOffset()}.
+     */
+    public Path getBodyFile() {
+        return bodyFile;
+    }
+
+    /**
+     * Returns the position in {@link #getBodyFile()} of the first byte of the body (0 unless the body is
+     * a region of the file).
+     */
+    public long getBodyFileOffset() {
+        return bodyFileOffset;
+    }
+
+    /**
+     * Returns the buffer whose (remaining) contents is the body of the response, or <code>null</code> if the body
+     * is not backed by a buffer. When not <code>null</code>, {@link #getBody()} returns a stream with the buffer
+     * contents. The buffer must not be modified: use a duplicate of it to read its contents.
+     */
+    public ByteBuffer getBodyBuffer() {
+        return bodyBuffer;
+    }
+
+    /**
+     * Returns the producer of a response body of unknown length, or <code>null</code> if the body is provided
+     * by {@link #getBody()}.
+     */
+    public BodyWriter getBodyWriter() {
+        return bodyWriter;
+    }
+
+    /**
+     * Returns the length of the body in bytes, or {@link #UNKNOWN_LENGTH} if the body is produced by
+     * a {@link BodyWriter}.
+     */
     public long getBodyLength() {
         return bodyLength;
     }
@@ -35,18 +94,38 @@ public class Response {
         return contentType;
     }
 
-    private Response(HttpStatus status, InputStreamSupplier body, long bodyLength, String contentType) {
+    /**
+     * Returns the additional headers of the response (header name to value), i.e., all headers except for those
+     * that are set by {@link ResponseWriter} (e.g., <code>Content-Length</code>).
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    private Response(HttpStatus status, InputStreamSupplier body, Path bodyFile, long bodyFileOffset,
+                     ByteBuffer bodyBuffer, BodyWriter bodyWriter, long bodyLength, String contentType,
+                     Map<String, String> headers) {
         this.status = status;
         this.body = body;
+        this.bodyFile = bodyFile;
+        this.bodyFileOffset = bodyFileOffset;
+        this.bodyBuffer = bodyBuffer;
+        this.bodyWriter = bodyWriter;
         this.bodyLength = bodyLength;
         this.contentType = contentType;
+        this.headers = headers;
     }
 
     public static class Builder {
         private HttpStatus status = HttpStatus.OK;
         private InputStreamSupplier body;
+        private Path bodyFile;
+        private long bodyFileOffset;
+        private ByteBuffer bodyBuffer;
+        private BodyWriter bodyWriter;
         private long bodyLength;
         private String contentType;
+        private Map<String, String> headers = Map.of();
 
         private Builder() {
         }
@@ -57,26 +136,108 @@ public class Response {
         }
 
         public Builder body(String body) {
-            var bodyBytes = body.getBytes(StandardCharsets.UTF_8);
-            this.body = () -> new ByteArrayInputStream(bodyBytes);
-            this.bodyLength = bodyBytes.length;
+            body(body.getBytes(StandardCharsets.UTF_8));
             this.contentType = TEXT_BODY_CONTENT_TYPE;
             return this;
         }
 
+        public Builder body(byte[] body) {
+            this.body = () -> new ByteArrayInputStream(body);
+            this.bodyFile = null;
+            this.bodyBuffer = null;
+            this.bodyWriter = null;
+            this.bodyLength = body.length;
+            return this;
+        }
+
         public Builder body(InputStreamSupplier inputStream, long bodyLength) {
             this.body = inputStream;
+            this.bodyFile = null;
+            this.bodyBuffer = null;
+            this.bodyWriter = null;
             this.bodyLength = bodyLength;
             return this;
         }
 
+        /**
+         * Use the contents of the given file as the response body. This allows {@link ResponseWriter} to transfer
+         * the file directly to the network connection, without copying it through the Java heap.
+         */
+        public Builder body(Path file, long bodyLength) {
+            this.body = () -> Files.newInputStream(file);
+            this.bodyFile = file;
+            this.bodyFileOffset = 0;
+            this.bodyBuffer = null;
+            this.bodyWriter = null;
+            this.bodyLength = bodyLength;
+            return this;
+        }
+
+        /**
+         * Use the region of the given file that starts at <code>offset</code> as the response body
+         * (see {@link #body(Path, long)}).
+         */
+        public Builder body(Path file, long offset, long bodyLength) {
+            var region = List.of(FileSegmentsInputStream.Segment.fileRegion(offset, bodyLength));
+            this.body = () -> new FileSegmentsInputStream(file, region);
+            this.bodyFile = file;
+            this.bodyFileOffset = offset;
+            this.bodyBuffer = null;
+            this.bodyWriter = null;
+            this.bodyLength = bodyLength;
+            return this;
+        }
+
+        /**
+         * Use the remaining contents of the given buffer as the response body. This allows {@link ResponseWriter}
+         * to write direct (e.g., memory-mapped) buffers to the network connection without copying them through
+         * the Java heap.
+         */
+        public Builder body(ByteBuffer buffer) {
+            this.body = () -> new ByteBufferInputStream(buffer.duplicate());
+            this.bodyFile = null;
+            this.bodyBuffer = buffer;
+            this.bodyWriter = null;
+            this.bodyLength = buffer.remaining();
+            return this;
+        }
+
+        /**
+         * Use a body of unknown length produced by the given writer while the response is sent. The body is sent
+         * with the chunked transfer coding if the connection is kept alive; otherwise, closing the connection
+         * marks the end of the body.
+         */
+        public Builder body(BodyWriter bodyWriter) {
+            this.body = null;
+            this.bodyFile = null;
+            this.bodyBuffer = null;
+            this.bodyWriter = bodyWriter;
+            this.bodyLength = UNKNOWN_LENGTH;
+            return this;
+        }
+
         public Builder contentType(String contentType) {
             this.contentType = contentType;
             return this;
         }
 
+        /**
+         * Add a header to the response (or replace the value of a header added previously). The header name and
+         * value must be valid ASCII strings.
+         */
+        public Builder header(String name, String value) {
+            if (headers.isEmpty()) {
+                headers = new LinkedHashMap<>(); // Preserve the order in which headers are added
+            }
+            headers.put(name, value);
+            return this;
+        }
+
         public Response build() {
-            return new Response(status, body, bodyLength, contentType);
+            var responseHeaders = headers.isEmpty() ? headers
+                    : Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+            return new Response(status, body, bodyFile, bodyFileOffset, bodyBuffer, bodyWriter, bodyLength,
+                    contentType, responseHeaders);
         }
     }
 }
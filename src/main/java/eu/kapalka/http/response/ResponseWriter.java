@@ -1,18 +1,33 @@
 package eu.kapalka.http.response;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.time.Clock;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import static java.util.logging.Level.FINER;
+import static java.util.logging.Level.WARNING;
 
 /**
  * Class responsible for formatting an HTTP response (see {@link Response}) and writing it to the output stream
  * of the underlying network connection.
+ * <p>
+ * The writer is meant to be reused for all responses sent over a connection. Responses are assembled in an internal
+ * buffer: the response headers are sent together with (the beginning of) the body, and small responses are sent
+ * only when the buffer is full or when {@link #flush()} is called, which allows sending multiple (pipelined)
+ * responses together. This way, a small response is typically sent in a single network packet.
+ * <p>
+ * Bodies of unknown length (see {@link BodyWriter}) are sent with the chunked transfer coding on keep-alive
+ * connections. Chunks are assembled in place in the same buffer, so that the headers and the first chunk are
+ * typically sent together, and each full buffer is sent with a single write.
  */
 public class ResponseWriter {
 
@@ -20,10 +35,85 @@ public class ResponseWriter {
 
     private static final Logger logger = Logger.getLogger(ResponseWriter.class.getName());
 
+    // Large enough for the headers and the body of typical small responses
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    // Headers are rendered in one piece: buffered data is written first if less space than this is left
+    private static final int MIN_HEADERS_SPACE = 1024;
+    // Max size of the chunks of bodies of unknown length, unless configured otherwise
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+    // A new chunk is started in the buffer only if at least this much space is left (to avoid tiny chunks)
+    private static final int MIN_CHUNK_SPACE = 1024;
+    // Chunk size line (at most 8 hex digits for an int) and CRLF after the chunk data
+    private static final int CHUNK_OVERHEAD = 8 + 2 + 2;
+
+    // Constant parts of the headers, encoded once
+    private static final byte[] CRLF = ascii("\r\n");
+    private static final byte[] SERVER_HEADER = ascii("Server: KapalkaHTTPServer/1.0\r\n");
+    private static final byte[] CONNECTION_KEEP_ALIVE_HEADER = ascii("Connection: keep-alive\r\n");
+    private static final byte[] CONNECTION_CLOSE_HEADER = ascii("Connection: close\r\n");
+    private static final byte[] CONTENT_TYPE_PREFIX = ascii("Content-Type: ");
+    private static final byte[] CONTENT_LENGTH_PREFIX = ascii("Content-Length: ");
+    private static final byte[] HEADER_SEPARATOR = ascii(": ");
+    private static final byte[] TRANSFER_ENCODING_CHUNKED_HEADER = ascii("Transfer-Encoding: chunked\r\n");
+    private static final byte[] LAST_CHUNK = ascii("0\r\n\r\n");
+    private static final byte[] HEX_DIGITS = ascii("0123456789abcdef");
+
     private final OutputStream output;
+    private final WritableByteChannel outputChannel;
+    private final int chunkSize;
+
+    // Data not yet written to the output stream is between index 0 (inclusive) and bufferedLength (exclusive)
+    private byte[] buffer;
+    private int bufferedLength;
+    // Bytes written to the output stream or channel (excluding buffered data)
+    private long bytesWritten;
+
+    // Whether the body of unknown length of the last response whose headers were written is chunked
+    private boolean chunkedBody;
+
+    // Most responses sent over a connection have the same content type (e.g., for static files of the same type)
+    private String lastContentType;
+    private byte[] lastContentTypeBytes;
 
     public ResponseWriter(OutputStream output) {
+        this(output, null);
+    }
+
+    /**
+     * Creates a writer for the given output stream. If <code>outputChannel</code> (which must write to the same
+     * destination as <code>output</code>) is not <code>null</code>, response bodies backed by files
+     * (see {@link Response#getBodyFile()}) are transferred directly from the file system to the channel, without
+     * copying data through a buffer on the Java heap. For network connections, this maps to the
+     * <code>sendfile</code> system call on most operating systems. Similarly, response bodies backed by buffers
+     * (see {@link Response#getBodyBuffer()}) are written directly to the channel, together with the response
+     * headers if the channel supports gathering writes.
+     */
+    public ResponseWriter(OutputStream output, WritableByteChannel outputChannel) {
+        this(output, outputChannel, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a writer (see {@link #ResponseWriter(OutputStream, WritableByteChannel)}) that sends bodies of
+     * unknown length in chunks of at most <code>chunkSize</code> bytes. Larger chunks mean fewer writes for large
+     * bodies, at the cost of a larger buffer per connection.
+     */
+    public ResponseWriter(OutputStream output, WritableByteChannel outputChannel, int chunkSize) {
+        this(output, outputChannel, DEFAULT_BUFFER_SIZE, chunkSize);
+    }
+
+    /**
+     * Creates a writer (see {@link #ResponseWriter(OutputStream, WritableByteChannel, int)}) that assembles
+     * responses in a buffer of at least <code>bufferSize</code> bytes: responses whose headers and body fit in
+     * the buffer are sent with a single write. The buffer grows if needed for unusually long headers.
+     */
+    public ResponseWriter(OutputStream output, WritableByteChannel outputChannel, int bufferSize, int chunkSize) {
+        if (bufferSize <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("Buffer size and chunk size must be positive");
+        }
         this.output = output;
+        this.outputChannel = outputChannel;
+        this.chunkSize = chunkSize;
+        this.buffer = new byte[Math.max(Math.max(bufferSize, MIN_HEADERS_SPACE), chunkSize + CHUNK_OVERHEAD)];
     }
 
     /**
@@ -40,61 +130,377 @@ public class ResponseWriter {
     }
 
     /**
-     * Write HTTP headers.
+     * Write HTTP headers. The headers are buffered until the body is written or {@link #flush()} is called.
+     * For a body of unknown length, <code>keepAlive</code> also determines how the end of the body is signaled:
+     * by the last chunk of the chunked transfer coding, or by closing the connection.
      *
      * @param response HTTP response
      * @param keepAlive maps to the <code>Connection</code> header value: <code>keep-alive</code> of <code>close</code>
      * @throws IOException
      */
     public void writeHeaders(Response response, boolean keepAlive) throws IOException {
-        var status = response.getStatus();
-        writeLine(output, "HTTP/1.1 %d %s".formatted(status.getCode(), status.getMessage()));
-        writeHeaderLine(output, "Server", "KapalkaHTTPServer/1.0");
-        writeHeaderLine(output, "Date",
-                ZonedDateTime.now(clock).format(DateTimeFormatter.RFC_1123_DATE_TIME));
-
-        var connectionHeaderValue = (keepAlive) ? "keep-alive" : "close";
-        writeHeaderLine(output, "Connection", connectionHeaderValue);
+        if (buffer.length - bufferedLength < MIN_HEADERS_SPACE) {
+            writeBufferedData();
+        }
+        var headersStart = bufferedLength;
+        append(response.getStatus().getStatusLine());
+        append(SERVER_HEADER);
+        append(HttpDate.headerLine(clock));
+        append(keepAlive ? CONNECTION_KEEP_ALIVE_HEADER : CONNECTION_CLOSE_HEADER);
 
         if (response.getContentType() != null) {
-            writeHeaderLine(output, "Content-Type", response.getContentType());
+            append(CONTENT_TYPE_PREFIX);
+            append(encodeContentType(response.getContentType()));
+            append(CRLF);
+        }
+
+        for (var header : response.getHeaders().entrySet()) {
+            appendAscii(header.getKey());
+            append(HEADER_SEPARATOR);
+            appendAscii(header.getValue());
+            append(CRLF);
         }
 
-        writeHeaderLine(output, "Content-Length", Long.toString(response.getBodyLength()));
-        writeLine(output, "");
+        chunkedBody = false;
+        if (hasBody(response.getStatus())) {
+            if (response.getBodyLength() != Response.UNKNOWN_LENGTH) {
+                append(CONTENT_LENGTH_PREFIX);
+                appendDecimal(response.getBodyLength());
+                append(CRLF);
+            } else if (keepAlive) {
+                chunkedBody = true;
+                append(TRANSFER_ENCODING_CHUNKED_HEADER);
+            }
+        }
+        append(CRLF);
+
+        if (logger.isLoggable(FINER)) {
+            logger.log(FINER, "Headers OUT> {0}",
+                    new String(buffer, headersStart, bufferedLength - headersStart, StandardCharsets.US_ASCII));
+        }
     }
 
     /**
-     * Write HTTP body (copy from the input stream in {@link Response#getBody()}).
+     * Write HTTP body (transfer from the file in {@link Response#getBodyFile()} or the buffer in
+     * {@link Response#getBodyBuffer()} if possible, copy from the input stream in {@link Response#getBody()}
+     * otherwise).
      *
      * @param response HTTP response
      * @throws IOException
      */
     public void writeBody(Response response) throws IOException {
+        if (response.getBodyWriter() != null) {
+            if (hasBody(response.getStatus())) {
+                writeStreamedBody(response.getBodyWriter());
+            }
+            return;
+        }
         if (response.getBody() == null) {
             return;
         }
 
-        var buffer = new byte[4096];
+        if (response.getBodyFile() != null && outputChannel != null) {
+            transferFile(response);
+            return;
+        }
+        if (response.getBodyBuffer() != null && outputChannel != null) {
+            writeBuffer(response);
+            return;
+        }
+
         try (var bodyStream = response.getBody().get()) {
-            while (true) {
-                int size = bodyStream.read(buffer);
-                if (size == -1) {
-                    break; // EOF
+            copyToBuffer(bodyStream);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of responses written to the output so far. Data buffered by the writer (see
+     * {@link #flush()}) is not included.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Flush the responses written so far to the network connection.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        writeBufferedData();
+        output.flush();
+    }
+
+    private void copyToBuffer(InputStream bodyStream) throws IOException {
+        // The beginning of the body is sent together with the buffered headers
+        while (true) {
+            if (bufferedLength == buffer.length) {
+                writeBufferedData();
+            }
+            int size = bodyStream.read(buffer, bufferedLength, buffer.length - bufferedLength);
+            if (size == -1) {
+                break; // EOF
+            }
+            bufferedLength += size;
+        }
+    }
+
+    private void writeStreamedBody(BodyWriter bodyWriter) throws IOException {
+        var bodyStream = chunkedBody ? new ChunkedBodyStream() : new BufferedBodyStream();
+        try {
+            bodyWriter.writeTo(bodyStream);
+        } catch (RuntimeException ex) {
+            // The headers (and maybe part of the body) are sent already: an error response is not possible anymore,
+            // and the client detects the incomplete response when the connection is closed
+            logger.log(WARNING, "Body writer failed, response truncated", ex);
+            throw new IOException("Body writer failed", ex);
+        }
+        // Not closed on failure: the last chunk would make a truncated body look complete
+        bodyStream.close();
+    }
+
+    private void transferFile(Response response) throws IOException {
+        flush(); // Data written to the stream must precede the file contents
+        try (var fileChannel = FileChannel.open(response.getBodyFile(), StandardOpenOption.READ)) {
+            long position = response.getBodyFileOffset();
+            var end = position + response.getBodyLength();
+            while (position < end) {
+                var size = fileChannel.transferTo(position, end - position, outputChannel);
+                if (size == 0 && position >= fileChannel.size()) {
+                    // The file was truncated: we cannot send the number of bytes announced in the header
+                    throw new IOException("File %s truncated while being sent".formatted(response.getBodyFile()));
                 }
-                output.write(buffer, 0, size);
+                position += size;
+                bytesWritten += size;
+            }
+        }
+    }
+
+    private void writeBuffer(Response response) throws IOException {
+        var body = response.getBodyBuffer().duplicate();
+        if (!(outputChannel instanceof GatheringByteChannel gatheringChannel)) {
+            flush(); // Data written to the stream must precede the buffer contents
+            while (body.hasRemaining()) {
+                bytesWritten += outputChannel.write(body);
             }
+            return;
+        }
+
+        // Send the buffered data (headers) and the body with a single system call, if possible
+        output.flush();
+        var buffers = new ByteBuffer[]{ByteBuffer.wrap(buffer, 0, bufferedLength), body};
+        bufferedLength = 0;
+        while (buffers[0].hasRemaining() || body.hasRemaining()) {
+            bytesWritten += gatheringChannel.write(buffers);
+        }
+    }
+
+    /**
+     * Returns <code>false</code> for responses that never have a body: <code>Content-Length</code> is then either
+     * forbidden (204) or would refer to the body of a response that is not sent (304).
+     */
+    private static boolean hasBody(HttpStatus status) {
+        return status != HttpStatus.NO_CONTENT && status != HttpStatus.NOT_MODIFIED;
+    }
+
+    private byte[] encodeContentType(String contentType) {
+        if (!contentType.equals(lastContentType)) {
+            lastContentTypeBytes = ascii(contentType);
+            lastContentType = contentType;
+        }
+        return lastContentTypeBytes;
+    }
+
+    private void append(byte[] data) {
+        if (data.length > buffer.length - bufferedLength) {
+            // Unusually long headers, we keep the larger buffer for the next responses
+            buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, bufferedLength + data.length));
+        }
+        System.arraycopy(data, 0, buffer, bufferedLength, data.length);
+        bufferedLength += data.length;
+    }
+
+    /**
+     * Appends the given string encoded in ASCII (each other character is replaced with '?'), without creating
+     * a byte array.
+     */
+    private void appendAscii(String value) {
+        var length = value.length();
+        if (length > buffer.length - bufferedLength) {
+            buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, bufferedLength + length));
+        }
+        for (int i = 0; i < length; i++) {
+            var c = value.charAt(i);
+            buffer[bufferedLength++] = (byte) (c < 0x80 ? c : '?');
+        }
+    }
+
+    /**
+     * Appends the decimal representation of the given non-negative number, without creating a string.
+     */
+    private void appendDecimal(long value) {
+        var numDigits = 1;
+        for (var remaining = value / 10; remaining > 0; remaining /= 10) {
+            numDigits++;
+        }
+        if (numDigits > buffer.length - bufferedLength) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        var remaining = value;
+        for (int i = bufferedLength + numDigits - 1; i >= bufferedLength; i--) {
+            buffer[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        bufferedLength += numDigits;
+    }
+
+    private void appendHex(int value) {
+        for (int shift = (hexDigits(value) - 1) * 4; shift >= 0; shift -= 4) {
+            buffer[bufferedLength++] = HEX_DIGITS[(value >>> shift) & 0xf];
+        }
+    }
+
+    private static int hexDigits(int value) {
+        return Math.max(1, (Integer.SIZE - Integer.numberOfLeadingZeros(value) + 3) / 4);
+    }
+
+    private void writeBufferedData() throws IOException {
+        if (bufferedLength > 0) {
+            output.write(buffer, 0, bufferedLength);
+            bytesWritten += bufferedLength;
+            bufferedLength = 0;
         }
     }
 
-    private void writeHeaderLine(OutputStream output, String headerName, String headerValue) throws IOException {
-        writeLine(output, "%s: %s".formatted(headerName, headerValue));
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
     }
 
-    private void writeLine(OutputStream output, String line) throws IOException {
-        logger.log(FINER, "Header OUT> {0}", line);
-        output.write(line.getBytes(StandardCharsets.US_ASCII));
-        output.write('\r');
-        output.write('\n');
+    /**
+     * Stream for a body of unknown length sent with the chunked transfer coding. Each chunk is assembled directly
+     * in the buffer of the writer: space for the chunk size line is reserved before the chunk data, and the size
+     * line is filled in when the chunk is complete.
+     */
+    private final class ChunkedBodyStream extends OutputStream {
+
+        // Chunk data starts at chunkDataStart in the buffer (-1 if no chunk is started)
+        private int chunkDataStart = -1;
+        private int chunkCapacity;
+        private int chunkLength;
+        private boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            if (chunkDataStart == -1) {
+                startChunk();
+            }
+            buffer[chunkDataStart + chunkLength++] = (byte) b;
+            if (chunkLength == chunkCapacity) {
+                endChunk();
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ensureOpen();
+            while (length > 0) {
+                if (chunkDataStart == -1) {
+                    startChunk();
+                }
+                var size = Math.min(length, chunkCapacity - chunkLength);
+                System.arraycopy(bytes, offset, buffer, chunkDataStart + chunkLength, size);
+                chunkLength += size;
+                offset += size;
+                length -= size;
+                if (chunkLength == chunkCapacity) {
+                    endChunk();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ensureOpen();
+            endChunk();
+            ResponseWriter.this.flush();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            endChunk();
+            append(LAST_CHUNK);
+        }
+
+        private void startChunk() throws IOException {
+            if (buffer.length - bufferedLength < MIN_CHUNK_SPACE) {
+                writeBufferedData();
+            }
+            chunkCapacity = Math.min(chunkSize, buffer.length - bufferedLength - CHUNK_OVERHEAD);
+            chunkDataStart = bufferedLength + hexDigits(chunkCapacity) + CRLF.length;
+            chunkLength = 0;
+        }
+
+        private void endChunk() {
+            if (chunkDataStart == -1) {
+                return;
+            }
+            if (chunkLength > 0) {
+                // The size line of a partial chunk may be shorter than the reserved space: data is moved back
+                var dataStart = bufferedLength + hexDigits(chunkLength) + CRLF.length;
+                if (dataStart != chunkDataStart) {
+                    System.arraycopy(buffer, chunkDataStart, buffer, dataStart, chunkLength);
+                }
+                appendHex(chunkLength);
+                append(CRLF);
+                bufferedLength += chunkLength;
+                append(CRLF);
+            }
+            chunkDataStart = -1;
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Response body already complete");
+            }
+        }
+    }
+
+    /**
+     * Stream for a body of unknown length whose end is signaled by closing the connection: the data is simply
+     * buffered and written as the buffer fills up.
+     */
+    private final class BufferedBodyStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            if (bufferedLength == buffer.length) {
+                writeBufferedData();
+            }
+            buffer[bufferedLength++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (bufferedLength == buffer.length) {
+                    writeBufferedData();
+                }
+                var size = Math.min(length, buffer.length - bufferedLength);
+                System.arraycopy(bytes, offset, buffer, bufferedLength, size);
+                bufferedLength += size;
+                offset += size;
+                length -= size;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ResponseWriter.this.flush();
+        }
     }
 }
@@ -0,0 +1,53 @@
+package eu.kapalka.http;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionControllerTest {
+
+    private static final long MS = 1_000_000;
+
+    private final AdmissionController controller = new AdmissionController(5 * MS, 100 * MS);
+    private long now = System.nanoTime();
+
+    @Test
+    void burstAbsorbed() {
+        // Long delays are accepted as long as the queue empties within each interval
+        assertThat(controller.admit(80 * MS, now)).isTrue();
+        assertThat(controller.admit(0, now += 10 * MS)).isTrue();
+        assertThat(controller.admit(90 * MS, now += 100 * MS)).isTrue();
+        assertThat(controller.isOverloaded()).isFalse();
+
+        assertThat(controller.admit(101 * MS, now)).isFalse();
+    }
+
+    @Test
+    void standingQueueShedUntilDrained() {
+        for (int i = 0; i < 9; i++) {
+            assertThat(controller.admit(20 * MS, now += 10 * MS)).isTrue();
+        }
+        // No connection waited less than the target delay during the last interval
+        assertThat(controller.admit(20 * MS, now += 10 * MS)).isFalse();
+        assertThat(controller.isOverloaded()).isTrue();
+        assertThat(controller.admit(4 * MS, now += 10 * MS)).isTrue();
+
+        // The queue drained during the interval
+        assertThat(controller.admit(20 * MS, now += 100 * MS)).isTrue();
+        assertThat(controller.isOverloaded()).isFalse();
+    }
+
+    @Test
+    void idleIntervalIsNotAnOverload() {
+        assertThat(controller.admit(20 * MS, now += 500 * MS)).isTrue();
+        assertThat(controller.isOverloaded()).isFalse();
+    }
+
+    @Test
+    void invalidSettingsRejected() {
+        assertThatThrownBy(() -> new AdmissionController(0, 100 * MS)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdmissionController(10 * MS, 5 * MS))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,79 @@
+package eu.kapalka.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClientLimiterTest {
+
+    private static final long MS = 1_000_000;
+
+    @Test
+    void connectionsLimitedPerClient() throws UnknownHostException {
+        var limiter = new ClientLimiter(2, 0, 1, 100);
+        var first = limiter.tryAcquireConnection(address(1));
+        assertThat(first).isNotNull();
+        assertThat(limiter.tryAcquireConnection(address(1))).isSameAs(first);
+        assertThat(limiter.tryAcquireConnection(address(1))).isNull();
+        // Other clients are not affected
+        assertThat(limiter.tryAcquireConnection(address(2))).isNotNull();
+
+        limiter.releaseConnection(first);
+        assertThat(limiter.tryAcquireConnection(address(1))).isSameAs(first);
+    }
+
+    @Test
+    void requestRateLimitedWithBurst() throws UnknownHostException {
+        // 10 requests per second, i.e., one every 100 ms, in bursts of up to 3 requests
+        var limiter = new ClientLimiter(0, 10, 3, 100);
+        var client = limiter.tryAcquireConnection(address(1));
+        var now = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquireRequest(client, now)).isTrue();
+        }
+        assertThat(limiter.tryAcquireRequest(client, now)).isFalse();
+        assertThat(limiter.getRetryDelayNanos(client, now)).isEqualTo(100 * MS);
+
+        assertThat(limiter.tryAcquireRequest(client, now + 100 * MS)).isTrue();
+        assertThat(limiter.tryAcquireRequest(client, now + 100 * MS)).isFalse();
+        // The bucket is full again after 300 ms without requests
+        now += 400 * MS;
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquireRequest(client, now)).isTrue();
+        }
+        assertThat(limiter.tryAcquireRequest(client, now)).isFalse();
+    }
+
+    @Test
+    void idleClientsEvictedWhenFull() throws UnknownHostException {
+        var limiter = new ClientLimiter(1, 0, 1, 2);
+        var active = limiter.tryAcquireConnection(address(1));
+        var idle = limiter.tryAcquireConnection(address(2));
+        limiter.releaseConnection(idle);
+        assertThat(limiter.getTrackedClientCount()).isEqualTo(2);
+
+        // The idle client makes room for a new one, but the remaining client is still active
+        assertThat(limiter.tryAcquireConnection(address(3))).isNotNull();
+        assertThat(limiter.getTrackedClientCount()).isEqualTo(2);
+        assertThat(limiter.tryAcquireConnection(address(1))).isNull();
+        assertThat(limiter.tryAcquireConnection(address(4))).isNull();
+
+        limiter.releaseConnection(active);
+        assertThat(limiter.tryAcquireConnection(address(1))).isNotNull();
+    }
+
+    @Test
+    void invalidSettingsRejected() {
+        assertThatThrownBy(() -> new ClientLimiter(-1, 0, 1, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ClientLimiter(0, 10, 0, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ClientLimiter(0, 0, 1, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static InetAddress address(int lastByte) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) lastByte});
+    }
+}
@@ -0,0 +1,73 @@
+package eu.kapalka.http;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConnectionReaperTest {
+
+    private ServerSocketChannel serverChannel;
+    private final List<ClientConnection> expiredConnections = new ArrayList<>();
+    private final ConnectionReaper reaper = new ConnectionReaper(expiredConnections::add, 10);
+
+    @BeforeEach
+    void setup() throws IOException {
+        serverChannel = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    void shutdown() throws IOException {
+        serverChannel.close();
+    }
+
+    @Test
+    void expiredConnectionsReaped() throws IOException {
+        try (var expiring = connect(); var cleared = connect(); var future = connect(); var unregistered = connect()) {
+            var now = System.nanoTime();
+            expiring.setDeadline(now - 1);
+            cleared.setDeadline(now - 1);
+            cleared.clearDeadline();
+            future.setDeadline(now + 60_000_000_000L);
+            unregistered.setDeadline(now - 1);
+            reaper.register(expiring);
+            reaper.register(cleared);
+            reaper.register(future);
+            reaper.register(unregistered);
+            reaper.unregister(unregistered);
+
+            reaper.closeExpiredConnections();
+            reaper.closeExpiredConnections(); // Each deadline expires only once
+            assertThat(expiredConnections).containsExactly(expiring);
+        }
+    }
+
+    @Test
+    void reaperThread() throws Exception {
+        try (var connection = connect()) {
+            connection.setDeadline(System.nanoTime() + 50_000_000);
+            reaper.register(connection);
+            var thread = new Thread(reaper);
+            thread.start();
+            Thread.sleep(200);
+            reaper.stop();
+            thread.join();
+            assertThat(expiredConnections).containsExactly(connection);
+        }
+    }
+
+    private ClientConnection connect() throws IOException {
+        var channel = SocketChannel.open(serverChannel.getLocalAddress());
+        serverChannel.accept().close();
+        return new ClientConnection(channel, ServerConfig.builder().build());
+    }
+}
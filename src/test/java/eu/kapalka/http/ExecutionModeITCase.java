@@ -0,0 +1,310 @@
+package eu.kapalka.http;
+
+import eu.kapalka.http.handler.StaticContentRequestHandler;
+import eu.kapalka.http.repository.StaticFileRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Load tests of the different {@link ExecutionMode}s: a large number of idle keep-alive connections, which would
+ * block all threads of the thread pool in {@link ExecutionMode#THREAD_POOL} mode, must not prevent other clients
+ * from being served in the other modes.
+ */
+class ExecutionModeITCase extends TestBase {
+
+    private static final int NUM_IDLE_CONNECTIONS = 200;
+    // See ServerConfig.maxRequestsPerConnection (default value)
+    private static final int MAX_REQUESTS_PER_CONNECTION = 10;
+
+    private HttpServer server;
+    private final List<Socket> idleConnections = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() throws IOException {
+        for (var connection : idleConnections) {
+            connection.close();
+        }
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @EnumSource(names = {"VIRTUAL_THREADS", "SELECTOR"})
+    void idleConnectionsDoNotBlockOtherClients(ExecutionMode executionMode) throws Exception {
+        startServer(executionMode, Integer.MAX_VALUE);
+        openIdleConnections(NUM_IDLE_CONNECTIONS);
+
+        var response = sendRequestAsync(singleRequest()).get(2, TimeUnit.SECONDS);
+        assertThat(response).startsWith("HTTP/1.1 200 OK\r\n").endsWith("Test content\n");
+    }
+
+    @Test
+    void idleConnectionsBlockThreadPool() throws Exception {
+        // Reference behavior of the thread pool mode: the pool is exhausted by idle clients until their socket
+        // read timeout expires
+        startServer(ExecutionMode.THREAD_POOL, Integer.MAX_VALUE);
+        openIdleConnections(NUM_IDLE_CONNECTIONS);
+
+        var response = sendRequestAsync(singleRequest());
+        assertThatThrownBy(() -> response.get(2, TimeUnit.SECONDS)).isInstanceOf(TimeoutException.class);
+    }
+
+    @Test
+    void connectionsWaitingTooLongRejected() throws Exception {
+        startServer(ServerConfig.builder()
+                .threadPoolSize(1)
+                .socketReadTimeoutMs(1_000)
+                .admissionTargetDelayMs(20)
+                .admissionIntervalMs(200)
+                .build());
+        // The only thread is blocked by the idle connection until its read timeout expires
+        openIdleConnections(1);
+
+        var response = sendRequestAsync(singleRequest()).get(5, TimeUnit.SECONDS);
+        assertThat(response)
+                .startsWith("HTTP/1.1 503 Service Unavailable\r\n")
+                .contains("Retry-After: 1\r\n", "Connection: close\r\n");
+        assertThat(server.getMetrics().getShedConnectionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void clientConnectionsLimited() throws Exception {
+        startServer(ServerConfig.builder().clientMaxConnections(2).build());
+        openIdleConnections(2);
+
+        var response = sendRequestAsync(singleRequest()).get(2, TimeUnit.SECONDS);
+        assertThat(response)
+                .startsWith("HTTP/1.1 429 Too Many Requests\r\n")
+                .contains("Retry-After: 1\r\n");
+
+        // The limit applies to concurrent connections only
+        idleConnections.removeFirst().close();
+        Thread.sleep(200);
+        assertThat(sendRequestAsync(singleRequest()).get(2, TimeUnit.SECONDS)).startsWith("HTTP/1.1 200 OK\r\n");
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutionMode.class)
+    void clientRequestRateLimited(ExecutionMode executionMode) throws Exception {
+        startServer(ServerConfig.builder()
+                .executionMode(executionMode)
+                .clientRequestRate(1)
+                .clientRequestBurst(2)
+                .build());
+        var response = sendRequestAsync("""
+                GET /file.txt HTTP/1.1\r
+                \r
+                GET /file.txt HTTP/1.1\r
+                \r
+                GET /file.txt HTTP/1.1\r
+                Connection: close\r
+                \r
+                """).get(2, TimeUnit.SECONDS);
+        var statusLines = response.lines()
+                .filter(line -> line.startsWith("HTTP/1.1 "))
+                .toList();
+        assertThat(statusLines).containsExactly("HTTP/1.1 200 OK", "HTTP/1.1 200 OK", "HTTP/1.1 429 Too Many Requests");
+        assertThat(response).contains("Retry-After: 1\r\n");
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutionMode.class)
+    void maxConcurrentConnections(ExecutionMode executionMode) throws Exception {
+        startServer(executionMode, 5);
+        openIdleConnections(5);
+
+        // The limit is reached, so the connection is not accepted until another connection is closed
+        var response = sendRequestAsync(singleRequest());
+        assertThatThrownBy(() -> response.get(500, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+        idleConnections.removeFirst().close();
+        assertThat(response.get(2, TimeUnit.SECONDS)).startsWith("HTTP/1.1 200 OK\r\n");
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutionMode.class)
+    void keepAlive(ExecutionMode executionMode) throws Exception {
+        startServer(executionMode, Integer.MAX_VALUE);
+        try (var socket = connect()) {
+            // Requests sent one by one, so that the connection becomes idle between requests
+            for (int i = 0; i < 3; i++) {
+                socket.getOutputStream().write(toBytes("GET /file.txt HTTP/1.1\r\n\r\n"));
+                var response = readResponse(socket.getInputStream());
+                assertThat(response).startsWith("HTTP/1.1 200 OK\r\n").endsWith("Test content\n");
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutionMode.class)
+    void multipleRequestsSentAtOnce(ExecutionMode executionMode) throws Exception {
+        startServer(executionMode, Integer.MAX_VALUE);
+        var response = sendRequestAsync("""
+                GET /file.txt HTTP/1.1\r
+                \r
+                GET /file.txt HTTP/1.1\r
+                \r
+                GET /file.txt HTTP/1.1\r
+                Connection: close\r
+                \r
+                """).get(2, TimeUnit.SECONDS);
+        var count = Arrays.stream(response.split("\n"))
+                .filter(line -> line.equals("Test content"))
+                .count();
+        assertThat(count).isEqualTo(3);
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutionMode.class)
+    void pipelinedRequestsInSingleWrite(ExecutionMode executionMode) throws Exception {
+        startServer(executionMode, Integer.MAX_VALUE);
+        try (var socket = connect()) {
+            socket.getOutputStream().write(toBytes("GET /file.txt HTTP/1.1\r\n\r\n".repeat(MAX_REQUESTS_PER_CONNECTION)));
+            for (int i = 0; i < MAX_REQUESTS_PER_CONNECTION; i++) {
+                var response = readResponse(socket.getInputStream());
+                assertThat(response).startsWith("HTTP/1.1 200 OK\r\n").endsWith("Test content\n");
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutionMode.class)
+    void pipelinedRequestsBeyondConnectionLimit(ExecutionMode executionMode) throws Exception {
+        startServer(executionMode, Integer.MAX_VALUE);
+        try (var socket = connect()) {
+            var numRequests = MAX_REQUESTS_PER_CONNECTION + 5;
+            socket.getOutputStream().write(toBytes("GET /file.txt HTTP/1.1\r\n\r\n".repeat(numRequests)));
+            for (int i = 1; i < MAX_REQUESTS_PER_CONNECTION; i++) {
+                assertThat(readResponse(socket.getInputStream())).contains("Connection: keep-alive\r\n");
+            }
+            // The last response tells the client that the remaining requests will not be served
+            assertThat(readResponse(socket.getInputStream())).contains("Connection: close\r\n");
+            assertThat(socket.getInputStream().read()).isEqualTo(-1);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutionMode.class)
+    void multipleAcceptors(ExecutionMode executionMode) throws Exception {
+        try (var socket = ServerSocketChannel.open()) {
+            assumeTrue(socket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT));
+        }
+        startServer(ServerConfig.builder().executionMode(executionMode).acceptors(4).build());
+        // Short-lived connections, distributed by the kernel between the server sockets of the acceptors
+        var responses = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 64; i++) {
+            responses.add(sendRequestAsync(singleRequest()));
+        }
+        for (var response : responses) {
+            assertThat(response.get(5, TimeUnit.SECONDS)).startsWith("HTTP/1.1 200 OK\r\n");
+        }
+        var metrics = server.getMetrics();
+        var busyAcceptors = IntStream.range(0, 4).filter(i -> metrics.getAcceptedConnectionCount(i) > 0).count();
+        assertThat(busyAcceptors).isGreaterThan(1);
+    }
+
+    private void startServer(ExecutionMode executionMode, int maxConcurrentConnections) throws InterruptedException {
+        startServer(ServerConfig.builder()
+                .executionMode(executionMode)
+                .maxConcurrentConnections(maxConcurrentConnections)
+                .build());
+    }
+
+    private void startServer(ServerConfig config) throws InterruptedException {
+        var fileRepository = new StaticFileRepository(Path.of("src/test/resources/content"));
+        server = new HttpServer("localhost", 0, config);
+        server.registerRequestHandler("/", new StaticContentRequestHandler(fileRepository));
+        new Thread(server::start).start();
+        assertThat(server.awaitStarted(Duration.ofSeconds(5))).isTrue();
+    }
+
+    private void openIdleConnections(int numConnections) throws IOException, InterruptedException {
+        for (int i = 0; i < numConnections; i++) {
+            idleConnections.add(connect());
+        }
+        // Give the server some time to pick up all connections
+        Thread.sleep(200);
+    }
+
+    private Socket connect() throws IOException {
+        var socket = new Socket();
+        socket.connect(new InetSocketAddress("localhost", server.getPort()));
+        return socket;
+    }
+
+    private static String readResponse(InputStream input) throws IOException {
+        // Read the header line by line, then the body whose length is given by the "Content-Length" header
+        var response = new StringBuilder();
+        var contentLength = 0;
+        String line;
+        do {
+            line = readLine(input);
+            response.append(line).append("\r\n");
+            if (line.startsWith("Content-Length: ")) {
+                contentLength = Integer.parseInt(line.substring("Content-Length: ".length()));
+            }
+        } while (!line.isEmpty());
+        response.append(new String(input.readNBytes(contentLength), StandardCharsets.US_ASCII));
+        return response.toString();
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        var line = new StringBuilder();
+        int ch;
+        while ((ch = input.read()) != '\n') {
+            if (ch == -1) {
+                throw new EOFException();
+            }
+            if (ch != '\r') {
+                line.append((char) ch);
+            }
+        }
+        return line.toString();
+    }
+
+    private CompletableFuture<String> sendRequestAsync(String request) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (var socket = connect()) {
+                socket.getOutputStream().write(toBytes(request));
+                return new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+    }
+
+    private static String singleRequest() {
+        return """
+                GET /file.txt HTTP/1.1\r
+                Connection: close\r
+                \r
+                """;
+    }
+
+    private static byte[] toBytes(String request) {
+        return request.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,7 +1,11 @@
 package eu.kapalka.http;
 
+import eu.kapalka.http.handler.BlobStoreRequestHandler;
+import eu.kapalka.http.handler.MetricsRequestHandler;
 import eu.kapalka.http.handler.ResourceRequestHandler;
 import eu.kapalka.http.handler.StaticContentRequestHandler;
+import eu.kapalka.http.repository.BlobRepository;
+import eu.kapalka.http.repository.Durability;
 import eu.kapalka.http.repository.StaticFileRepository;
 import eu.kapalka.http.request.HttpMethod;
 import eu.kapalka.http.request.ValidRequest;
@@ -10,8 +14,10 @@ import eu.kapalka.http.response.Response;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
@@ -20,7 +26,10 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -28,14 +37,23 @@ class HttpServerITCase extends TestBase {
 
     private static HttpServer server;
 
+    @TempDir
+    static Path blobBasePath;
+
     @BeforeAll
-    static void setup() {
+    static void setup() throws IOException, InterruptedException {
         var fileRepository = new StaticFileRepository(Path.of("src/test/resources/content"));
         var staticFileHandler = new StaticContentRequestHandler(fileRepository);
         server = new HttpServer("localhost", 0);
         server.registerRequestHandler("/server-error", new ThrowingTestHandler());
+        server.registerRequestHandler("/stream", new StreamingTestHandler());
+        server.registerRequestHandler("/echo", new EchoTestHandler());
+        var blobRepository = new BlobRepository(blobBasePath, 16 * 1024 * 1024, Durability.PER_WRITE);
+        server.registerRequestHandler("/blobs", new BlobStoreRequestHandler(blobRepository));
+        server.registerRequestHandler(HttpMethod.GET, "/metrics", new MetricsRequestHandler(server.getMetrics()));
         server.registerRequestHandler("/", staticFileHandler);
         new Thread(server::start).start();
+        assertThat(server.awaitStarted(Duration.ofSeconds(5))).isTrue();
     }
 
     @AfterAll
@@ -81,6 +99,116 @@ class HttpServerITCase extends TestBase {
                 """);
     }
 
+    @Test
+    void conditionalRequest() throws IOException, InterruptedException {
+        var etag = sendRequest(HttpMethod.GET, "/file.txt").headers().firstValue("ETag").orElseThrow();
+        var response = sendRawRequest("""
+                GET /file.txt HTTP/1.1\r
+                If-None-Match: %s\r
+                Connection: close\r
+                \r
+                """.formatted(etag));
+        assertThat(response)
+                .startsWith("HTTP/1.1 304 Not Modified\r\n")
+                .contains("ETag: %s\r\n".formatted(etag))
+                .doesNotContain("Content-Length")
+                .endsWith("\r\n\r\n");
+    }
+
+    @Test
+    void rangeRequest() throws IOException {
+        var response = sendRawRequest("""
+                GET /file.txt HTTP/1.1\r
+                Range: bytes=5-\r
+                Connection: close\r
+                \r
+                """);
+        assertThat(response)
+                .startsWith("HTTP/1.1 206 Partial Content\r\n")
+                .contains("Content-Range: bytes 5-12/13\r\n")
+                .contains("Content-Length: 8\r\n")
+                .endsWith("\r\n\r\ncontent\n");
+    }
+
+    @Test
+    void chunkedResponse() throws IOException, InterruptedException {
+        var response = sendRequest(HttpMethod.GET, "/stream");
+        assertThat(response.statusCode()).isEqualTo(HttpStatus.OK.getCode());
+        assertThat(response.headers().firstValue("Transfer-Encoding")).hasValue("chunked");
+        assertThat(response.body()).isEqualTo(StreamingTestHandler.BODY);
+    }
+
+    @Test
+    void chunkedRequestBody() throws IOException {
+        var response = sendRawRequest("""
+                POST /file.txt HTTP/1.1\r
+                Transfer-Encoding: chunked\r
+                \r
+                4\r
+                data\r
+                0\r
+                \r
+                GET /file.txt HTTP/1.1\r
+                Connection: close\r
+                \r
+                """);
+        assertThat(response).endsWith("\r\n\r\nTest content\n");
+    }
+
+    @Test
+    void requestBody() throws IOException, InterruptedException {
+        var body = "Request body line\n".repeat(10_000);
+        try (var client = HttpClient.newHttpClient()) {
+            var uri = URI.create("http://localhost:%d/echo".formatted(server.getPort()));
+            var request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+            var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            assertThat(response.statusCode()).isEqualTo(HttpStatus.OK.getCode());
+            assertThat(response.body()).isEqualTo(body);
+        }
+    }
+
+    @Test
+    void pipelinedRequestsWithBodies() throws IOException {
+        var response = sendRawRequest("""
+                POST /echo HTTP/1.1\r
+                Transfer-Encoding: chunked\r
+                \r
+                6\r
+                chunk1\r
+                6\r
+                chunk2\r
+                0\r
+                \r
+                POST /echo HTTP/1.1\r
+                Content-Length: 7\r
+                Connection: close\r
+                \r
+                content""");
+        assertThat(response)
+                .contains("\r\n\r\nchunk1chunk2HTTP/1.1 200 OK\r\n")
+                .endsWith("\r\n\r\ncontent");
+    }
+
+    @Test
+    void blobStore() throws IOException, InterruptedException {
+        var contents = "Blob contents\n".repeat(100_000);
+        try (var client = HttpClient.newHttpClient()) {
+            var uri = URI.create("http://localhost:%d/blobs/artifacts/a.bin".formatted(server.getPort()));
+            var putRequest = HttpRequest.newBuilder(uri).PUT(HttpRequest.BodyPublishers.ofString(contents)).build();
+            var response = client.send(putRequest, HttpResponse.BodyHandlers.ofString());
+            assertThat(response.statusCode()).isEqualTo(HttpStatus.CREATED.getCode());
+        }
+
+        var response = sendRequest(HttpMethod.GET, "/blobs/artifacts/a.bin");
+        assertThat(response.statusCode()).isEqualTo(HttpStatus.OK.getCode());
+        assertThat(response.body()).isEqualTo(contents);
+
+        response = sendRequest(HttpMethod.DELETE, "/blobs/artifacts/a.bin");
+        assertThat(response.statusCode()).isEqualTo(HttpStatus.NO_CONTENT.getCode());
+        response = sendRequest(HttpMethod.GET, "/blobs/artifacts/a.bin");
+        assertThat(response.statusCode()).isEqualTo(HttpStatus.NOT_FOUND.getCode());
+    }
+
     @Test
     void testKeepAlive() throws IOException {
         // Two requests over the same connection (the former requests keep-alive)
@@ -97,6 +225,59 @@ class HttpServerITCase extends TestBase {
         assertThat(count).isEqualTo(2);
     }
 
+    @Test
+    void metrics() throws IOException, InterruptedException {
+        var metrics = server.getMetrics();
+        var acceptedConnections = metrics.getAcceptedConnectionCount();
+        var reusedConnectionRequests = metrics.getReusedConnectionRequestCount();
+        var bytesSent = metrics.getBytesSent();
+        sendRawRequest("""
+                GET /file.txt HTTP/1.1\r
+                \r
+                GET /file.txt HTTP/1.1\r
+                Connection: close\r
+                \r
+                """);
+        assertThat(metrics.getAcceptedConnectionCount()).isGreaterThan(acceptedConnections);
+        assertThat(metrics.getReusedConnectionRequestCount()).isGreaterThan(reusedConnectionRequests);
+        assertThat(metrics.getBytesSent()).isGreaterThan(bytesSent);
+
+        var response = sendRequest(HttpMethod.GET, "/metrics");
+        assertThat(response.statusCode()).isEqualTo(HttpStatus.OK.getCode());
+        assertThat(response.headers().firstValue("Content-Type")).hasValue("text/plain; version=0.0.4; charset=utf-8");
+        assertThat(response.body())
+                .containsPattern("http_requests_total\\{handler=\"/\",status=\"200\"} [1-9]")
+                .containsPattern("http_request_parse_seconds_count [1-9]");
+        assertThat(sendRequest(HttpMethod.DELETE, "/metrics").statusCode())
+                .isEqualTo(HttpStatus.METHOD_NOT_ALLOWED.getCode());
+    }
+
+    @Test
+    void callerOfStartNotInterruptedAfterStop() throws Exception {
+        var otherServer = new HttpServer("localhost", 0);
+        var interruptedAfterStart = new CompletableFuture<Boolean>();
+        new Thread(() -> {
+            otherServer.start();
+            try {
+                // The thread does something else once the server is stopped
+                Thread.sleep(500);
+                interruptedAfterStart.complete(false);
+            } catch (InterruptedException ex) {
+                interruptedAfterStart.complete(true);
+            }
+        }).start();
+        assertThat(otherServer.awaitStarted(Duration.ofSeconds(5))).isTrue();
+        // A served connection shows that the thread that called start() runs the accept loop
+        try (var socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", otherServer.getPort()));
+            socket.getOutputStream().write("GET / HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            assertThat(socket.getInputStream().readAllBytes()).isNotEmpty();
+        }
+
+        otherServer.stop();
+        assertThat(interruptedAfterStart.get(5, TimeUnit.SECONDS)).isFalse();
+    }
+
     private HttpResponse<String> sendRequest(HttpMethod method, String path) throws IOException, InterruptedException {
         try (var client = HttpClient.newHttpClient()) {
             var uri = URI.create("http://localhost:%d%s".formatted(server.getPort(), path));
@@ -119,6 +300,32 @@ class HttpServerITCase extends TestBase {
         }
     }
 
+    private static class StreamingTestHandler implements ResourceRequestHandler {
+
+        static final String BODY = "Streamed line\n".repeat(10_000);
+
+        @Override
+        public Response handle(ValidRequest request, String relativePath) {
+            return Response.builder()
+                    .body(output -> output.write(BODY.getBytes(StandardCharsets.US_ASCII)))
+                    .contentType("text/plain")
+                    .build();
+        }
+    }
+
+    private static class EchoTestHandler implements ResourceRequestHandler {
+
+        @Override
+        public Response handle(ValidRequest request, String relativePath) {
+            try {
+                var body = request.getBody().readFully(1024 * 1024).orElseThrow();
+                return Response.builder().body(body).contentType("text/plain").build();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
     private static class ThrowingTestHandler implements ResourceRequestHandler {
 
         @Override
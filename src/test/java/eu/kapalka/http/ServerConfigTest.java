@@ -0,0 +1,82 @@
+package eu.kapalka.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ServerConfigTest {
+
+    @Test
+    void defaults() {
+        var config = ServerConfig.builder().build();
+        assertThat(config.executionMode()).isEqualTo(ExecutionMode.THREAD_POOL);
+        assertThat(config.maxConcurrentConnections()).isEqualTo(Integer.MAX_VALUE);
+        assertThat(config.acceptors()).isEqualTo(1);
+        assertThat(config.maxRequestsPerConnection()).isEqualTo(10);
+        assertThat(config.receiveBufferSize()).isZero();
+        assertThat(config.tcpNoDelay()).isTrue();
+        assertThat(config.reusePort()).isFalse();
+        assertThat(config.mappedFileMinSize()).isZero();
+        assertThat(ServerConfig.fromProperties(new Properties())).isEqualTo(config);
+        assertThat(config.toBuilder().build()).isEqualTo(config);
+    }
+
+    @Test
+    void fromProperties() {
+        var properties = new Properties();
+        properties.setProperty("executionMode", "SELECTOR");
+        properties.setProperty("acceptors", "4");
+        properties.setProperty("threadPoolSize", " 32 ");
+        properties.setProperty("requestTimeoutMs", "30000");
+        properties.setProperty("sendBufferSize", "65536");
+        properties.setProperty("tcpNoDelay", "false");
+        properties.setProperty("mappedFileMinSize", "1048576");
+
+        var config = ServerConfig.fromProperties(properties);
+        assertThat(config).isEqualTo(ServerConfig.builder()
+                .executionMode(ExecutionMode.SELECTOR)
+                .acceptors(4)
+                .threadPoolSize(32)
+                .requestTimeoutMs(30_000)
+                .sendBufferSize(65_536)
+                .tcpNoDelay(false)
+                .mappedFileMinSize(1_048_576)
+                .build());
+    }
+
+    @Test
+    void invalidProperties() {
+        assertThatThrownBy(() -> ServerConfig.fromProperties(properties("threadPoolSiz", "8")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("threadPoolSiz");
+        assertThatThrownBy(() -> ServerConfig.fromProperties(properties("backlogSize", "many")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("backlogSize");
+        assertThatThrownBy(() -> ServerConfig.fromProperties(properties("executionMode", "FORK")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ServerConfig.fromProperties(properties("reusePort", "yes")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ServerConfig.fromProperties(properties("maxLineLength", "0")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("maxLineLength");
+    }
+
+    @Test
+    void parametersValidated() {
+        assertThatThrownBy(() -> ServerConfig.builder().maxConcurrentConnections(0).build())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ServerConfig.builder().executionMode(null).build())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ServerConfig.builder().receiveBufferSize(-1).build())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Properties properties(String name, String value) {
+        var properties = new Properties();
+        properties.setProperty(name, value);
+        return properties;
+    }
+}
@@ -0,0 +1,110 @@
+package eu.kapalka.http.handler;
+
+import eu.kapalka.http.TestBase;
+import eu.kapalka.http.repository.BlobRepository;
+import eu.kapalka.http.repository.Durability;
+import eu.kapalka.http.request.HttpMethod;
+import eu.kapalka.http.request.RequestBody;
+import eu.kapalka.http.request.ValidRequest;
+import eu.kapalka.http.response.HttpStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlobStoreRequestHandlerTest extends TestBase {
+
+    @TempDir
+    Path basePath;
+
+    private BlobStoreRequestHandler handler;
+
+    @BeforeEach
+    void setup() throws IOException {
+        handler = new BlobStoreRequestHandler(new BlobRepository(basePath, 16, Durability.NONE));
+    }
+
+    @Test
+    void putGetDelete() throws IOException {
+        var response = handler.handle(putRequest("contents"), "/key");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.CREATED);
+        var etag = response.getHeaders().get("ETag");
+        assertThat(etag).isNotNull();
+
+        response = handler.handle(request(HttpMethod.GET), "/key");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getContentType()).isEqualTo("application/octet-stream");
+        assertThat(response.getHeaders()).containsEntry("ETag", etag);
+        assertThat(response.getBodyLength()).isEqualTo(8);
+        assertThat(Files.readString(response.getBodyFile())).isEqualTo("contents"); // Sent directly from the file
+
+        assertThat(handler.handle(putRequest("replaced"), "/key").getStatus()).isEqualTo(HttpStatus.NO_CONTENT);
+
+        assertThat(handler.handle(request(HttpMethod.DELETE), "/key").getStatus()).isEqualTo(HttpStatus.NO_CONTENT);
+        assertThat(handler.handle(request(HttpMethod.GET), "/key").getStatus()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(handler.handle(request(HttpMethod.DELETE), "/key").getStatus()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void tooLargeBody() {
+        var response = handler.handle(putRequest("x".repeat(17)), "/key");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.CONTENT_TOO_LARGE);
+    }
+
+    @Test
+    void tooLargeBodyNotRead() {
+        var body = RequestBody.of(InputStream.nullInputStream(), 1_000_000);
+        var request = ValidRequest.builder()
+                .method(HttpMethod.PUT)
+                .uri(uri("/blobs/key"))
+                .body(body)
+                .build();
+        assertThat(handler.handle(request, "/key").getStatus()).isEqualTo(HttpStatus.CONTENT_TOO_LARGE);
+    }
+
+    @Test
+    void tooLargeChunkedBody() {
+        var body = RequestBody.of(asInputStream("x".repeat(17)), RequestBody.UNKNOWN_LENGTH);
+        var request = ValidRequest.builder()
+                .method(HttpMethod.PUT)
+                .uri(uri("/blobs/key"))
+                .body(body)
+                .build();
+        assertThat(handler.handle(request, "/key").getStatus()).isEqualTo(HttpStatus.CONTENT_TOO_LARGE);
+        assertThat(handler.handle(request(HttpMethod.GET), "/key").getStatus()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void missingKey() {
+        assertThat(handler.handle(request(HttpMethod.GET), "").getStatus()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void methodNotAllowed() {
+        var response = handler.handle(request(HttpMethod.POST), "/key");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.METHOD_NOT_ALLOWED);
+        assertThat(response.getHeaders()).containsEntry("Allow", "GET, HEAD, PUT, DELETE");
+    }
+
+    private static ValidRequest putRequest(String body) {
+        return ValidRequest.builder()
+                .method(HttpMethod.PUT)
+                .uri(uri("/blobs/key"))
+                .body(RequestBody.of(body.getBytes(StandardCharsets.UTF_8)))
+                .build();
+    }
+
+    private static ValidRequest request(HttpMethod method) {
+        return ValidRequest.builder()
+                .method(method)
+                .uri(uri("/blobs/key"))
+                .build();
+    }
+}
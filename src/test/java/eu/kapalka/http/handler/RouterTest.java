@@ -0,0 +1,190 @@
+package eu.kapalka.http.handler;
+
+import eu.kapalka.http.TestBase;
+import eu.kapalka.http.request.HttpMethod;
+import eu.kapalka.http.request.ValidRequest;
+import eu.kapalka.http.response.Response;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Map;
+import java.util.Set;
+
+import static eu.kapalka.http.request.HttpMethod.DELETE;
+import static eu.kapalka.http.request.HttpMethod.GET;
+import static eu.kapalka.http.request.HttpMethod.HEAD;
+import static eu.kapalka.http.request.HttpMethod.POST;
+import static eu.kapalka.http.request.HttpMethod.PUT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RouterTest extends TestBase {
+
+    private final ResourceRequestHandler rootHandler = new NamedHandler("root");
+    private final ResourceRequestHandler staticHandler = new NamedHandler("static");
+    private final ResourceRequestHandler imagesHandler = new NamedHandler("images");
+    private final ResourceRequestHandler userHandler = new NamedHandler("user");
+    private final ResourceRequestHandler ordersHandler = new NamedHandler("orders");
+    private final ResourceRequestHandler meHandler = new NamedHandler("me");
+
+    @Test
+    void longestPrefixRegardlessOfOrder() {
+        var router = Router.builder()
+                .route("/", rootHandler)
+                .route("/static/images/", imagesHandler)
+                .route("/static/", staticHandler)
+                .build();
+
+        assertMatch(router, GET, "/static/images/a.png", imagesHandler, "a.png");
+        assertMatch(router, GET, "/static/style.css", staticHandler, "style.css");
+        assertMatch(router, GET, "/static/", staticHandler, "");
+        assertMatch(router, GET, "/static", rootHandler, "static");
+        assertMatch(router, GET, "/", rootHandler, "");
+    }
+
+    @Test
+    void noMatch() {
+        var router = Router.builder()
+                .route("/static/", staticHandler)
+                .route("/stats", rootHandler)
+                .build();
+
+        assertThat(router.match(GET, "/stat")).isEmpty();
+        assertThat(router.match(GET, "/other")).isEmpty();
+        assertThat(Router.builder().build().match(GET, "/")).isEmpty();
+    }
+
+    @Test
+    void prefixSplitsTrieNodes() {
+        // Labels of inserted routes are split into shared prefixes
+        var router = Router.builder()
+                .route("/images", imagesHandler)
+                .route("/imports", staticHandler)
+                .route("/im", rootHandler)
+                .build();
+
+        assertMatch(router, GET, "/images/x", imagesHandler, "/x");
+        assertMatch(router, GET, "/imports", staticHandler, "");
+        assertMatch(router, GET, "/impossible", rootHandler, "possible");
+    }
+
+    @Test
+    void pathParameters() {
+        var router = Router.builder()
+                .route("/users/{id}", userHandler)
+                .route("/users/{id}/orders/{orderId}", ordersHandler)
+                .build();
+
+        var match = assertMatch(router, GET, "/users/42", userHandler, "");
+        assertThat(match.pathParameters()).isEqualTo(Map.of("id", "42"));
+
+        match = assertMatch(router, GET, "/users/42/orders/7/items", ordersHandler, "/items");
+        assertThat(match.pathParameters()).containsExactly(Map.entry("id", "42"), Map.entry("orderId", "7"));
+
+        // Parameters match non-empty segments only
+        assertThat(router.match(GET, "/users/")).isEmpty();
+        match = assertMatch(router, GET, "/users/42/orders/", userHandler, "/orders/");
+        assertThat(match.pathParameters()).isEqualTo(Map.of("id", "42"));
+    }
+
+    @Test
+    void literalPreferredOverParameter() {
+        var router = Router.builder()
+                .route("/users/{id}", userHandler)
+                .route("/users/me", meHandler)
+                .route("/users/{id}/orders", ordersHandler)
+                .build();
+
+        var match = assertMatch(router, GET, "/users/me", meHandler, "");
+        assertThat(match.pathParameters()).isEmpty();
+        assertMatch(router, GET, "/users/mel", userHandler, "");
+        // Longer match through the parameter wins over the shorter literal match
+        match = assertMatch(router, GET, "/users/me/orders", ordersHandler, "");
+        assertThat(match.pathParameters()).isEqualTo(Map.of("id", "me"));
+    }
+
+    @Test
+    void methodSpecificRoutes() {
+        var router = Router.builder()
+                .route(GET, "/items/", staticHandler)
+                .route(PUT, "/items/", userHandler)
+                .route("/", rootHandler)
+                .build();
+
+        assertMatch(router, GET, "/items/1", staticHandler, "1");
+        assertMatch(router, HEAD, "/items/1", staticHandler, "1");
+        assertMatch(router, PUT, "/items/1", userHandler, "1");
+
+        // Not routed to the less specific route
+        var match = router.match(DELETE, "/items/1").orElseThrow();
+        assertThat(match.isMethodAllowed()).isFalse();
+        assertThat(match.allowedMethods()).isEqualTo(Set.of(GET, HEAD, PUT));
+    }
+
+    @Test
+    void methodSpecificRouteOverridesAnyMethodRoute() {
+        var router = Router.builder()
+                .route("/items/", rootHandler)
+                .route(POST, "/items/", userHandler)
+                .build();
+
+        assertMatch(router, POST, "/items/1", userHandler, "1");
+        assertMatch(router, GET, "/items/1", rootHandler, "1");
+        assertThat(router.match(DELETE, "/items/1").orElseThrow().allowedMethods())
+                .containsExactlyInAnyOrder(HttpMethod.values());
+    }
+
+    @Test
+    void builderReusable() {
+        var builder = Router.builder().route("/a", rootHandler);
+        var router = builder.build();
+        var newRouter = builder.route("/b", staticHandler).build();
+
+        assertThat(router.match(GET, "/b")).isEmpty(); // Unaffected by later routes
+        assertMatch(newRouter, GET, "/a", rootHandler, "");
+        assertMatch(newRouter, GET, "/b", staticHandler, "");
+    }
+
+    @Test
+    void duplicateRoute() {
+        var builder = Router.builder()
+                .route("/a", rootHandler)
+                .route(GET, "/b", rootHandler);
+
+        assertThatThrownBy(() -> builder.route("/a", staticHandler)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder.route(GET, "/b", staticHandler))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void conflictingParameterNames() {
+        var builder = Router.builder().route("/users/{id}", userHandler);
+        assertThatThrownBy(() -> builder.route("/users/{name}/orders", ordersHandler))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "users", "/users/{}", "/users/{id", "/users/x{id}", "/users/{id}x", "/users/{a/b}"})
+    void invalidPattern(String pattern) {
+        var builder = Router.builder();
+        assertThatThrownBy(() -> builder.route(pattern, rootHandler)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Router.RouteMatch assertMatch(Router router, HttpMethod method, String path,
+                                                 ResourceRequestHandler expectedHandler, String expectedRelativePath) {
+        var match = router.match(method, path);
+        assertThat(match).isPresent();
+        assertThat(match.get().handler()).isSameAs(expectedHandler);
+        assertThat(match.get().relativePath()).isEqualTo(expectedRelativePath);
+        return match.get();
+    }
+
+    private record NamedHandler(String name) implements ResourceRequestHandler {
+
+        @Override
+        public Response handle(ValidRequest request, String relativePath) {
+            return Response.builder().body(name).build();
+        }
+    }
+}
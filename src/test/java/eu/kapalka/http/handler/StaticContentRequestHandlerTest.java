@@ -1,13 +1,27 @@
 package eu.kapalka.http.handler;
 
 import eu.kapalka.http.TestBase;
+import eu.kapalka.http.repository.CompressedContentCache;
+import eu.kapalka.http.repository.ContentEncoding;
+import eu.kapalka.http.repository.FileCache;
 import eu.kapalka.http.repository.StaticFileRepository;
 import eu.kapalka.http.request.HttpMethod;
 import eu.kapalka.http.request.ValidRequest;
 import eu.kapalka.http.response.HttpStatus;
+import eu.kapalka.http.response.Response;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -27,6 +41,238 @@ public class StaticContentRequestHandlerTest extends TestBase {
         assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
         assertThat(response.getContentType()).isEqualTo("text/plain");
         assertThat(response.getBodyLength()).isEqualTo(13);
+        assertThat(response.getBodyFile()).isEqualTo(repositoryBasePath.resolve("file.txt").toAbsolutePath());
+    }
+
+    @Test
+    void validatorHeaders() throws IOException {
+        var response = handler.handle(getFileRequest().build(), "/file.txt");
+        var lastModified = Files.getLastModifiedTime(repositoryBasePath.resolve("file.txt")).toInstant();
+        assertThat(response.getHeaders())
+                .containsKey("ETag")
+                .containsEntry("Last-Modified", formatHttpDate(lastModified));
+    }
+
+    @Test
+    void notModifiedIfEntityTagMatches() {
+        var etag = handler.handle(getFileRequest().build(), "/file.txt").getHeaders().get("ETag");
+        var response = handler.handle(getFileRequest().ifNoneMatch("\"other\", " + etag).build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getBody()).isNull();
+        assertThat(response.getHeaders()).containsEntry("ETag", etag);
+
+        // Weak comparison, and "*" matches any version of an existing resource
+        response = handler.handle(getFileRequest().ifNoneMatch("W/" + etag).build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        response = handler.handle(getFileRequest().ifNoneMatch("*").build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
+    @Test
+    void modifiedIfEntityTagDiffers() {
+        var response = handler.handle(getFileRequest().ifNoneMatch("\"other\"").build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBodyLength()).isEqualTo(13);
+    }
+
+    @Test
+    void notModifiedSince() throws IOException {
+        var lastModified = Files.getLastModifiedTime(repositoryBasePath.resolve("file.txt")).toInstant();
+        var response = handler.handle(
+                getFileRequest().ifModifiedSince(formatHttpDate(lastModified)).build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        response = handler.handle(
+                getFileRequest().ifModifiedSince(formatHttpDate(lastModified.minusSeconds(1))).build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
+
+        // Invalid dates are ignored, If-Modified-Since is ignored if If-None-Match is present
+        response = handler.handle(getFileRequest().ifModifiedSince("yesterday").build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
+        response = handler.handle(getFileRequest()
+                .ifModifiedSince(formatHttpDate(lastModified))
+                .ifNoneMatch("\"other\"")
+                .build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void singleRange() throws IOException {
+        var response = handler.handle(getFileRequest().range("bytes=5-8").build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders()).containsEntry("Content-Range", "bytes 5-8/13");
+        assertThat(response.getContentType()).isEqualTo("text/plain");
+        assertThat(response.getBodyFileOffset()).isEqualTo(5);
+        assertThat(bodyToString(response)).isEqualTo("cont");
+
+        response = handler.handle(getFileRequest().range("bytes=-3").build(), "/file.txt");
+        assertThat(response.getHeaders()).containsEntry("Content-Range", "bytes 10-12/13");
+        assertThat(bodyToString(response)).isEqualTo("nt\n");
+    }
+
+    @Test
+    void multipleRanges() throws IOException {
+        var response = handler.handle(getFileRequest().range("bytes=0-3,5-").build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getContentType()).startsWith("multipart/byteranges; boundary=");
+        var boundary = response.getContentType().substring(response.getContentType().indexOf('=') + 1);
+        var body = bodyToString(response);
+        assertThat(body).isEqualTo("""
+                --%1$s\r
+                Content-Type: text/plain\r
+                Content-Range: bytes 0-3/13\r
+                \r
+                Test\r
+                --%1$s\r
+                Content-Type: text/plain\r
+                Content-Range: bytes 5-12/13\r
+                \r
+                content
+                \r
+                --%1$s--\r
+                """.formatted(boundary));
+        assertThat(response.getBodyLength()).isEqualTo(body.length());
+    }
+
+    @Test
+    void rangeNotSatisfiable() {
+        var response = handler.handle(getFileRequest().range("bytes=13-20").build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.RANGE_NOT_SATISFIABLE);
+        assertThat(response.getHeaders()).containsEntry("Content-Range", "bytes */13");
+    }
+
+    @Test
+    void rangeIgnored() {
+        // Invalid header, HEAD request, and outdated If-Range validator: the full file is sent
+        var response = handler.handle(getFileRequest().range("bytes=5-1").build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
+        response = handler.handle(getFileRequest().method(HttpMethod.HEAD).range("bytes=0-1").build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
+        response = handler.handle(getFileRequest().range("bytes=0-1").ifRange("\"other\"").build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBodyLength()).isEqualTo(13);
+
+        var etag = response.getHeaders().get("ETag");
+        response = handler.handle(getFileRequest().range("bytes=0-1").ifRange(etag).build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+    }
+
+    @Test
+    void entityTagOfRecentlyModifiedFileBecomesStrong(@TempDir Path baseDir) throws Exception {
+        Files.writeString(baseDir.resolve("file.txt"), "Test content\n");
+        var handler = new StaticContentRequestHandler(
+                new StaticFileRepository(baseDir, new FileCache(100, 10_000, 60_000)));
+        var response = handler.handle(getFileRequest().build(), "/file.txt");
+        assertThat(response.getHeaders().get("ETag")).startsWith("W/");
+
+        Thread.sleep(1_100);
+        response = handler.handle(getFileRequest().build(), "/file.txt");
+        var etag = response.getHeaders().get("ETag");
+        assertThat(etag).startsWith("\"");
+        response = handler.handle(getFileRequest().range("bytes=0-1").ifRange(etag).build(), "/file.txt");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+    }
+
+    @Test
+    void precompressedVariant(@TempDir Path baseDir) throws IOException {
+        writeFile(baseDir.resolve("page.html"), "<html></html>");
+        writeFile(baseDir.resolve("page.html.gz"), "gzip");
+        writeFile(baseDir.resolve("page.html.br"), "brotli");
+        var handler = new StaticContentRequestHandler(new StaticFileRepository(baseDir));
+
+        var response = handler.handle(getFileRequest().acceptEncoding("gzip, deflate, br").build(), "/page.html");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getContentType()).isEqualTo("text/html");
+        assertThat(response.getHeaders())
+                .containsEntry("Content-Encoding", "br")
+                .containsEntry("Vary", "Accept-Encoding");
+        assertThat(bodyToString(response)).isEqualTo("brotli");
+
+        response = handler.handle(getFileRequest().acceptEncoding("gzip, br;q=0").build(), "/page.html");
+        assertThat(response.getHeaders()).containsEntry("Content-Encoding", "gzip");
+        assertThat(bodyToString(response)).isEqualTo("gzip");
+        var etag = response.getHeaders().get("ETag");
+
+        response = handler.handle(getFileRequest().build(), "/page.html");
+        assertThat(response.getHeaders())
+                .doesNotContainKey("Content-Encoding")
+                .containsEntry("Vary", "Accept-Encoding");
+        assertThat(response.getHeaders().get("ETag")).isNotEqualTo(etag);
+        assertThat(bodyToString(response)).isEqualTo("<html></html>");
+
+        // Validation of the compressed representation, and ranges of the uncompressed file
+        response = handler.handle(getFileRequest().acceptEncoding("gzip").ifNoneMatch(etag).build(), "/page.html");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        response = handler.handle(getFileRequest().acceptEncoding("gzip").range("bytes=1-4").build(), "/page.html");
+        assertThat(response.getHeaders()).doesNotContainKey("Content-Encoding");
+        assertThat(bodyToString(response)).isEqualTo("html");
+    }
+
+    @Test
+    void validatorsOfPrecompressedVariant(@TempDir Path baseDir) throws IOException {
+        writeFile(baseDir.resolve("page.html"), "<html></html>");
+        writeFile(baseDir.resolve("page.html.gz"), "gzip");
+        var variantModified = Instant.parse("2024-06-01T00:00:00Z");
+        Files.setLastModifiedTime(baseDir.resolve("page.html.gz"), FileTime.from(variantModified));
+        var handler = new StaticContentRequestHandler(new StaticFileRepository(baseDir));
+
+        var response = handler.handle(getFileRequest().acceptEncoding("gzip").build(), "/page.html");
+        assertThat(response.getHeaders())
+                .containsEntry("Content-Encoding", "gzip")
+                .containsEntry("Last-Modified", formatHttpDate(variantModified));
+        // The original file is older, but the variant was modified since
+        response = handler.handle(getFileRequest()
+                .acceptEncoding("gzip")
+                .ifModifiedSince(formatHttpDate(Instant.parse("2024-01-01T00:00:00Z")))
+                .build(), "/page.html");
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void outdatedPrecompressedVariantIgnored(@TempDir Path baseDir) throws IOException {
+        writeFile(baseDir.resolve("page.html"), "<html></html>");
+        writeFile(baseDir.resolve("page.html.gz"), "gzip");
+        var outdated = FileTime.from(Instant.parse("2020-01-01T00:00:00Z"));
+        Files.setLastModifiedTime(baseDir.resolve("page.html.gz"), outdated);
+        var handler = new StaticContentRequestHandler(new StaticFileRepository(baseDir));
+
+        var response = handler.handle(getFileRequest().acceptEncoding("gzip").build(), "/page.html");
+        assertThat(response.getHeaders()).doesNotContainKey("Content-Encoding");
+    }
+
+    @Test
+    void compressedOnTheFly(@TempDir Path baseDir) throws IOException {
+        var text = "<p>Compressible text</p>\n".repeat(100);
+        writeFile(baseDir.resolve("page.html"), text);
+        writeFile(baseDir.resolve("image.png"), text);
+        var repository = new StaticFileRepository(baseDir, null, null, new CompressedContentCache(100_000, 1_000_000));
+        var handler = new StaticContentRequestHandler(repository);
+
+        var response = handler.handle(getFileRequest().acceptEncoding("br, gzip").build(), "/page.html");
+        assertThat(response.getHeaders()).containsEntry("Content-Encoding", "gzip");
+        assertThat(response.getHeaders().get("ETag")).endsWith("-gzip\"");
+        assertThat(response.getBodyLength()).isLessThan(text.length());
+        try (var body = new GZIPInputStream(response.getBody().get())) {
+            assertThat(new String(body.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(text);
+        }
+
+        response = handler.handle(getFileRequest().acceptEncoding("gzip").build(), "/image.png");
+        assertThat(response.getHeaders())
+                .doesNotContainKey("Content-Encoding")
+                .doesNotContainKey("Vary");
+    }
+
+    @Test
+    void acceptedEncodings() {
+        assertThat(StaticContentRequestHandler.acceptedEncodings("gzip, deflate, br"))
+                .containsExactly(ContentEncoding.BROTLI, ContentEncoding.GZIP);
+        assertThat(StaticContentRequestHandler.acceptedEncodings("GZIP;q=0.5, br;q=0"))
+                .containsExactly(ContentEncoding.GZIP);
+        assertThat(StaticContentRequestHandler.acceptedEncodings("*, gzip;q=0"))
+                .containsExactly(ContentEncoding.BROTLI);
+        assertThat(StaticContentRequestHandler.acceptedEncodings("x-gzip")).containsExactly(ContentEncoding.GZIP);
+        assertThat(StaticContentRequestHandler.acceptedEncodings("identity")).isEmpty();
+        assertThat(StaticContentRequestHandler.acceptedEncodings("")).isEmpty();
     }
 
     @Test
@@ -48,4 +294,27 @@ public class StaticContentRequestHandlerTest extends TestBase {
         var response = handler.handle(request, "/file.txt");
         assertThat(response.getStatus()).isEqualTo(HttpStatus.METHOD_NOT_ALLOWED);
     }
+
+    private ValidRequest.Builder getFileRequest() {
+        return ValidRequest.builder()
+                .method(HttpMethod.GET)
+                .uri(uri("/static/file.txt"));
+    }
+
+    private static void writeFile(Path file, String content) throws IOException {
+        Files.writeString(file, content);
+        // Files modified very recently get weak entity tags
+        Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2024-01-01T00:00:00Z")));
+    }
+
+    private static String bodyToString(Response response) throws IOException {
+        try (var body = response.getBody().get()) {
+            return new String(body.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static String formatHttpDate(Instant instant) {
+        return DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+                .format(instant.atOffset(ZoneOffset.UTC));
+    }
 }
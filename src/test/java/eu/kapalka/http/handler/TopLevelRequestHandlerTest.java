@@ -1,6 +1,7 @@
 package eu.kapalka.http.handler;
 
 import eu.kapalka.http.TestBase;
+import eu.kapalka.http.metrics.ServerMetrics;
 import eu.kapalka.http.request.HttpMethod;
 import eu.kapalka.http.request.InvalidRequest;
 import eu.kapalka.http.request.ValidRequest;
@@ -11,8 +12,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 public class TopLevelRequestHandlerTest extends TestBase {
@@ -66,6 +69,40 @@ public class TopLevelRequestHandlerTest extends TestBase {
         verifyNoMoreInteractions(responseWriter);
     }
 
+    @Test
+    void keepAliveNotAllowed() throws IOException {
+        var request = ValidRequest.builder()
+                .method(HttpMethod.GET)
+                .uri(uri("/static/file.txt"))
+                .httpMinorVersion((byte) 1)
+                .keepAlive(true)
+                .build();
+
+        var response = someResponse();
+        when(staticHandler.handle(request, "/file.txt")).thenReturn(response);
+        var keepAlive = topLevelHandler.handleRequest(request, responseWriter, false);
+        assertThat(keepAlive).isFalse(); // Despite keep-alive requested by the client
+        verify(responseWriter).writeHeaders(response, false);
+        verify(responseWriter).writeBody(response);
+    }
+
+    @Test
+    void streamedBodyForHttp10ClosesConnection() throws IOException {
+        var request = ValidRequest.builder()
+                .method(HttpMethod.GET)
+                .uri(uri("/static/file.txt"))
+                .httpMinorVersion((byte) 0)
+                .keepAlive(true)
+                .build();
+
+        var response = Response.builder().body(output -> output.write(1)).build();
+        when(staticHandler.handle(request, "/file.txt")).thenReturn(response);
+        var keepAlive = topLevelHandler.handleRequest(request, responseWriter);
+        assertThat(keepAlive).isFalse(); // HTTP 1.0 clients do not support chunked bodies
+        verify(responseWriter).writeHeaders(response, false);
+        verify(responseWriter).writeBody(response);
+    }
+
     @Test
     void noHandlerForPrefix() throws IOException {
         var request = ValidRequest.builder()
@@ -79,6 +116,54 @@ public class TopLevelRequestHandlerTest extends TestBase {
         assertThat(responseWriterStub.bodyWritten).isTrue();
     }
 
+    @Test
+    void longestPrefixRegisteredAfterRootHandler() throws IOException {
+        var rootHandler = mock(ResourceRequestHandler.class);
+        topLevelHandler.registerRequestHandler("/", rootHandler);
+        var nestedHandler = mock(ResourceRequestHandler.class);
+        topLevelHandler.registerRequestHandler("/static/nested/", nestedHandler);
+        var request = ValidRequest.builder()
+                .method(HttpMethod.GET)
+                .uri(uri("/static/nested/file.txt"))
+                .build();
+
+        when(nestedHandler.handle(request, "file.txt")).thenReturn(someResponse());
+        topLevelHandler.handleRequest(request, responseWriterStub);
+        verifyNoInteractions(rootHandler, staticHandler);
+        verify(nestedHandler).handle(request, "file.txt");
+    }
+
+    @Test
+    void pathParameters() throws IOException {
+        var userHandler = mock(ResourceRequestHandler.class);
+        topLevelHandler.registerRequestHandler(HttpMethod.GET, "/users/{id}", userHandler);
+        var request = ValidRequest.builder()
+                .method(HttpMethod.GET)
+                .uri(uri("/users/42"))
+                .build();
+
+        var routedRequest = request.withPathParameters(Map.of("id", "42"));
+        when(userHandler.handle(routedRequest, "")).thenReturn(someResponse());
+        topLevelHandler.handleRequest(request, responseWriterStub);
+        assertThat(responseWriterStub.writtenResponse.getStatus()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void methodNotAllowed() throws IOException {
+        var userHandler = mock(ResourceRequestHandler.class);
+        topLevelHandler.registerRequestHandler(HttpMethod.GET, "/users/{id}", userHandler);
+        topLevelHandler.registerRequestHandler(HttpMethod.DELETE, "/users/{id}", userHandler);
+        var request = ValidRequest.builder()
+                .method(HttpMethod.POST)
+                .uri(uri("/users/42"))
+                .build();
+
+        topLevelHandler.handleRequest(request, responseWriterStub);
+        verifyNoInteractions(userHandler);
+        assertThat(responseWriterStub.writtenResponse.getStatus()).isEqualTo(HttpStatus.METHOD_NOT_ALLOWED);
+        assertThat(responseWriterStub.writtenResponse.getHeaders()).containsEntry("Allow", "GET, HEAD, DELETE");
+    }
+
     @Test
     void invalidRequest() throws IOException {
         var request = new InvalidRequest(HttpStatus.BAD_REQUEST, "Missing method");
@@ -89,6 +174,39 @@ public class TopLevelRequestHandlerTest extends TestBase {
         assertThat(responseWriterStub.bodyWritten).isTrue();
     }
 
+    @Test
+    void requestsRecordedInMetrics() throws IOException {
+        var request = ValidRequest.builder()
+                .method(HttpMethod.GET)
+                .uri(uri("/static/file.txt"))
+                .build();
+        when(staticHandler.handle(request, "/file.txt")).thenReturn(someResponse());
+        topLevelHandler.handleRequest(request, responseWriterStub);
+        topLevelHandler.handleRequest(request, responseWriterStub);
+        topLevelHandler.handleRequest(ValidRequest.builder()
+                .method(HttpMethod.GET)
+                .uri(uri("/unknown/file.txt"))
+                .build(), responseWriterStub);
+        topLevelHandler.handleRequest(new InvalidRequest(HttpStatus.BAD_REQUEST, "Missing method"),
+                responseWriterStub);
+
+        var failingRequest = ValidRequest.builder()
+                .method(HttpMethod.GET)
+                .uri(uri("/other/file.txt"))
+                .build();
+        when(otherHandler.handle(failingRequest, "/file.txt")).thenThrow(new IllegalStateException("Bug"));
+        assertThatThrownBy(() -> topLevelHandler.handleRequest(failingRequest, responseWriterStub))
+                .isInstanceOf(IllegalStateException.class);
+
+        var metrics = topLevelHandler.getMetrics();
+        assertThat(metrics.getRequestCount("/static", HttpStatus.OK)).isEqualTo(2);
+        assertThat(metrics.getRequestCount(ServerMetrics.NO_HANDLER, HttpStatus.NOT_FOUND)).isEqualTo(1);
+        assertThat(metrics.getRequestCount(ServerMetrics.INVALID_REQUEST, HttpStatus.BAD_REQUEST)).isEqualTo(1);
+        assertThat(metrics.getRequestCount("/other", HttpStatus.INTERNAL_SERVER_ERROR)).isEqualTo(1);
+        assertThat(metrics.getHandlerTime().getCount()).isEqualTo(3);
+        assertThat(metrics.getWriteTime().getCount()).isEqualTo(3);
+    }
+
     private static Response someResponse() {
         return Response.builder().body("Some response").build();
     }
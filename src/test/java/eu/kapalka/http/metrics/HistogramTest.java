@@ -0,0 +1,46 @@
+package eu.kapalka.http.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HistogramTest {
+
+    @Test
+    void valuesCountedInBuckets() {
+        var histogram = new Histogram(10, 100, 1000);
+        histogram.record(0);
+        histogram.record(10); // Upper bounds are inclusive
+        histogram.record(11);
+        histogram.record(1000);
+        histogram.record(5000);
+
+        assertThat(histogram.getCumulativeCounts()).containsExactly(2, 3, 4, 5);
+        assertThat(histogram.getCount()).isEqualTo(5);
+        assertThat(histogram.getSum()).isEqualTo(6021);
+    }
+
+    @Test
+    void concurrentUpdates() throws InterruptedException {
+        var histogram = new Histogram(10, 100);
+        var threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    histogram.record(j % 200);
+                }
+            });
+            threads[i].start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+        assertThat(histogram.getCumulativeCounts()).containsExactly(4 * 550, 4 * 5050, 4 * 10_000);
+    }
+
+    @Test
+    void invalidBounds() {
+        assertThatThrownBy(() -> new Histogram(10, 10)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
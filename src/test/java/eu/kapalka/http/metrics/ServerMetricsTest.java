@@ -0,0 +1,88 @@
+package eu.kapalka.http.metrics;
+
+import eu.kapalka.http.response.HttpStatus;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServerMetricsTest {
+
+    @Test
+    void prometheusText() {
+        var metrics = new ServerMetrics();
+        metrics.connectionAccepted(0);
+        metrics.connectionAccepted(1);
+        metrics.connectionClosed();
+        metrics.requestHandled("/static/", HttpStatus.OK);
+        metrics.requestHandled("/static/", HttpStatus.OK);
+        metrics.requestHandled("/static/", HttpStatus.NOT_FOUND);
+        metrics.requestHandled("/say \"hi\"", HttpStatus.OK);
+        metrics.requestOnReusedConnection();
+        metrics.addBytesReceived(100);
+        metrics.addBytesSent(2000);
+        metrics.timeout(ServerMetrics.Timeout.IDLE);
+        metrics.connectionShed();
+        metrics.recordQueueTime(30_000_000);
+        metrics.recordParseTime(20_000);
+        metrics.recordHandlerTime(2_000_000_000);
+
+        var text = metrics.toPrometheusText();
+        assertThat(text).contains("""
+                # HELP http_connections_accepted_total Connections accepted
+                # TYPE http_connections_accepted_total counter
+                http_connections_accepted_total 2
+                # HELP http_acceptor_connections_accepted_total Connections accepted by acceptor
+                # TYPE http_acceptor_connections_accepted_total counter
+                http_acceptor_connections_accepted_total{acceptor="0"} 1
+                http_acceptor_connections_accepted_total{acceptor="1"} 1
+                """);
+        assertThat(text).contains("""
+                http_connections_active 1
+                """);
+        assertThat(text).contains("""
+                # TYPE http_requests_total counter
+                http_requests_total{handler="/say \\"hi\\"",status="200"} 1
+                http_requests_total{handler="/static/",status="200"} 2
+                http_requests_total{handler="/static/",status="404"} 1
+                """);
+        assertThat(text).contains("http_reused_connection_requests_total 1\n");
+        assertThat(text).contains("http_received_bytes_total 100\n");
+        assertThat(text).contains("http_sent_bytes_total 2000\n");
+        assertThat(text).contains("""
+                http_timeouts_total{type="request"} 0
+                http_timeouts_total{type="read"} 0
+                http_timeouts_total{type="idle"} 1
+                """);
+        assertThat(text).contains("http_shed_connections_total 1\n");
+        assertThat(text).contains("""
+                http_queue_wait_seconds_bucket{le="0.025"} 0
+                http_queue_wait_seconds_bucket{le="0.05"} 1
+                """);
+        assertThat(text).contains("""
+                http_request_parse_seconds_bucket{le="0.00001"} 0
+                http_request_parse_seconds_bucket{le="0.000025"} 1
+                """);
+        assertThat(text).contains("""
+                http_handler_seconds_bucket{le="1"} 0
+                http_handler_seconds_bucket{le="2.5"} 1
+                """);
+        assertThat(text).contains("""
+                http_handler_seconds_bucket{le="+Inf"} 1
+                http_handler_seconds_sum 2
+                http_handler_seconds_count 1
+                """);
+        assertThat(text).contains("""
+                http_response_write_seconds_sum 0
+                http_response_write_seconds_count 0
+                """);
+    }
+
+    @Test
+    void requestCounts() {
+        var metrics = new ServerMetrics();
+        metrics.requestHandled(ServerMetrics.INVALID_REQUEST, HttpStatus.BAD_REQUEST);
+        assertThat(metrics.getRequestCount(ServerMetrics.INVALID_REQUEST, HttpStatus.BAD_REQUEST)).isEqualTo(1);
+        assertThat(metrics.getRequestCount(ServerMetrics.INVALID_REQUEST, HttpStatus.OK)).isZero();
+        assertThat(metrics.getRequestCount("/other", HttpStatus.BAD_REQUEST)).isZero();
+    }
+}
@@ -0,0 +1,108 @@
+package eu.kapalka.http.repository;
+
+import eu.kapalka.http.TestBase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BlobRepositoryTest extends TestBase {
+
+    @TempDir
+    Path basePath;
+
+    @ParameterizedTest
+    @EnumSource(Durability.class)
+    void putFindDelete(Durability durability) throws IOException {
+        try (var repository = new BlobRepository(basePath, 1024, durability)) {
+            assertThat(repository.find("/a/b.bin")).isEmpty();
+
+            var storedBlob = repository.put("/a/b.bin", asInputStream("contents")).orElseThrow();
+            assertThat(storedBlob.created()).isTrue();
+            var blob = repository.find("/a/b.bin").orElseThrow();
+            assertThat(blob).isEqualTo(storedBlob.fileInfo());
+            assertThat(blob.size()).isEqualTo(8);
+            assertThat(blob.mimeType()).isEqualTo("application/octet-stream");
+            assertThat(Files.readString(blob.path())).isEqualTo("contents");
+
+            storedBlob = repository.put("/a/b.bin", asInputStream("new contents")).orElseThrow();
+            assertThat(storedBlob.created()).isFalse();
+            assertThat(Files.readString(repository.find("/a/b.bin").orElseThrow().path())).isEqualTo("new contents");
+
+            assertThat(repository.delete("/a/b.bin")).isTrue();
+            assertThat(repository.find("/a/b.bin")).isEmpty();
+            assertThat(repository.delete("/a/b.bin")).isFalse();
+        }
+    }
+
+    @Test
+    void hashedFileNames() throws IOException {
+        var repository = new BlobRepository(basePath, 1024, Durability.NONE);
+        var blobPath = repository.blobPath("/../../etc/passwd");
+        assertThat(blobPath.getParent().getParent()).isEqualTo(basePath.toAbsolutePath());
+        assertThat(blobPath.getFileName().toString())
+                .hasSize(64)
+                .startsWith(blobPath.getParent().getFileName().toString());
+        assertThat(repository.blobPath("/other")).isNotEqualTo(blobPath);
+    }
+
+    @Test
+    void tooLargeBlobNotStored() throws IOException {
+        var repository = new BlobRepository(basePath, 4, Durability.NONE);
+        repository.put("key", asInputStream("abcd")).orElseThrow();
+        assertThat(repository.put("key", asInputStream("abcde"))).isEmpty();
+
+        // The previous version is preserved
+        assertThat(Files.readString(repository.find("key").orElseThrow().path())).isEqualTo("abcd");
+        assertThat(basePath.resolve("tmp")).isEmptyDirectory();
+    }
+
+    @Test
+    void failedWriteLeavesPreviousVersion() throws IOException {
+        var repository = new BlobRepository(basePath, 1024, Durability.NONE);
+        repository.put("key", asInputStream("abcd")).orElseThrow();
+
+        var failingContents = new InputStream() {
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+                if (count++ >= 2) {
+                    throw new IOException("Connection reset");
+                }
+                return 'x';
+            }
+        };
+        assertThatThrownBy(() -> repository.put("key", failingContents)).isInstanceOf(IOException.class);
+        assertThat(Files.readString(repository.find("key").orElseThrow().path())).isEqualTo("abcd");
+        assertThat(basePath.resolve("tmp")).isEmptyDirectory();
+    }
+
+    @Test
+    void sharedGroupCommitScheduler() throws IOException {
+        try (var scheduler = new GroupCommitScheduler(Duration.ZERO, 16)) {
+            var repository = new BlobRepository(basePath, 1024, scheduler);
+            repository.put("key", asInputStream("abcd")).orElseThrow();
+            assertThat(repository.delete("key")).isTrue();
+            assertThat(scheduler.getCommitCount()).isEqualTo(2);
+            assertThat(basePath.resolve("tmp")).isEmptyDirectory();
+        }
+    }
+
+    @Test
+    void leftoverTempFilesDeleted() throws IOException {
+        Files.createDirectories(basePath.resolve("tmp"));
+        Files.writeString(basePath.resolve("tmp/upload-123.tmp"), "partial");
+        new BlobRepository(basePath, 1024, Durability.NONE);
+        assertThat(basePath.resolve("tmp")).isEmptyDirectory();
+    }
+}
@@ -0,0 +1,113 @@
+package eu.kapalka.http.repository;
+
+import eu.kapalka.http.TestBase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CompressedContentCacheTest extends TestBase {
+
+    private static final String TEXT = "All work and no play makes Jack a dull boy.\n".repeat(100);
+
+    @TempDir
+    private Path baseDir;
+
+    @Test
+    void compressedOnce() throws IOException {
+        writeFile("file.txt", TEXT);
+        var cache = new CompressedContentCache(100_000, 1_000_000);
+        var repository = new StaticFileRepository(baseDir, null, null, cache);
+
+        var fileInfo = repository.findFile("/file.txt").get();
+        var compressed = repository.getCompressedContent(fileInfo).get();
+        assertThat(compressed.length).isLessThan(TEXT.length() / 10);
+        assertThat(decompress(compressed)).isEqualTo(TEXT);
+        assertThat(repository.getCompressedContent(fileInfo).get()).isSameAs(compressed);
+
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getTotalSize()).isEqualTo(CompressedContentCache.ENTRY_OVERHEAD_BYTES + compressed.length);
+    }
+
+    @Test
+    void modifiedFileCompressedAgain() throws IOException {
+        var file = writeFile("file.txt", TEXT);
+        var cache = new CompressedContentCache(100_000, 1_000_000);
+        var repository = new StaticFileRepository(baseDir, null, null, cache);
+        repository.getCompressedContent(repository.findFile("/file.txt").get());
+
+        writeFile("file.txt", TEXT.toUpperCase());
+        Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2020-01-01T00:00:00Z")));
+        var compressed = repository.getCompressedContent(repository.findFile("/file.txt").get());
+        assertThat(decompress(compressed.get())).isEqualTo(TEXT.toUpperCase());
+        assertThat(cache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    void notCompressed() throws IOException {
+        var random = new byte[1000];
+        new Random(42).nextBytes(random);
+        Files.setLastModifiedTime(Files.write(baseDir.resolve("random.txt"), random),
+                FileTime.from(Instant.parse("2024-01-01T00:00:00Z")));
+        writeFile("small.txt", "abc");
+        writeFile("large.txt", TEXT);
+        writeFile("image.png", TEXT);
+        var cache = new CompressedContentCache(1_000, 1_000_000);
+        var repository = new StaticFileRepository(baseDir, null, null, cache);
+
+        // Incompressible, too small, too large, and not a compressible media type
+        for (var path : new String[]{"/random.txt", "/small.txt", "/large.txt", "/image.png"}) {
+            var fileInfo = repository.findFile(path).get();
+            assertThat(repository.getCompressedContent(fileInfo)).isEmpty();
+        }
+        // Incompressible files are remembered
+        repository.getCompressedContent(repository.findFile("/random.txt").get());
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void leastRecentlyUsedEvicted() throws IOException {
+        writeFile("file1.txt", TEXT);
+        writeFile("file2.txt", TEXT.toUpperCase());
+        var cache = new CompressedContentCache(100_000, CompressedContentCache.ENTRY_OVERHEAD_BYTES + 200);
+        var repository = new StaticFileRepository(baseDir, null, null, cache);
+
+        repository.getCompressedContent(repository.findFile("/file1.txt").get());
+        repository.getCompressedContent(repository.findFile("/file2.txt").get());
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+        assertThat(cache.getTotalSize()).isLessThanOrEqualTo(CompressedContentCache.ENTRY_OVERHEAD_BYTES + 200);
+    }
+
+    @Test
+    void invalidSettingsRejected() {
+        assertThatThrownBy(() -> new CompressedContentCache(-1, 1_000)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new CompressedContentCache(Integer.MAX_VALUE + 1L, Long.MAX_VALUE))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Path writeFile(String name, String content) throws IOException {
+        var file = Files.writeString(baseDir.resolve(name), content);
+        // Files modified very recently get weak entity tags, and their compressed contents is not cached
+        Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2024-01-01T00:00:00Z")));
+        return file;
+    }
+
+    private static String decompress(byte[] compressed) throws IOException {
+        try (var input = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
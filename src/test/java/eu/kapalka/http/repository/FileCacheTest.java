@@ -0,0 +1,149 @@
+package eu.kapalka.http.repository;
+
+import eu.kapalka.http.TestBase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileCacheTest extends TestBase {
+
+    @TempDir
+    private Path baseDir;
+
+    @Test
+    void cachedFile() throws IOException {
+        writeFile("file.txt", "abc");
+        var cache = new FileCache(100, 10_000, 60_000);
+        var repository = new StaticFileRepository(baseDir, cache);
+
+        var fileInfo = repository.findFile("/file.txt");
+        assertThat(fileInfo.get().size()).isEqualTo(3);
+        assertThat(repository.getCachedContent(fileInfo.get()).get()).isEqualTo(bytes("abc"));
+        assertThat(repository.findFile("/file.txt")).isEqualTo(fileInfo);
+
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getTotalSize()).isEqualTo(FileCache.ENTRY_OVERHEAD_BYTES + 3);
+    }
+
+    @Test
+    void largeFileContentNotCached() throws IOException {
+        writeFile("file.txt", "abcdef");
+        var cache = new FileCache(5, 10_000, 60_000);
+        var repository = new StaticFileRepository(baseDir, cache);
+
+        var fileInfo = repository.findFile("/file.txt");
+        assertThat(fileInfo.get().size()).isEqualTo(6);
+        assertThat(repository.getCachedContent(fileInfo.get())).isEmpty();
+        repository.findFile("/file.txt");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void modifiedFile() throws IOException {
+        var file = writeFile("file.txt", "abc");
+        var cache = new FileCache(100, 10_000, 0); // Always revalidate
+        var repository = new StaticFileRepository(baseDir, cache);
+        repository.findFile("/file.txt");
+
+        writeFile("file.txt", "xyz1");
+        var fileInfo = repository.findFile("/file.txt");
+        assertThat(repository.getCachedContent(fileInfo.get()).get()).isEqualTo(bytes("xyz1"));
+
+        // Same size, different modification time
+        writeFile("file.txt", "wxyz");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2020-01-01T00:00:00Z")));
+        fileInfo = repository.findFile("/file.txt");
+        assertThat(repository.getCachedContent(fileInfo.get()).get()).isEqualTo(bytes("wxyz"));
+
+        assertThat(cache.getMissCount()).isEqualTo(3);
+        assertThat(cache.getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    void deletedFile() throws IOException {
+        var file = writeFile("file.txt", "abc");
+        var repository = new StaticFileRepository(baseDir, new FileCache(100, 10_000, 0));
+        assertThat(repository.findFile("/file.txt")).isPresent();
+
+        Files.delete(file);
+        assertThat(repository.findFile("/file.txt")).isEmpty();
+    }
+
+    @Test
+    void leastRecentlyUsedEviction() throws IOException {
+        writeFile("a.txt", "a");
+        writeFile("b.txt", "b");
+        writeFile("c.txt", "c");
+        // Room for two entries only
+        var cache = new FileCache(100, 2 * (FileCache.ENTRY_OVERHEAD_BYTES + 1), 60_000);
+        var repository = new StaticFileRepository(baseDir, cache);
+
+        repository.findFile("/a.txt");
+        repository.findFile("/b.txt");
+        repository.findFile("/a.txt");
+        repository.findFile("/c.txt"); // Evicts b.txt
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+
+        repository.findFile("/a.txt");
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        repository.findFile("/b.txt");
+        assertThat(cache.getMissCount()).isEqualTo(4);
+    }
+
+    @Test
+    void missingPrecompressedVariantCached() throws IOException {
+        writeFile("page.html", "<html></html>");
+        var cache = new FileCache(100, 10_000, 60_000);
+        var repository = new StaticFileRepository(baseDir, cache);
+
+        var fileInfo = repository.findFile("/page.html").get();
+        assertThat(repository.findPrecompressedVariant(fileInfo, ContentEncoding.GZIP)).isEmpty();
+        assertThat(repository.findPrecompressedVariant(fileInfo, ContentEncoding.GZIP)).isEmpty();
+        assertThat(repository.findFile("/page.html.gz")).isEmpty();
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    void precompressedVariantCreatedAfterMiss() throws IOException {
+        writeFile("page.html", "<html></html>");
+        var repository = new StaticFileRepository(baseDir, new FileCache(100, 10_000, 0));
+
+        var fileInfo = repository.findFile("/page.html").get();
+        assertThat(repository.findPrecompressedVariant(fileInfo, ContentEncoding.GZIP)).isEmpty();
+        writeFile("page.html.gz", "gzip");
+        assertThat(repository.findPrecompressedVariant(fileInfo, ContentEncoding.GZIP)).isPresent();
+    }
+
+    @Test
+    void noPrecompressedVariantOfIncompressibleFile() throws IOException {
+        writeFile("image.png", "png");
+        writeFile("image.png.gz", "gzip");
+        var cache = new FileCache(100, 10_000, 60_000);
+        var repository = new StaticFileRepository(baseDir, cache);
+
+        var fileInfo = repository.findFile("/image.png").get();
+        assertThat(repository.findPrecompressedVariant(fileInfo, ContentEncoding.GZIP)).isEmpty();
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    private Path writeFile(String name, String content) throws IOException {
+        var file = Files.writeString(baseDir.resolve(name), content);
+        // Files modified very recently are not cached
+        Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2024-01-01T00:00:00Z")));
+        return file;
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
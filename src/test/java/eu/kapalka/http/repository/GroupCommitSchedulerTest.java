@@ -0,0 +1,102 @@
+package eu.kapalka.http.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GroupCommitSchedulerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void concurrentWritesFlushedTogether() throws Exception {
+        var writerCount = 8;
+        try (var scheduler = new GroupCommitScheduler(Duration.ofMillis(200), 64);
+             var executor = Executors.newFixedThreadPool(writerCount)) {
+            var start = new CountDownLatch(1);
+            var futures = new ArrayList<Future<?>>();
+            for (var i = 0; i < writerCount; i++) {
+                var tempFile = Files.writeString(directory.resolve("temp-" + i), "contents " + i);
+                var file = directory.resolve("file-" + i);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    scheduler.commit(tempFile, () -> Files.move(tempFile, file), directory);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (var future : futures) {
+                future.get();
+            }
+
+            for (var i = 0; i < writerCount; i++) {
+                assertThat(Files.readString(directory.resolve("file-" + i))).isEqualTo("contents " + i);
+            }
+            assertThat(scheduler.getCommitCount()).isEqualTo(writerCount);
+            assertThat(scheduler.getBatchCount()).isLessThan(writerCount);
+        }
+    }
+
+    @Test
+    @Timeout(5)
+    void fullBatchFlushedWithoutDelay() throws Exception {
+        try (var scheduler = new GroupCommitScheduler(Duration.ofMinutes(1), 2);
+             var executor = Executors.newFixedThreadPool(2)) {
+            var first = executor.submit(() -> {
+                scheduler.commit(null, null, directory);
+                return null;
+            });
+            scheduler.commit(null, null, directory);
+            first.get();
+            assertThat(scheduler.getBatchCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void failedWriteReported() throws IOException {
+        try (var scheduler = new GroupCommitScheduler(Duration.ZERO, 16)) {
+            assertThatThrownBy(() -> scheduler.commit(null, () -> {
+                throw new IOException("Rename failed");
+            }, directory))
+                    .isInstanceOf(IOException.class)
+                    .hasMessage("Rename failed");
+
+            // The commit action is not run if the file cannot be flushed
+            var missingFile = directory.resolve("missing");
+            assertThatThrownBy(() -> scheduler.commit(missingFile, () -> Files.createFile(missingFile), directory))
+                    .isInstanceOf(IOException.class);
+            assertThat(missingFile).doesNotExist();
+
+            scheduler.commit(null, null, directory);
+            assertThat(scheduler.getCommitCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void closedSchedulerRejectsWrites() {
+        var scheduler = new GroupCommitScheduler();
+        scheduler.close();
+        assertThatThrownBy(() -> scheduler.commit(null, null, directory)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void invalidSettingsRejected() {
+        assertThatThrownBy(() -> new GroupCommitScheduler(Duration.ofMillis(-1), 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new GroupCommitScheduler(Duration.ZERO, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
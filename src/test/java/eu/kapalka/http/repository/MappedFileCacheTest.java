@@ -0,0 +1,93 @@
+package eu.kapalka.http.repository;
+
+import eu.kapalka.http.TestBase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedFileCacheTest extends TestBase {
+
+    @TempDir
+    private Path baseDir;
+
+    @Test
+    void mappedFile() throws IOException {
+        writeFile("file.txt", "abcdef");
+        var mappedFileCache = new MappedFileCache(5, 60_000);
+        var repository = new StaticFileRepository(baseDir, null, mappedFileCache);
+
+        var fileInfo = repository.findFile("/file.txt").get();
+        var content1 = repository.getMappedContent(fileInfo).get();
+        var content2 = repository.getMappedContent(fileInfo).get();
+        assertThat(toString(content1)).isEqualTo("abcdef");
+        // Independent buffers
+        assertThat(toString(content2)).isEqualTo("abcdef");
+        assertThat(mappedFileCache.getMappedFileCount()).isEqualTo(1);
+    }
+
+    @Test
+    void smallFileNotMapped() throws IOException {
+        writeFile("file.txt", "abc");
+        var mappedFileCache = new MappedFileCache(5, 60_000);
+        var repository = new StaticFileRepository(baseDir, null, mappedFileCache);
+
+        var fileInfo = repository.findFile("/file.txt").get();
+        assertThat(repository.getMappedContent(fileInfo)).isEmpty();
+        assertThat(mappedFileCache.getMappedFileCount()).isEqualTo(0);
+    }
+
+    @Test
+    void fileLargerThanBufferNotMapped() throws IOException {
+        // Sparse file, which does not use any disk space
+        try (var file = new RandomAccessFile(baseDir.resolve("large.bin").toFile(), "rw")) {
+            file.setLength(MappedFileCache.MAX_MAPPED_FILE_SIZE + 1024);
+        }
+        var mappedFileCache = new MappedFileCache(5, 60_000);
+        var repository = new StaticFileRepository(baseDir, null, mappedFileCache);
+
+        var fileInfo = repository.findFile("/large.bin").get();
+        assertThat(repository.getMappedContent(fileInfo)).isEmpty();
+        assertThat(mappedFileCache.getMappedFileCount()).isEqualTo(0);
+    }
+
+    @Test
+    void modifiedFileRemapped() throws IOException {
+        writeFile("file.txt", "abcdef");
+        var repository = new StaticFileRepository(baseDir, null, new MappedFileCache(5, 60_000));
+        var fileInfo = repository.findFile("/file.txt").get();
+        repository.getMappedContent(fileInfo);
+
+        writeFile("file.txt", "abcdefgh");
+        fileInfo = repository.findFile("/file.txt").get();
+        assertThat(toString(repository.getMappedContent(fileInfo).get())).isEqualTo("abcdefgh");
+    }
+
+    @Test
+    void idleMappingReleased() throws IOException, InterruptedException {
+        writeFile("a.txt", "abcdef");
+        writeFile("b.txt", "ghijkl");
+        var mappedFileCache = new MappedFileCache(5, 10);
+        var repository = new StaticFileRepository(baseDir, null, mappedFileCache);
+
+        repository.getMappedContent(repository.findFile("/a.txt").get());
+        Thread.sleep(50);
+        repository.getMappedContent(repository.findFile("/b.txt").get());
+        assertThat(mappedFileCache.getMappedFileCount()).isEqualTo(1);
+    }
+
+    private void writeFile(String name, String content) throws IOException {
+        Files.writeString(baseDir.resolve(name), content);
+    }
+
+    private static String toString(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+}
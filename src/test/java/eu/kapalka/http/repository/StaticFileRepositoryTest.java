@@ -2,8 +2,14 @@ package eu.kapalka.http.repository;
 
 import eu.kapalka.http.TestBase;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -13,10 +19,10 @@ public class StaticFileRepositoryTest extends TestBase {
     private final StaticFileRepository repository = new StaticFileRepository(repositoryBasePath);
 
     @Test
-    void findFile() {
+    void findFile() throws IOException {
         var fileInfo = repository.findFile("/folder/page.html");
-        assertThat(fileInfo.get())
-                .isEqualTo(new FileInfo(absoluteRepoPath("folder/page.html"), 80, "text/html"));
+        assertThat(fileInfo.get()).usingRecursiveComparison().ignoringFields("etag")
+                .isEqualTo(expectedFileInfo("folder/page.html", 80, "text/html"));
     }
 
     @Test
@@ -32,24 +38,24 @@ public class StaticFileRepositoryTest extends TestBase {
     }
 
     @Test
-    void indexFile() {
+    void indexFile() throws IOException {
         var fileInfo = repository.findFile("/");
-        assertThat(fileInfo.get())
-                .isEqualTo(new FileInfo(absoluteRepoPath("index.html"), 77, "text/html"));
+        assertThat(fileInfo.get()).usingRecursiveComparison().ignoringFields("etag")
+                .isEqualTo(expectedFileInfo("index.html", 77, "text/html"));
     }
 
     @Test
-    void relativeResourcePath() {
+    void relativeResourcePath() throws IOException {
         var fileInfo = repository.findFile("file.txt");
-        assertThat(fileInfo.get())
-                .isEqualTo(new FileInfo(absoluteRepoPath("file.txt"), 13, "text/plain"));
+        assertThat(fileInfo.get()).usingRecursiveComparison().ignoringFields("etag")
+                .isEqualTo(expectedFileInfo("file.txt", 13, "text/plain"));
     }
 
     @Test
-    void followSymlinks() {
+    void followSymlinks() throws IOException {
         var fileInfo = repository.findFile("/symlink.txt");
-        assertThat(fileInfo.get())
-                .isEqualTo(new FileInfo(absoluteRepoPath("symlink.txt"), 15, "text/plain"));
+        assertThat(fileInfo.get()).usingRecursiveComparison().ignoringFields("etag")
+                .isEqualTo(expectedFileInfo("symlink.txt", 15, "text/plain"));
     }
 
     @Test
@@ -58,6 +64,27 @@ public class StaticFileRepositoryTest extends TestBase {
         assertThat(fileInfo).isEmpty();
     }
 
+    @Test
+    void entityTag(@TempDir Path tempDir) throws IOException {
+        var file = Files.writeString(tempDir.resolve("file.txt"), "content");
+        var tempRepository = new StaticFileRepository(tempDir);
+        assertThat(tempRepository.findFile("/file.txt").get().etag()).startsWith("W/\"");
+
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS)));
+        var strongTag = tempRepository.findFile("/file.txt").get().etag();
+        assertThat(strongTag).startsWith("\"").endsWith("\"");
+        assertThat(tempRepository.findFile("/file.txt").get().etag()).isEqualTo(strongTag);
+
+        Files.writeString(file, "modified");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(30, ChronoUnit.MINUTES)));
+        assertThat(tempRepository.findFile("/file.txt").get().etag()).isNotEqualTo(strongTag);
+    }
+
+    private FileInfo expectedFileInfo(String relativePath, long size, String mimeType) throws IOException {
+        var path = absoluteRepoPath(relativePath);
+        return new FileInfo(path, size, mimeType, Files.getLastModifiedTime(path).toMillis(), null);
+    }
+
     private Path absoluteRepoPath(String relativePath) {
         return repositoryBasePath.resolve(relativePath).toAbsolutePath();
     }
@@ -0,0 +1,60 @@
+package eu.kapalka.http.request;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ByteRangeTest {
+
+    @Test
+    void singleRanges() {
+        assertThat(ByteRange.parse("bytes=0-499", 1000)).contains(List.of(new ByteRange(0, 499)));
+        assertThat(ByteRange.parse("bytes=500-", 1000)).contains(List.of(new ByteRange(500, 999)));
+        assertThat(ByteRange.parse("bytes=-300", 1000)).contains(List.of(new ByteRange(700, 999)));
+        assertThat(ByteRange.parse("Bytes=0-0", 1000)).contains(List.of(new ByteRange(0, 0)));
+    }
+
+    @Test
+    void rangesLimitedToResourceSize() {
+        assertThat(ByteRange.parse("bytes=900-2000", 1000)).contains(List.of(new ByteRange(900, 999)));
+        assertThat(ByteRange.parse("bytes=-5000", 1000)).contains(List.of(new ByteRange(0, 999)));
+        assertThat(ByteRange.parse("bytes=0-99999999999999999", 1000)).contains(List.of(new ByteRange(0, 999)));
+        assertThat(ByteRange.parse("bytes=0-99999999999999999999", 1000)).isEmpty(); // Number too large
+    }
+
+    @Test
+    void multipleRanges() {
+        var ranges = ByteRange.parse("bytes=0-99, 200-299 ,, -1", 1000);
+        assertThat(ranges).contains(List.of(new ByteRange(0, 99), new ByteRange(200, 299), new ByteRange(999, 999)));
+        assertThat(ranges.get().get(1).length()).isEqualTo(100);
+    }
+
+    @Test
+    void unsatisfiableRanges() {
+        assertThat(ByteRange.parse("bytes=1000-1100", 1000)).contains(List.of());
+        assertThat(ByteRange.parse("bytes=-0", 1000)).contains(List.of());
+        assertThat(ByteRange.parse("bytes=-10", 0)).contains(List.of());
+        // Unsatisfiable ranges are skipped if others are satisfiable
+        assertThat(ByteRange.parse("bytes=2000-, 0-9", 1000)).contains(List.of(new ByteRange(0, 9)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"bytes=", "bytes=10", "bytes=10-5", "bytes=a-b", "bytes=+1-2", "bytes=1--2",
+            "items=0-10", "0-10"})
+    void invalidHeaderIgnored(String rangeHeader) {
+        assertThat(ByteRange.parse(rangeHeader, 1000)).isEmpty();
+    }
+
+    @Test
+    void tooManyRangesIgnored() {
+        var header = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= ByteRange.MAX_RANGES; i++) {
+            header.append(",").append(i).append("-").append(i);
+        }
+        assertThat(ByteRange.parse(header.toString(), 1000)).isEmpty();
+    }
+}
@@ -9,6 +9,7 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class LineReaderTest extends TestBase {
 
@@ -43,6 +44,78 @@ public class LineReaderTest extends TestBase {
         assertThat(reader.nextLine()).isFalse();
     }
 
+    @Test
+    void inputAvailable() throws IOException {
+        var reader = new LineReader(asInputStream("abc\r\nefg\r\n"));
+        assertThat(reader.isInputAvailable()).isTrue();
+        reader.nextLine();
+        assertThat(reader.isInputAvailable()).isTrue();
+        reader.nextLine();
+        assertThat(reader.isInputAvailable()).isFalse();
+    }
+
+    @Test
+    void tokensWithSeparators() throws IOException {
+        var reader = new LineReader(asInputStream("Content-Length:  123 \t\r\nx:\r\n"));
+        reader.nextLine();
+        assertThat(reader.nextToken((byte) ':')).isTrue();
+        assertThat(reader.tokenEqualsIgnoreCase("content-length".getBytes())).isTrue();
+        assertThat(reader.tokenEquals("Content-Length".getBytes())).isTrue();
+        assertThat(reader.tokenEquals("content-length".getBytes())).isFalse();
+        assertThat(reader.isTokenAtEndOfLine()).isFalse();
+        assertThat(reader.nextRemainderToken()).isTrue();
+        assertThat(reader.tokenToLong()).isEqualTo(123);
+        assertThat(reader.nextToken()).isFalse();
+
+        reader.nextLine();
+        reader.nextToken((byte) ':');
+        assertThat(reader.tokenToString()).isEqualTo("x");
+        assertThat(reader.nextRemainderToken()).isFalse();
+    }
+
+    @Test
+    void linesSpanningBufferRefills() throws IOException {
+        var line = "abcdefghij".repeat(700) + "\r\n";
+        var reader = new LineReader(asInputStream(line.repeat(5)));
+        for (int i = 0; i < 5; i++) {
+            assertThat(reader.nextLine()).isTrue();
+            assertThat(reader.isLineTruncated()).isFalse();
+            assertThat(reader.readToken()).hasSize(7000);
+        }
+        assertThat(reader.nextLine()).isFalse();
+    }
+
+    @Test
+    void lineTooLong() throws IOException {
+        var reader = new LineReader(asInputStream("a".repeat(9000) + "\r\nb\r\n"));
+        assertThat(reader.nextLine()).isTrue();
+        assertThat(reader.isLineTruncated()).isTrue();
+        assertThat(reader.readToken()).hasSize(8000);
+        // Rest of the line
+        assertThat(reader.nextLine()).isTrue();
+        assertThat(reader.readToken()).hasSize(1000);
+        reader.nextLine();
+        assertThat(reader.readToken()).isEqualTo("b");
+    }
+
+    @Test
+    void customMaxLineLength() throws IOException {
+        var reader = new LineReader(asInputStream("a".repeat(20_000) + "\r\n"), 16_000);
+        assertThat(reader.nextLine()).isTrue();
+        assertThat(reader.isLineTruncated()).isTrue();
+        assertThat(reader.readToken()).hasSize(16_000);
+        assertThat(reader.nextLine()).isTrue();
+        assertThat(reader.readToken()).hasSize(4_000);
+    }
+
+    @Test
+    void invalidNumber() throws IOException {
+        var reader = new LineReader(asInputStream("12a"));
+        reader.nextLine();
+        reader.nextToken();
+        assertThatThrownBy(reader::tokenToLong).isInstanceOf(NumberFormatException.class);
+    }
+
     @Test
     void invalidCharacters() throws IOException {
         var input = "éà";
@@ -50,4 +123,16 @@ public class LineReaderTest extends TestBase {
         reader.nextLine();
         assertThat(reader.readToken()).isEqualTo("??");
     }
+
+    @Test
+    void bytesReadCounted() throws IOException {
+        var reader = new LineReader(asInputStream("line\r\n0123456789"));
+        assertThat(reader.awaitInput()).isTrue();
+        assertThat(reader.getBytesRead()).isEqualTo(16);
+        reader.nextLine();
+        reader.skipBytes(4);
+        assertThat(reader.read(new byte[10], 0, 10)).isEqualTo(6);
+        assertThat(reader.getBytesRead()).isEqualTo(16);
+        assertThat(reader.awaitInput()).isFalse();
+    }
 }
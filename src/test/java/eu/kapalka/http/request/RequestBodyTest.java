@@ -0,0 +1,41 @@
+package eu.kapalka.http.request;
+
+import eu.kapalka.http.TestBase;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestBodyTest extends TestBase {
+
+    @Test
+    void readFully() throws IOException {
+        var body = RequestBody.of("abc".getBytes(StandardCharsets.US_ASCII));
+        assertThat(body.readFully(3)).hasValueSatisfying(contents -> assertThat(contents).asString().isEqualTo("abc"));
+        assertThat(body.readFully(3)).hasValueSatisfying(contents -> assertThat(contents).isEmpty()); // Already read
+    }
+
+    @Test
+    void readFullyTooLong() throws IOException {
+        var body = RequestBody.of("abcd".getBytes(StandardCharsets.US_ASCII));
+        assertThat(body.readFully(3)).isEmpty();
+        assertThat(body.getInputStream().available()).isEqualTo(4); // Not read because the length is known
+    }
+
+    @Test
+    void readFullyTooLongUnknownLength() throws IOException {
+        var body = RequestBody.of(asInputStream("abcd"), RequestBody.UNKNOWN_LENGTH);
+        assertThat(body.readFully(3)).isEmpty();
+        assertThat(RequestBody.of(asInputStream("abc"), RequestBody.UNKNOWN_LENGTH).readFully(3)).isPresent();
+    }
+
+    @Test
+    void discardUnread() throws IOException {
+        var body = RequestBody.of(asInputStream("abcd"), RequestBody.UNKNOWN_LENGTH);
+        assertThat(body.getInputStream().read()).isEqualTo('a');
+        body.discardUnread();
+        assertThat(body.getInputStream().read()).isEqualTo(-1);
+    }
+}
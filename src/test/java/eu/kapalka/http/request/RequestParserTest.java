@@ -4,10 +4,12 @@ import eu.kapalka.http.TestBase;
 import eu.kapalka.http.response.HttpStatus;
 import org.junit.jupiter.api.Test;
 
+import java.io.EOFException;
 import java.io.IOException;
 
 import static eu.kapalka.http.request.HttpMethod.GET;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class RequestParserTest extends TestBase {
 
@@ -58,6 +60,216 @@ class RequestParserTest extends TestBase {
                 .build());
     }
 
+    @Test
+    void headerNamesAndValuesFormatting() {
+        var request = parse("""
+                GET / HTTP/1.1\r
+                Host:localhost\r
+                Some-Header:   a b c  \r
+                CONNECTION: Close\r
+                \r
+                """);
+        assertThat(request).isEqualTo(ValidRequest.builder()
+                .method(GET)
+                .uri(uri("/"))
+                .httpMinorVersion((byte) 1)
+                .keepAlive(false)
+                .build());
+    }
+
+    @Test
+    void conditionalHeaders() {
+        var request = parse("""
+                GET / HTTP/1.1\r
+                Host: localhost\r
+                If-None-Match: "abc", W/"def"\r
+                if-modified-since: Tue, 02 Jan 2024 10:30:50 GMT\r
+                \r
+                """);
+        assertThat(request).isEqualTo(ValidRequest.builder()
+                .method(GET)
+                .uri(uri("/"))
+                .httpMinorVersion((byte) 1)
+                .ifNoneMatch("\"abc\", W/\"def\"")
+                .ifModifiedSince("Tue, 02 Jan 2024 10:30:50 GMT")
+                .build());
+    }
+
+    @Test
+    void rangeHeaders() {
+        var request = parse("""
+                GET / HTTP/1.1\r
+                Host: localhost\r
+                Range: bytes=0-99, -10\r
+                If-Range: "abc"\r
+                Accept-Encoding: gzip, br\r
+                \r
+                """);
+        assertThat(request).isEqualTo(ValidRequest.builder()
+                .method(GET)
+                .uri(uri("/"))
+                .httpMinorVersion((byte) 1)
+                .range("bytes=0-99, -10")
+                .ifRange("\"abc\"")
+                .acceptEncoding("gzip, br")
+                .build());
+    }
+
+    @Test
+    void multipleRequestsWithBody() throws IOException {
+        var parser = new RequestParser(asInputStream("""
+                POST /a HTTP/1.1\r
+                Content-Length: 5\r
+                \r
+                abcdeGET /b HTTP/1.1\r
+                \r
+                """));
+        assertThat(((ValidRequest) parser.parse()).getURI()).isEqualTo(uri("/a"));
+        assertThat(((ValidRequest) parser.parse()).getURI()).isEqualTo(uri("/b"));
+        assertThat(parser.isInputAvailable()).isFalse();
+    }
+
+    @Test
+    void multipleRequestsWithChunkedBody() throws IOException {
+        var parser = new RequestParser(asInputStream("""
+                POST /a HTTP/1.1\r
+                Transfer-Encoding: chunked\r
+                \r
+                5;ext=1\r
+                abcde\r
+                A\r
+                0123456789\r
+                0\r
+                Trailer: x\r
+                \r
+                GET /b HTTP/1.1\r
+                \r
+                """));
+        assertThat(((ValidRequest) parser.parse()).getURI()).isEqualTo(uri("/a"));
+        assertThat(((ValidRequest) parser.parse()).getURI()).isEqualTo(uri("/b"));
+        assertThat(parser.isInputAvailable()).isFalse();
+    }
+
+    @Test
+    void requestBody() throws IOException {
+        var parser = new RequestParser(asInputStream("""
+                POST /a HTTP/1.1\r
+                Content-Length: 5\r
+                \r
+                abcdeGET /b HTTP/1.1\r
+                \r
+                """));
+        var body = ((ValidRequest) parser.parse()).getBody();
+        assertThat(body.getLength()).isEqualTo(5);
+        assertThat(body.getInputStream().readAllBytes()).asString().isEqualTo("abcde");
+        assertThat(body.getInputStream().read()).isEqualTo(-1);
+
+        var request = (ValidRequest) parser.parse();
+        assertThat(request.getURI()).isEqualTo(uri("/b"));
+        assertThat(request.getBody().isEmpty()).isTrue();
+    }
+
+    @Test
+    void chunkedRequestBody() throws IOException {
+        var parser = new RequestParser(asInputStream("""
+                POST /a HTTP/1.1\r
+                Transfer-Encoding: chunked\r
+                \r
+                5\r
+                abcde\r
+                3\r
+                fgh\r
+                0\r
+                \r
+                """));
+        var body = ((ValidRequest) parser.parse()).getBody();
+        assertThat(body.getLength()).isEqualTo(RequestBody.UNKNOWN_LENGTH);
+        assertThat(body.readFully(100)).hasValueSatisfying(
+                contents -> assertThat(contents).asString().isEqualTo("abcdefgh"));
+    }
+
+    @Test
+    void partiallyReadBodyDiscarded() throws IOException {
+        var parser = new RequestParser(asInputStream("""
+                POST /a HTTP/1.1\r
+                Transfer-Encoding: chunked\r
+                \r
+                5\r
+                abcde\r
+                0\r
+                \r
+                POST /b HTTP/1.1\r
+                Content-Length: 3\r
+                \r
+                xyzGET /c HTTP/1.1\r
+                \r
+                """));
+        var body = ((ValidRequest) parser.parse()).getBody();
+        assertThat(body.getInputStream().readNBytes(2)).asString().isEqualTo("ab");
+
+        body = ((ValidRequest) parser.parse()).getBody();
+        assertThat(body.getInputStream().read()).isEqualTo('x');
+        parser.discardUnreadBody();
+        assertThat(parser.isInputAvailable()).isTrue();
+
+        assertThat(((ValidRequest) parser.parse()).getURI()).isEqualTo(uri("/c"));
+        assertThat(parser.isInputAvailable()).isFalse();
+    }
+
+    @Test
+    void truncatedRequestBody() throws IOException {
+        var parser = new RequestParser(asInputStream("""
+                POST /a HTTP/1.1\r
+                Content-Length: 10\r
+                \r
+                abc"""));
+        var body = ((ValidRequest) parser.parse()).getBody();
+        assertThatThrownBy(() -> body.getInputStream().readAllBytes()).isInstanceOf(EOFException.class);
+    }
+
+    @Test
+    void malformedChunkedBody() throws IOException {
+        var parser = new RequestParser(asInputStream("""
+                POST /a HTTP/1.1\r
+                Transfer-Encoding: chunked\r
+                \r
+                xyz\r
+                abc\r
+                """));
+        var body = ((ValidRequest) parser.parse()).getBody();
+        assertThatThrownBy(() -> body.getInputStream().read()).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void chunkedBodyWithContentLength() {
+        assertBadRequestError(parse("""
+                POST / HTTP/1.1\r
+                Content-Length: 5\r
+                Transfer-Encoding: chunked\r
+                \r
+                0\r
+                \r
+                """));
+    }
+
+    @Test
+    void unsupportedTransferEncoding() {
+        assertHttpErrorCode(parse("""
+                POST / HTTP/1.1\r
+                Transfer-Encoding: gzip, chunked\r
+                \r
+                """), HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @Test
+    void invalidContentLength() {
+        assertBadRequestError(parse("""
+                POST / HTTP/1.1\r
+                Content-Length: -5\r
+                \r
+                """));
+    }
+
     @Test
     void emptyRequest() {
         // Connection but no data sent, e.g., from misconfigured monitoring tools or liveness probes
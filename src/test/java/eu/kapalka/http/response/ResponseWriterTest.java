@@ -5,13 +5,20 @@ import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneId;
 
 import static eu.kapalka.http.response.HttpStatus.BAD_REQUEST;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class ResponseWriterTest extends TestBase {
 
@@ -24,6 +31,7 @@ class ResponseWriterTest extends TestBase {
         var writer = new ResponseWriter(output);
 
         withDateTime("2024-01-02T10:30:50Z", () -> writer.writeHeaders(response, true));
+        writer.flush(); // Headers are buffered until the body is written
 
         assertThat(toString(output)).isEqualTo("""
                 HTTP/1.1 200 OK\r
@@ -37,6 +45,7 @@ class ResponseWriterTest extends TestBase {
 
         output.reset();
         writer.writeBody(response);
+        writer.flush();
         assertThat(toString(output)).isEqualTo("ABC");
     }
 
@@ -51,12 +60,91 @@ class ResponseWriterTest extends TestBase {
         var writer = new ResponseWriter(output);
         writer.writeHeaders(response, false);
         writer.writeBody(response);
+        writer.flush();
         assertThat(toString(output))
                 .contains("Content-Type: text/html\r\n")
                 .contains("Content-Length: %d\r\n".formatted(body.length()))
                 .endsWith("\r\n%s".formatted(body));
     }
 
+    @Test
+    void fileBodyTransferredToChannel() throws IOException {
+        var file = Path.of("src/test/resources/content/file.txt");
+        var response = Response.builder()
+                .body(file, Files.size(file))
+                .build();
+        var output = outputStream();
+        var writer = new ResponseWriter(output, Channels.newChannel(output));
+        writer.writeHeaders(response, true);
+        writer.writeBody(response);
+        assertThat(toString(output))
+                .contains("Content-Length: 13\r\n")
+                .endsWith("\r\nTest content\n");
+    }
+
+    @Test
+    void bytesWrittenCounted() throws IOException {
+        var file = Path.of("src/test/resources/content/file.txt");
+        var output = outputStream();
+        var writer = new ResponseWriter(output, Channels.newChannel(output));
+        writer.writeFull(Response.builder().body("ABC").build(), true);
+        assertThat(writer.getBytesWritten()).isZero(); // Still buffered
+        writer.writeFull(Response.builder().body(file, Files.size(file)).build(), true);
+        writer.flush();
+        assertThat(writer.getBytesWritten()).isEqualTo(output.size());
+    }
+
+    @Test
+    void fileBodyWithoutChannel() throws IOException {
+        var file = Path.of("src/test/resources/content/file.txt");
+        var response = Response.builder()
+                .body(file, Files.size(file))
+                .build();
+        var output = outputStream();
+        var writer = new ResponseWriter(output);
+        writer.writeBody(response);
+        writer.flush();
+        assertThat(toString(output)).isEqualTo("Test content\n");
+    }
+
+    @Test
+    void fileRegionBody() throws IOException {
+        var file = Path.of("src/test/resources/content/file.txt");
+        var response = Response.builder()
+                .body(file, 5, 7)
+                .build();
+        var output = outputStream();
+        var writer = new ResponseWriter(output, Channels.newChannel(output));
+        writer.writeFull(response, true);
+        assertThat(toString(output))
+                .contains("Content-Length: 7\r\n")
+                .endsWith("\r\n\r\ncontent");
+
+        output.reset();
+        var streamWriter = new ResponseWriter(output);
+        streamWriter.writeBody(response);
+        streamWriter.flush();
+        assertThat(toString(output)).isEqualTo("content");
+    }
+
+    @Test
+    void bufferBody() throws IOException {
+        var buffer = ByteBuffer.allocateDirect(3).put(new byte[]{'A', 'B', 'C'}).flip();
+        var response = Response.builder()
+                .body(buffer)
+                .build();
+        for (var channelOutput : new boolean[]{true, false}) {
+            var output = outputStream();
+            var writer = channelOutput ? new ResponseWriter(output, Channels.newChannel(output))
+                    : new ResponseWriter(output);
+            writer.writeBody(response);
+            writer.flush();
+            assertThat(toString(output)).isEqualTo("ABC");
+        }
+        // The buffer of the response can be written again
+        assertThat(buffer.remaining()).isEqualTo(3);
+    }
+
     @Test
     void errorStatus() throws IOException {
         var response = Response.builder()
@@ -65,10 +153,235 @@ class ResponseWriterTest extends TestBase {
         var output = outputStream();
         var writer = new ResponseWriter(output);
         writer.writeHeaders(response, false);
+        writer.flush();
         assertThat(toString(output))
                 .startsWith("HTTP/1.1 400 Bad Request\r\n");
     }
 
+    @Test
+    void contentLength() throws IOException {
+        for (var length : new long[]{0, 7, 10, 1_234_567_890_123L}) {
+            var response = Response.builder()
+                    .body(() -> asInputStream(""), length)
+                    .build();
+            var output = outputStream();
+            var writer = new ResponseWriter(output);
+            writer.writeHeaders(response, true);
+            writer.flush();
+            assertThat(toString(output)).contains("\r\nContent-Length: %d\r\n".formatted(length));
+        }
+    }
+
+    @Test
+    void additionalHeaders() throws IOException {
+        var response = Response.builder()
+                .body("ABC")
+                .header("ETag", "\"abc\"")
+                .header("Last-Modified", "Tue, 02 Jan 2024 10:30:50 GMT")
+                .build();
+        var output = outputStream();
+        var writer = new ResponseWriter(output);
+        writer.writeHeaders(response, true);
+        writer.flush();
+        assertThat(toString(output)).endsWith("""
+                Content-Type: text/plain; charset=utf-8\r
+                ETag: "abc"\r
+                Last-Modified: Tue, 02 Jan 2024 10:30:50 GMT\r
+                Content-Length: 3\r
+                \r
+                """);
+    }
+
+    @Test
+    void notModifiedWithoutContentLength() throws IOException {
+        var response = Response.builder()
+                .status(HttpStatus.NOT_MODIFIED)
+                .header("ETag", "\"abc\"")
+                .build();
+        var output = outputStream();
+        var writer = new ResponseWriter(output);
+        writer.writeFull(response, true);
+        writer.flush();
+        assertThat(toString(output))
+                .startsWith("HTTP/1.1 304 Not Modified\r\n")
+                .endsWith("ETag: \"abc\"\r\n\r\n")
+                .doesNotContain("Content-Length");
+    }
+
+    @Test
+    void dateUpdatedEverySecond() throws IOException {
+        var response = Response.builder().build();
+        var output = outputStream();
+        var writer = new ResponseWriter(output);
+        withDateTime("2024-01-02T10:30:50.100Z", () -> writer.writeHeaders(response, true));
+        withDateTime("2024-01-02T10:30:50.900Z", () -> writer.writeHeaders(response, true));
+        withDateTime("2024-01-02T10:30:51Z", () -> writer.writeHeaders(response, true));
+        writer.flush();
+        assertThat(toString(output).split("Date: Tue, 2 Jan 2024 10:30:50 GMT\r\n", -1)).hasSize(3);
+        assertThat(toString(output)).contains("Date: Tue, 2 Jan 2024 10:30:51 GMT\r\n");
+    }
+
+    @Test
+    void headersAndBodyInSingleWrite() throws IOException {
+        var response = Response.builder()
+                .body("ABC")
+                .build();
+        var output = new CountingOutputStream();
+        var writer = new ResponseWriter(output);
+        writer.writeFull(response, true);
+        writer.writeFull(response, true);
+        assertThat(output.numWrites).isZero(); // Small responses are buffered...
+
+        writer.flush();
+        assertThat(output.numWrites).isEqualTo(1); // ...until they are flushed together
+        assertThat(output.toString(StandardCharsets.US_ASCII))
+                .startsWith("HTTP/1.1 200 OK\r\n")
+                .endsWith("\r\nABC")
+                .contains("\r\nABCHTTP/1.1 200 OK\r\n");
+    }
+
+    @Test
+    void largeBody() throws IOException {
+        var body = "0123456789".repeat(10_000);
+        var response = Response.builder()
+                .body(body)
+                .build();
+        var output = outputStream();
+        var writer = new ResponseWriter(output);
+        writer.writeFull(response, true);
+        writer.flush();
+        assertThat(toString(output)).endsWith("\r\n\r\n" + body);
+    }
+
+    @Test
+    void headersLargerThanBuffer() throws IOException {
+        var contentType = "text/plain; x=" + "x".repeat(10_000);
+        var response = Response.builder()
+                .body("ABC".getBytes(StandardCharsets.US_ASCII))
+                .contentType(contentType)
+                .build();
+        var output = outputStream();
+        var writer = new ResponseWriter(output);
+        writer.writeFull(response, true);
+        writer.flush();
+        assertThat(toString(output))
+                .contains("Content-Type: %s\r\n".formatted(contentType))
+                .endsWith("\r\n\r\nABC");
+    }
+
+    @Test
+    void bufferBodyWrittenWithHeaders() throws IOException {
+        var response = Response.builder()
+                .body(ByteBuffer.wrap(new byte[]{'A', 'B', 'C'}))
+                .build();
+        var output = outputStream();
+        var channel = new GatheringChannelStub(output);
+        var writer = new ResponseWriter(output, channel);
+        writer.writeFull(response, true);
+        assertThat(channel.numWrites).isEqualTo(1);
+        assertThat(toString(output))
+                .startsWith("HTTP/1.1 200 OK\r\n")
+                .endsWith("\r\n\r\nABC");
+    }
+
+    @Test
+    void chunkedBody() throws IOException {
+        var response = Response.builder()
+                .body(output -> output.write("ABC".getBytes(StandardCharsets.US_ASCII)))
+                .contentType("text/plain")
+                .build();
+        var output = outputStream();
+        var writer = new ResponseWriter(output);
+        writer.writeFull(response, true);
+        writer.flush();
+        assertThat(toString(output))
+                .contains("Transfer-Encoding: chunked\r\n")
+                .doesNotContain("Content-Length")
+                .endsWith("\r\n\r\n3\r\nABC\r\n0\r\n\r\n");
+    }
+
+    @Test
+    void chunkedBodyFlushedInSeparateChunks() throws IOException {
+        var response = Response.builder()
+                .body(output -> {
+                    output.write("Hello".getBytes(StandardCharsets.US_ASCII));
+                    output.flush();
+                    output.write(", world!".getBytes(StandardCharsets.US_ASCII));
+                })
+                .build();
+        var output = new CountingOutputStream();
+        var writer = new ResponseWriter(output);
+        writer.writeFull(response, true);
+        assertThat(output.numWrites).isEqualTo(1); // Headers and the first chunk, until the flush
+        writer.flush();
+        assertThat(toString(output)).endsWith("\r\n\r\n5\r\nHello\r\n8\r\n, world!\r\n0\r\n\r\n");
+    }
+
+    @Test
+    void chunkedBodySplitIntoChunksOfConfiguredSize() throws IOException {
+        var body = "0123456789".repeat(1_000);
+        var response = Response.builder()
+                .body(output -> {
+                    // Mix of single bytes and arrays
+                    output.write(body.charAt(0));
+                    output.write(body.substring(1).getBytes(StandardCharsets.US_ASCII));
+                })
+                .build();
+        var output = outputStream();
+        var writer = new ResponseWriter(output, null, 4096);
+        writer.writeFull(response, true);
+        writer.flush();
+
+        var chunks = toString(output).split("\r\n\r\n", 2)[1];
+        var decodedBody = new StringBuilder();
+        while (true) {
+            var sizeEnd = chunks.indexOf("\r\n");
+            var size = Integer.parseInt(chunks.substring(0, sizeEnd), 16);
+            assertThat(size).isLessThanOrEqualTo(4096);
+            decodedBody.append(chunks, sizeEnd + 2, sizeEnd + 2 + size);
+            assertThat(chunks.substring(sizeEnd + 2 + size)).startsWith("\r\n");
+            chunks = chunks.substring(sizeEnd + 2 + size + 2);
+            if (size == 0) {
+                break;
+            }
+        }
+        assertThat(chunks).isEmpty();
+        assertThat(decodedBody.toString()).isEqualTo(body);
+    }
+
+    @Test
+    void streamedBodyWithoutKeepAlive() throws IOException {
+        var body = "0123456789".repeat(2_000);
+        var response = Response.builder()
+                .body(output -> output.write(body.getBytes(StandardCharsets.US_ASCII)))
+                .build();
+        var output = outputStream();
+        var writer = new ResponseWriter(output);
+        writer.writeFull(response, false);
+        writer.flush();
+        // The end of the body is signaled by closing the connection
+        assertThat(toString(output))
+                .contains("Connection: close\r\n")
+                .doesNotContain("Content-Length")
+                .doesNotContain("Transfer-Encoding")
+                .endsWith("\r\n\r\n" + body);
+    }
+
+    @Test
+    void failedBodyWriterNotTerminated() throws IOException {
+        var response = Response.builder()
+                .body(output -> {
+                    output.write("ABC".getBytes(StandardCharsets.US_ASCII));
+                    throw new IllegalStateException("Failure");
+                })
+                .build();
+        var output = outputStream();
+        var writer = new ResponseWriter(output);
+        assertThatThrownBy(() -> writer.writeFull(response, true)).isInstanceOf(IOException.class);
+        writer.flush();
+        assertThat(toString(output)).doesNotContain("0\r\n\r\n");
+    }
+
     private static ByteArrayOutputStream outputStream() {
         return new ByteArrayOutputStream();
     }
@@ -87,6 +400,57 @@ class ResponseWriterTest extends TestBase {
         }
     }
 
+    private static class CountingOutputStream extends ByteArrayOutputStream {
+
+        int numWrites;
+
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) {
+            numWrites++;
+            super.write(bytes, offset, length);
+        }
+    }
+
+    private static class GatheringChannelStub implements GatheringByteChannel {
+
+        private final WritableByteChannel channel;
+        int numWrites;
+
+        GatheringChannelStub(ByteArrayOutputStream output) {
+            this.channel = Channels.newChannel(output);
+        }
+
+        @Override
+        public long write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+            numWrites++;
+            long size = 0;
+            for (int i = offset; i < offset + length; i++) {
+                size += channel.write(buffers[i]);
+            }
+            return size;
+        }
+
+        @Override
+        public long write(ByteBuffer[] buffers) throws IOException {
+            return write(buffers, 0, buffers.length);
+        }
+
+        @Override
+        public int write(ByteBuffer buffer) throws IOException {
+            numWrites++;
+            return channel.write(buffer);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
     private interface RunnableWithIO {
         void run() throws IOException;
     }